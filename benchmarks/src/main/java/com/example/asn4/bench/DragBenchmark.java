@@ -0,0 +1,119 @@
+package com.example.asn4.bench;
+
+import com.example.asn4.Blob;
+import com.example.asn4.BlobController;
+import com.example.asn4.BlobModel;
+import com.example.asn4.InteractionModel;
+import javafx.event.EventType;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drag events going through the controller into the models, as they arrive from the canvas: moving a selection of
+ * blobs, and extending the lasso/rectangle tools. The steady-state drag path is meant to allocate nothing, which the
+ * GC profiler's gc.alloc.rate.norm (bytes per event) shows; anything above zero is a regression.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DragBenchmark {
+
+    @Param({"10000", "1000000"})
+    int blobCount;
+
+    /** Number of blobs moved together by dragBlobs */
+    @Param({"100"})
+    int selectionSize;
+
+    private BlobController blobDrag;
+
+    private BlobController selectionDrag;
+
+    private InteractionModel selectionIModel;
+
+    /** Drag events going back and forth, so the blobs stay in place over the run */
+    private MouseEvent[] blobEvents;
+
+    /** Drag events going round a circle; the lasso is cleared after every lap so it doesn't grow without bound */
+    private MouseEvent[] selectionEvents;
+
+    private int next;
+
+    @Setup
+    public void setUp() {
+        BlobModel model = Scenes.randomScene(blobCount, 1);
+        Random random = new Random(3);
+
+        InteractionModel iModel = new InteractionModel();
+        blobDrag = new BlobController();
+        blobDrag.setModel(model);
+        blobDrag.setIModel(iModel);
+        ArrayList<Blob> selection = new ArrayList<>();
+        for (int i = 0; i < selectionSize; i++) {
+            selection.add(model.getBlobs().get(random.nextInt(blobCount)));
+        }
+        // the press picks the blob on top, which has to be part of the selection for the whole selection to move
+        double x = selection.get(0).getX(), y = selection.get(0).getY();
+        selection.set(0, model.whichHit(x, y));
+        iModel.selectMultiple(selection);
+        blobDrag.handlePressed(event(MouseEvent.MOUSE_PRESSED, x, y, false));
+        blobEvents = new MouseEvent[] {
+                event(MouseEvent.MOUSE_DRAGGED, x + 7, y + 5, false),
+                event(MouseEvent.MOUSE_DRAGGED, x, y, false)};
+
+        selectionIModel = new InteractionModel();
+        selectionDrag = new BlobController();
+        selectionDrag.setModel(model);
+        selectionDrag.setIModel(selectionIModel);
+        double centre = Scenes.worldSize(blobCount) / 2;
+        selectionDrag.handlePressed(event(MouseEvent.MOUSE_PRESSED, centre, centre, true));
+        selectionEvents = new MouseEvent[1024];
+        for (int i = 0; i < selectionEvents.length; i++) {
+            double angle = 2 * Math.PI * i / 256;
+            selectionEvents[i] = event(MouseEvent.MOUSE_DRAGGED,
+                    centre + Math.cos(angle) * 300, centre + Math.sin(angle) * 300, true);
+        }
+    }
+
+    private static MouseEvent event(EventType<MouseEvent> type, double x, double y, boolean controlDown) {
+        return new MouseEvent(type, x, y, x, y, MouseButton.PRIMARY, 1,
+                false, controlDown, false, false, true, false, false, false, false, false, null);
+    }
+
+    /**
+     * One drag step of a selection of blobs
+     */
+    @Benchmark
+    public void dragBlobs() {
+        next = (next + 1) & 1;
+        blobDrag.handleDragged(blobEvents[next]);
+    }
+
+    /**
+     * One drag step of the lasso and rectangle tools
+     */
+    @Benchmark
+    public void dragSelection() {
+        next = (next + 1) & (selectionEvents.length - 1);
+        if (next == 0) selectionIModel.clearPoints();
+        selectionDrag.handleDragged(selectionEvents[next]);
+    }
+}
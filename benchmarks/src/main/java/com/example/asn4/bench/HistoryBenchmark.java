@@ -0,0 +1,68 @@
+package com.example.asn4.bench;
+
+import com.example.asn4.BlobModel;
+import com.example.asn4.Commands.MoveCommand;
+import com.example.asn4.InteractionModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Undo and redo through a large history of single-blob moves
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HistoryBenchmark {
+
+    @Param({"1000", "100000"})
+    int blobCount;
+
+    @Param({"1000", "10000"})
+    int historySize;
+
+    private InteractionModel iModel;
+
+    @Setup
+    public void setUp() {
+        BlobModel model = Scenes.randomScene(blobCount, 1);
+        iModel = new InteractionModel();
+        iModel.getHistory().setLimits(historySize, Long.MAX_VALUE);
+        iModel.getHistory().setMergeWindowMillis(-1);
+
+        Random random = new Random(4);
+        for (int i = 0; i < historySize; i++) {
+            MoveCommand mc = new MoveCommand(model, model.getBlobs().get(random.nextInt(blobCount)), 3, -2);
+            mc.doIt();
+            iModel.addToUndoStack(mc);
+        }
+    }
+
+    /**
+     * Undoes the whole history and redoes it again
+     */
+    @Benchmark
+    public int undoRedoAll() {
+        for (int i = 0; i < historySize; i++) {
+            iModel.handleUndo();
+        }
+        for (int i = 0; i < historySize; i++) {
+            iModel.handleRedo();
+        }
+        return iModel.getHistory().getUndoDepth();
+    }
+}
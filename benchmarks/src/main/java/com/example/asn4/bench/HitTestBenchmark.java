@@ -0,0 +1,58 @@
+package com.example.asn4.bench;
+
+import com.example.asn4.Blob;
+import com.example.asn4.BlobModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mouse press hit testing: BlobModel.hitBlob and whichHit at random points of the scene
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HitTestBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    int blobCount;
+
+    private BlobModel model;
+
+    private double[] points;
+
+    private int next;
+
+    @Setup
+    public void setUp() {
+        model = Scenes.randomScene(blobCount, 1);
+        points = Scenes.randomPoints(blobCount, 4096, 2);
+    }
+
+    @Benchmark
+    public Blob whichHit() {
+        int i = next;
+        next = (next + 2) & (points.length - 1);
+        return model.whichHit(points[i], points[i + 1]);
+    }
+
+    @Benchmark
+    public boolean hitBlob() {
+        int i = next;
+        next = (next + 2) & (points.length - 1);
+        return model.hitBlob(points[i], points[i + 1]);
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.asn4.bench;
+
+import com.example.asn4.Blob;
+import com.example.asn4.BlobModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Model mutations: creating and deleting blobs, and dragging a selection around with moveBlobs
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MutationBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    int blobCount;
+
+    /** Number of blobs moved together by moveSelection */
+    @Param({"100"})
+    int selectionSize;
+
+    private BlobModel model;
+
+    private List<Blob> selection;
+
+    private Random random;
+
+    private double step;
+
+    @Setup
+    public void setUp() {
+        model = Scenes.randomScene(blobCount, 1);
+        random = new Random(3);
+        selection = new ArrayList<>();
+        for (int i = 0; i < selectionSize; i++) {
+            selection.add(model.getBlobs().get(random.nextInt(blobCount)));
+        }
+        step = 1;
+    }
+
+    /**
+     * Creates a blob on top of the scene and deletes it again, so the scene size stays constant
+     */
+    @Benchmark
+    public Blob createDeleteTop() {
+        Blob b = model.createBlob(random.nextDouble() * 1000, random.nextDouble() * 1000);
+        model.deleteBlob(b);
+        return b;
+    }
+
+    /**
+     * Deletes a random blob from the middle of the stacking order and puts it back on top
+     */
+    @Benchmark
+    public Blob deleteReaddRandom() {
+        Blob b = model.getBlobs().get(random.nextInt(blobCount));
+        model.deleteBlob(b);
+        model.addBlob(b);
+        return b;
+    }
+
+    /**
+     * One drag step of a selection, going back and forth so blobs stay in the world
+     */
+    @Benchmark
+    public void moveSelection() {
+        step = -step;
+        model.moveBlobs(selection, step * 7, step * 5);
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.asn4.bench;
+
+import com.example.asn4.Blob;
+import com.example.asn4.BlobModel;
+import com.example.asn4.BlobOverlap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overlap queries: BlobModel.findOverlaps over the whole scene, and moving a selection while the model keeps the
+ * overlap counts up to date, which is what the view's overlap flags cost on every drag event.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OverlapBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    int blobCount;
+
+    private BlobModel model;
+
+    /** Blobs moved by moveTracked */
+    private List<Blob> selection;
+
+    private boolean back;
+
+    @Setup
+    public void setUp() {
+        model = Scenes.randomScene(blobCount, 1);
+        Random random = new Random(3);
+        selection = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            selection.add(model.getBlobs().get(random.nextInt(blobCount)));
+        }
+        model.trackOverlaps(0.25);
+    }
+
+    @Benchmark
+    public List<BlobOverlap> findOverlaps() {
+        return model.findOverlaps(0.25);
+    }
+
+    /**
+     * One drag step of 100 blobs, back and forth so they stay in place over the run
+     */
+    @Benchmark
+    public void moveTracked() {
+        back = !back;
+        model.moveBlobs(selection, back ? -7 : 7, back ? -5 : 5);
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.asn4.bench;
+
+import com.example.asn4.BlobModel;
+
+import java.util.Random;
+
+/**
+ * Builds synthetic scenes for the benchmarks. Blobs are spread uniformly over a square world whose side grows with
+ * the square root of the blob count, so the number of blobs under any point stays about the same at every scale.
+ */
+final class Scenes {
+
+    /** Average distance between neighbouring blob centres */
+    static final double SPACING = 60;
+
+    private Scenes() {}
+
+    /**
+     * @return side length of the square world holding the given number of blobs
+     */
+    static double worldSize(int blobCount) {
+        return Math.sqrt(blobCount) * SPACING;
+    }
+
+    /**
+     * Creates a model holding blobCount blobs at random positions, reproducible through the seed
+     */
+    static BlobModel randomScene(int blobCount, long seed) {
+        BlobModel model = new BlobModel();
+        Random random = new Random(seed);
+        double size = worldSize(blobCount);
+        for (int i = 0; i < blobCount; i++) {
+            model.createBlob(random.nextDouble() * size, random.nextDouble() * size);
+        }
+        return model;
+    }
+
+    /**
+     * Random points inside the world of a scene, used as mouse positions
+     * @return interleaved x/y coordinates
+     */
+    static double[] randomPoints(int blobCount, int pointCount, long seed) {
+        Random random = new Random(seed);
+        double size = worldSize(blobCount);
+        double[] points = new double[pointCount * 2];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = random.nextDouble() * size;
+        }
+        return points;
+    }
+}
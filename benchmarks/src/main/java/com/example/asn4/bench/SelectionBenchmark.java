@@ -0,0 +1,81 @@
+package com.example.asn4.bench;
+
+import com.example.asn4.Blob;
+import com.example.asn4.BlobModel;
+import com.example.asn4.InteractionModel;
+import javafx.geometry.Point2D;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Selection tools: rectangle and lasso evaluation covering a quarter of the world, and applying the hit list with
+ * selectMultiple
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SelectionBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    int blobCount;
+
+    private BlobModel model;
+
+    private InteractionModel iModel;
+
+    private List<Blob> rectHits;
+
+    @Setup
+    public void setUp() {
+        model = Scenes.randomScene(blobCount, 1);
+        iModel = new InteractionModel();
+
+        double size = Scenes.worldSize(blobCount);
+        iModel.storeRectSelectionDimension(size / 4, size / 4, size / 2, size / 2);
+
+        // a 64-sided polygon approximating the circle inscribed in the same square
+        iModel.clearPoints();
+        for (int i = 0; i < 64; i++) {
+            double angle = 2 * Math.PI * i / 64;
+            iModel.addPoints(new Point2D(size / 2 + Math.cos(angle) * size / 4, size / 2 + Math.sin(angle) * size / 4));
+        }
+        iModel.setLassoPathStatus(true);
+
+        rectHits = iModel.rectAreaHit(model);
+    }
+
+    @Benchmark
+    public List<Blob> rectAreaHit() {
+        return iModel.rectAreaHit(model);
+    }
+
+    @Benchmark
+    public List<Blob> lassoAreaHit() {
+        return iModel.lassoAreaHit(model);
+    }
+
+    /**
+     * Toggles the rectangle's hit list on and off again
+     */
+    @Benchmark
+    public int selectMultiple() {
+        iModel.selectMultiple(rectHits);
+        iModel.selectMultiple(rectHits);
+        return iModel.getSelectedBlobs().size();
+    }
+}
@@ -1,12 +1,20 @@
 package com.example.asn4;
 
+/**
+ * A blob is a handle onto a slot of the BlobStore of the model it belongs to; its position and radius are read from
+ * and written to the store's arrays. When the blob isn't in a model (newly created, or deleted and waiting in the
+ * undo stack) it keeps its own copy of those values instead.
+ */
 public class Blob {
-    public double x,y;
 
-    public double r;
+    /** Store holding this blob's values, null when the blob is detached */
+    BlobStore store;
 
-    /** The radius before changes in its size occur */
-    public double initialRadius;
+    /** Values of the blob while it is detached from a store */
+    private double x, y, r, initialRadius;
+
+    /** Radius given to newly created blobs */
+    public static final double DEFAULT_RADIUS = 50;
 
     /** Stands for the order number of blobs created */
     private static int orderCounter = 0;
@@ -22,22 +30,122 @@ public class Blob {
     public Blob(double nx, double ny) {
         x = nx;
         y = ny;
-        r = 50;
+        r = DEFAULT_RADIUS;
         initialRadius = r;
+        counter = nextOrderNumber();
+    }
+
+    /**
+     * Creates a handle for a blob that is already in the store
+     * @param store store holding the blob
+     * @param counter order number of the blob
+     */
+    Blob(BlobStore store, int counter) {
+        this.store = store;
+        this.counter = counter;
+    }
+
+    /**
+     * Hands out the order number of the next blob created
+     */
+    static int nextOrderNumber() {
         orderCounter++;
-        counter = orderCounter;
+        return orderCounter;
     }
 
-    public void move(double dx, double dy) {
-        x += dx;
-        y += dy;
+    /**
+     * @return order number of the most recently created blob
+     */
+    static int getOrderCounter() {
+        return orderCounter;
     }
 
-    public boolean contains(double cx, double cy) {
-        return dist(cx,cy,x,y) <= r;
+    /**
+     * Continues numbering after a loaded scene, so new blobs never reuse an order number from it
+     * @param lastOrderNumber order number of the most recently created blob of the scene
+     */
+    static void restoreOrderCounter(int lastOrderNumber) {
+        orderCounter = lastOrderNumber;
+    }
+
+    private int slot() {
+        return store.slotOf(counter);
+    }
+
+    /**
+     * Copies the blob's values out of the store so that it no longer depends on it
+     */
+    void detach(double nx, double ny, double nr, double nInitialRadius) {
+        x = nx;
+        y = ny;
+        r = nr;
+        initialRadius = nInitialRadius;
+        store = null;
     }
 
-    private double dist(double x1,double y1,double x2, double y2) {
-        return Math.sqrt(Math.pow(x2-x1,2) + Math.pow(y2-y1,2));
+    /**
+     * @return order number of the blob, unique among all blobs created
+     */
+    public int getId() {
+        return counter;
+    }
+
+    public double getX() {
+        return store == null ? x : store.x[slot()];
+    }
+
+    public double getY() {
+        return store == null ? y : store.y[slot()];
+    }
+
+    public double getR() {
+        return store == null ? r : store.r[slot()];
+    }
+
+    /** The radius before changes in its size occur */
+    public double getInitialRadius() {
+        return store == null ? initialRadius : store.initialRadius[slot()];
+    }
+
+    public void setInitialRadius(double newInitialRadius) {
+        if (store == null) {
+            initialRadius = newInitialRadius;
+        } else {
+            int slot = slot();
+            store.initialRadius[slot] = newInitialRadius;
+            store.touch(slot);
+        }
+    }
+
+    /**
+     * Changes the radius; the model uses this so that it can keep its spatial index up to date
+     */
+    void setR(double newR) {
+        if (store == null) {
+            r = newR;
+        } else {
+            int slot = slot();
+            store.r[slot] = newR;
+            store.touch(slot);
+        }
+    }
+
+    public void move(double dx, double dy) {
+        if (store == null) {
+            x += dx;
+            y += dy;
+        } else {
+            int slot = slot();
+            store.x[slot] += dx;
+            store.y[slot] += dy;
+            store.touch(slot);
+        }
+    }
+
+    public boolean contains(double cx, double cy) {
+        double dx = cx - getX();
+        double dy = cy - getY();
+        double radius = getR();
+        return dx*dx + dy*dy <= radius*radius;
     }
 }
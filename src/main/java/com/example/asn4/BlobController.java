@@ -4,8 +4,18 @@ import com.example.asn4.Commands.CreateCommand;
 import com.example.asn4.Commands.DeleteCommand;
 import com.example.asn4.Commands.MoveCommand;
 import com.example.asn4.Commands.ResizeCommand;
-import javafx.geometry.Point2D;
+import javafx.application.Platform;
+import javafx.event.Event;
+import javafx.event.EventTarget;
+import javafx.scene.input.InputEvent;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.input.MouseButton;
 import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -28,12 +38,39 @@ public class BlobController {
 
     private  double dX,dY;
 
-    private enum State {READY,PREPARE_CREATE, DRAGGING_BLOB, RESIZING_BLOB, DRAGGING_SELECTION}
+    private enum State {READY,PREPARE_CREATE, DRAGGING_BLOB, RESIZING_BLOB, DRAGGING_SELECTION, PANNING}
     State currentState = State.READY;
 
     /** Stores the mouse position at the end of a mouse press event, just before a mouse drag event starts */
     private double beforeDragX, beforeDragY;
 
+    /** Last mouse position on screen while panning; world coordinates shift under the mouse as the camera moves */
+    private double panX, panY;
+
+    /** Zoom change per pixel of scrolling */
+    private static final double ZOOM_PER_SCROLL_PIXEL = 1.0015;
+
+    /** File the scene is saved to and loaded from */
+    private Path sceneFile = Path.of("scene.blob");
+
+    /** CSV or JSON-lines file target layouts are imported from and exported to */
+    private Path targetsFile = Path.of("targets.csv");
+
+    /** Import currently running in the background, null if there is none */
+    private BlobImporter runningImport;
+
+    /** File input is recorded to and replayed from */
+    private Path traceFile = Path.of("input.trace");
+
+    /** Records the input reaching the canvas while a trace is being recorded */
+    private InputRecorder recorder = new InputRecorder();
+
+    /** Whether a trace is being replayed */
+    private boolean replaying;
+
+    /** Scheduler of the models' notifications, flushed after each replayed event; null if they notify immediately */
+    private NotificationScheduler scheduler;
+
     /** list of all blobs that hold blobs from ctrl key and mouse press selection. This is different from hitlist list
      * where blobs are from the lasso/rectangle selection */
     private List<Blob> nitPickedBlobs;
@@ -52,40 +89,83 @@ public class BlobController {
         iModel = newIModel;
     }
 
+    public void setScheduler(NotificationScheduler newScheduler) {
+        scheduler = newScheduler;
+    }
+
     /**
-     * Delete selected blob(s)
+     * Handles the keyboard shortcuts that act on the models
+     */
+    public void handleKeyPressed(KeyEvent e) {
+        if (e.getCode() == KeyCode.DELETE) {
+            deleteBlobs();
+        }
+        if (e.isControlDown() && e.getCode() == KeyCode.Z) {
+            handleUndo();
+        }
+        if (e.isControlDown() && e.getCode() == KeyCode.R) {
+            handleRedo();
+        }
+        if (e.isControlDown() && e.getCode() == KeyCode.S) {
+            saveScene();
+        }
+        if (e.isControlDown() && e.getCode() == KeyCode.O) {
+            loadScene();
+        }
+        if (e.isControlDown() && e.getCode() == KeyCode.I) {
+            importTargets();
+        }
+        if (e.isControlDown() && e.getCode() == KeyCode.E) {
+            exportTargets();
+        }
+        if (e.isControlDown() && e.getCode() == KeyCode.DIGIT0) {
+            resetCamera();
+        }
+    }
+
+    /**
+     * Delete selected blob(s), as a single undoable step
      */
     public void deleteBlobs() {
         if (!iModel.getSelectedBlobs().isEmpty()) {
-            iModel.getSelectedBlobs().forEach(b -> {
-                DeleteCommand dc = new DeleteCommand(model, b);
-                dc.doIt();
-                iModel.addToUndoStack(dc);
-            });
+            DeleteCommand dc = new DeleteCommand(model, iModel.getSelectedBlobs());
+            dc.doIt();
+            iModel.addToUndoStack(dc);
             iModel.clearBlobSelection();  // unselect ALL selected blobs in the iModel
         }
     }
 
     public void handlePressed(MouseEvent event) {
-        if (currentState == State.READY) {
-            if (model.hitBlob(event.getX(), event.getY())) {
-                // checks if user pressed a blob or not
-
-                Blob b = model.whichHit(event.getX(), event.getY());
-
+        PipelineEvents.InputEvent timing = PipelineEvents.beginInput();
+        State before = currentState;
+        // mouse position in the world, which is where the blobs and the selection tools live
+        double x = iModel.getCamera().toWorldX(event.getX());
+        double y = iModel.getCamera().toWorldY(event.getY());
+
+        if (currentState == State.READY && event.getButton() != MouseButton.PRIMARY) {
+            // the other buttons drag the scene around
+            panX = event.getX();
+            panY = event.getY();
+            currentState = State.PANNING;
+        } else if (currentState == State.READY) {
+            // checks if user pressed a blob or not
+            Blob b = model.whichHit(x, y);
+            if (b != null) {
                 // Since selected area is actually a blob, add it to the nitPickedBlobs regardless if it was manually
                 // selected by mouse press or ctrl key is involved
                 nitPickedBlobs = new ArrayList<>();
                 nitPickedBlobs.add(b);
 
-                prevX = event.getX();
-                prevY = event.getY();
+                prevX = x;
+                prevY = y;
 
                 if (event.isControlDown()) {
                     // enable new blobs to be added one by one to selection by pressing ctrl key with mouse press
                     iModel.selectMultiple(nitPickedBlobs);
                 } else if (event.isShiftDown()) {
-                    b.initialRadius = b.r;
+                    // remember the sizes before resizing so the resize can be undone
+                    b.setInitialRadius(b.getR());
+                    iModel.getSelectedBlobs().forEach(s -> s.setInitialRadius(s.getR()));
                     beforeDragX = prevX;  // save the current mouse position before resizing blobs
                     beforeDragY = prevY;
                     currentState = State.RESIZING_BLOB;
@@ -106,8 +186,9 @@ public class BlobController {
                 }else if (event.isControlDown()) {
                     // when mouse press occurs in canvas, saves the current mouse position
                     // for drawing the rectangle selection tool
-                    iModel.setRectStartingPoint(event.getX(), event.getY());
-                    handleLassoPressed(event);
+                    iModel.setRectStartingPoint(x, y);
+                    handleLassoPressed(x, y);
+                    iModel.startSelectionPreview(model);
 
                     currentState = State.DRAGGING_SELECTION;
                 } else {
@@ -116,84 +197,103 @@ public class BlobController {
                 }
             }
         }
+
+        endInput(timing, "pressed", before);
     }
 
     public void handleDragged(MouseEvent event) {
-        dX = event.getX() - prevX;
-        dY = event.getY() - prevY;
-        prevX = event.getX();
-        prevY = event.getY();
+        PipelineEvents.InputEvent timing = PipelineEvents.beginInput();
+        State before = currentState;
+        // mouse position in the world, which is where the blobs and the selection tools live
+        double x = iModel.getCamera().toWorldX(event.getX());
+        double y = iModel.getCamera().toWorldY(event.getY());
+
+        dX = x - prevX;
+        dY = y - prevY;
+        prevX = x;
+        prevY = y;
 
         switch (currentState) {
             case PREPARE_CREATE -> {
                 // go back to ready state since user just pressed the canvas (not a blob) and dragged somewhere
                 currentState = State.READY;
             }
+            case PANNING -> {
+                iModel.panCamera(event.getX() - panX, event.getY() - panY);
+                panX = event.getX();
+                panY = event.getY();
+            }
             case DRAGGING_BLOB -> {
                 model.moveBlobs(iModel.getSelectedBlobs(), dX,dY);
             }
             case RESIZING_BLOB -> {
                 if (beforeDragX < prevX) {
-                    iModel.getSelectedBlobs().forEach(b -> {
-                        b.r += 1;  // at mouse drag to the right, increase blob size
-                    });
+                    model.resizeBlobs(iModel.getSelectedBlobs(), 1);  // at mouse drag to the right, increase blob size
+                } else if (beforeDragX > prevX) {
+                    model.resizeBlobs(iModel.getSelectedBlobs(), -1);  // at mouse drag to the left, decrease blob size
                 }
-                iModel.getSelectedBlobs().forEach(b -> {
-                    if (beforeDragX > prevX && b.r != 5) {
-                        b.r -= 1;  // at mouse drag to the left, decrease blob size
-                    }
-                });
-                model.redrawBlobs();
             }
             case DRAGGING_SELECTION -> {
                 // the user will use either the lasso tool or the rectangle tool to select/unselect blobs
-                iModel.setRectEndingPoint(event.getX(), event.getY());
-                iModel.setLassoPoint(event.getX(), event.getY());
-                handleLassoDragged(event);
+                iModel.setRectEndingPoint(x, y);
+                iModel.setLassoPoint(x, y);
+                handleLassoDragged(x, y);
+                // show what releasing here would select, looking only at what the tools gained or lost
+                iModel.updateSelectionPreview();
             }
         }
+
+        endInput(timing, "dragged", before);
     }
 
     public void handleReleased(MouseEvent event) {
+        PipelineEvents.InputEvent timing = PipelineEvents.beginInput();
+        State before = currentState;
+        // mouse position in the world, which is where the blobs and the selection tools live
+        double x = iModel.getCamera().toWorldX(event.getX());
+        double y = iModel.getCamera().toWorldY(event.getY());
+
         switch (currentState) {
+            case PANNING -> {
+                currentState = State.READY;
+            }
             // user releases the mouse while holding a blob; place blob into the canvas
             // model will increase its blob which will initiate view to draw blob on canvas
             case PREPARE_CREATE -> {
-//                model.addBlob(event.getX(),event.getY());
-                CreateCommand cc = new CreateCommand(model, event.getX(), event.getY());
+//                model.addBlob(x,y);
+                CreateCommand cc = new CreateCommand(model, x, y);
                 cc.doIt();  // also creates a new blob and adds it to model
                 iModel.addToUndoStack(cc);
 
                 currentState = State.READY;
             }
             case DRAGGING_BLOB -> {
-                double xChange = event.getX() - beforeDragX;
-                double yChange = event.getY() - beforeDragY;
-
-                iModel.getSelectedBlobs().forEach(b -> {
-                    if (!(xChange == 0 && yChange == 0)) {
-                        // if no change in coordinates occur, user just performed a select, no need to record
-                        // only record actual movements that occur for the undo stack
-                        MoveCommand mc = new MoveCommand(model, b, xChange, yChange);
-                        iModel.addToUndoStack(mc);
-                    }
-                });
+                double xChange = x - beforeDragX;
+                double yChange = y - beforeDragY;
+
+                if (!(xChange == 0 && yChange == 0) && !iModel.getSelectedBlobs().isEmpty()) {
+                    // if no change in coordinates occur, user just performed a select, no need to record
+                    // only record actual movements that occur for the undo stack, one entry for the whole selection
+                    MoveCommand mc = new MoveCommand(model, iModel.getSelectedBlobs(), xChange, yChange);
+                    iModel.addToUndoStack(mc);
+                }
                 currentState = State.READY;
             }
             case RESIZING_BLOB -> {
-                iModel.getSelectedBlobs().forEach(b -> {
-                    ResizeCommand rc = new ResizeCommand(model, b);
+                if (!iModel.getSelectedBlobs().isEmpty()) {
+                    ResizeCommand rc = new ResizeCommand(model, iModel.getSelectedBlobs());
                     iModel.addToUndoStack(rc);
-                });
+                }
                 currentState = State.READY;
             }
             case DRAGGING_SELECTION -> {
                 currentState = State.READY;
                 handleLassoReleased();
+                iModel.endSelectionPreview();
 
                 // get all the selected blobs using lasso tool
-                List<Blob> lassoHitList = iModel.lassoAreaHit(model.getBlobs());
-                List<Blob> rectHitList = iModel.rectAreaHit(model.getBlobs());
+                List<Blob> lassoHitList = iModel.lassoAreaHit(model);
+                List<Blob> rectHitList = iModel.rectAreaHit(model);
 
                 // choose the selection that got the bigger amount of blobs
                 if (lassoHitList.size() > rectHitList.size()) {
@@ -204,24 +304,39 @@ public class BlobController {
 
             }
         }
+
+        endInput(timing, "released", before);
+    }
+
+    private void endInput(PipelineEvents.InputEvent timing, String handler, State before) {
+        if (timing == null) return;  // input events are disabled
+        timing.end();
+        if (timing.shouldCommit()) {
+            timing.handler = handler;
+            timing.stateBefore = before.name();
+            timing.stateAfter = currentState.name();
+            timing.commit();
+        }
     }
 
     /**
      * Create new points and store them to the iModel's list of points.
-     * @param e mouse event
+     * @param x world x coordinate of the mouse
+     * @param y world y coordinate of the mouse
      */
-    private void handleLassoPressed(MouseEvent e) {
+    private void handleLassoPressed(double x, double y) {
         iModel.clearPoints();
         iModel.setLassoPathStatus(false);
-        iModel.addPoints(new Point2D(e.getX(), e.getY()));
+        iModel.addLassoPoint(x, y);
     }
 
     /**
      * Continuously add more points to the lasso at drag event
-     * @param e mouse event
+     * @param x world x coordinate of the mouse
+     * @param y world y coordinate of the mouse
      */
-    private void handleLassoDragged(MouseEvent e) {
-        iModel.addPoints(new Point2D(e.getX(), e.getY()));
+    private void handleLassoDragged(double x, double y) {
+        iModel.addLassoPoint(x, y);
     }
 
     /**
@@ -240,8 +355,8 @@ public class BlobController {
      * @param e mouse event
      */
     public void storeDraggingCursor(MouseEvent e) {
-        iModel.setDragMouseCursorX(e.getX());
-        iModel.setDragMouseCursorY(e.getY());
+        iModel.setDragMouseCursorX(iModel.getCamera().toWorldX(e.getX()));
+        iModel.setDragMouseCursorY(iModel.getCamera().toWorldY(e.getY()));
     }
 
     /**
@@ -250,8 +365,24 @@ public class BlobController {
      * @param e mouse event
      */
     public void storeMovingCursor(MouseEvent e) {
-        iModel.setMouseCursorX(e.getX());
-        iModel.setMouseCursorY(e.getY());
+        iModel.setMouseCursorX(iModel.getCamera().toWorldX(e.getX()));
+        iModel.setMouseCursorY(iModel.getCamera().toWorldY(e.getY()));
+    }
+
+    /**
+     * Zooms in or out around the mouse as the wheel is scrolled
+     * @param event scroll event
+     */
+    public void handleScroll(ScrollEvent event) {
+        if (event.getDeltaY() == 0) return;
+        iModel.zoomCamera(Math.pow(ZOOM_PER_SCROLL_PIXEL, event.getDeltaY()), event.getX(), event.getY());
+    }
+
+    /**
+     * Shows the world origin at 1:1 again
+     */
+    public void resetCamera() {
+        iModel.resetCamera();
     }
 
     /**
@@ -267,4 +398,167 @@ public class BlobController {
     public void handleRedo() {
         iModel.handleRedo();
     }
+
+    public void setSceneFile(Path newSceneFile) {
+        sceneFile = newSceneFile;
+    }
+
+    /**
+     * Saves all blobs and the selection to the scene file
+     */
+    public void saveScene() {
+        try {
+            SceneFile.save(sceneFile, model, iModel);
+            System.out.println("Scene saved to " + sceneFile.toAbsolutePath());
+        } catch (IOException e) {
+            System.out.println("Could not save scene: " + e.getMessage());
+        }
+    }
+
+    public void setTargetsFile(Path newTargetsFile) {
+        targetsFile = newTargetsFile;
+    }
+
+    /**
+     * Passes input reaching the canvas to the recorder; installed by the view as an event filter
+     */
+    public void recordInput(InputEvent e) {
+        recorder.handle(e);
+    }
+
+    /**
+     * Starts recording the input to the trace file, saving the scene next to it, or stops a recording
+     */
+    public void toggleRecording() {
+        if (recorder.isRecording()) {
+            stopRecording();
+            return;
+        }
+        try {
+            recorder.start(traceFile, model, iModel);
+            System.out.println("Recording input to " + traceFile.toAbsolutePath());
+        } catch (IOException e) {
+            System.out.println("Could not record input: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Finishes the trace being recorded, if any
+     */
+    public void stopRecording() {
+        if (!recorder.isRecording()) return;
+        try {
+            recorder.stop();
+            System.out.println("Input trace saved to " + traceFile.toAbsolutePath());
+        } catch (IOException e) {
+            System.out.println("Could not record input: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Loads the scene a trace was recorded from in place of the current one and replays the trace, then prints the
+     * latency of the events. Not done while an import is running, as its batches would land in the replayed scene.
+     * @param target node the events are fired at, so they go through the same handlers as live input
+     * @param realTime true to keep the recorded pace, false to replay the events back to back
+     */
+    public void replayTrace(EventTarget target, boolean realTime) {
+        if (replaying) return;
+        if (runningImport != null) {
+            System.out.println("Could not replay input: an import is running");
+            return;
+        }
+        stopRecording();
+        InputTrace trace;
+        try {
+            trace = InputTrace.read(traceFile);
+            SceneFile.load(InputTrace.sceneFileOf(traceFile), model, iModel);
+            iModel.checkpointJournal();
+        } catch (IOException e) {
+            System.out.println("Could not replay input: " + e.getMessage());
+            return;
+        }
+        System.out.println("Scene replaced by the one recorded with the trace; unsaved changes are lost");
+        iModel.setCameraView(trace.getCameraLeft(), trace.getCameraTop(), trace.getCameraZoom());
+        currentState = State.READY;
+
+        replaying = true;
+        System.out.println("Replaying " + trace.size() + " events from " + traceFile.toAbsolutePath());
+        InputReplayer replayer = new InputReplayer(trace, e -> Event.fireEvent(target, e), () -> {
+            if (scheduler != null) scheduler.flush();
+        });
+        if (realTime) {
+            replayer.replayRealTimeOnPulses(report -> {
+                replaying = false;
+                System.out.print(report);
+            });
+        } else {
+            InputReplayer.Report report = replayer.replayFast();
+            replaying = false;
+            System.out.print(report);
+        }
+    }
+
+    /**
+     * Adds the targets listed in the targets file to the scene. The file is parsed in the background and the blobs
+     * appear batch by batch. Starting an import while one is running cancels the running one instead.
+     */
+    public void importTargets() {
+        if (runningImport != null) {
+            runningImport.cancel();
+            return;
+        }
+        BlobImporter importer = new BlobImporter(TargetFormat.forPath(targetsFile));
+        importer.setListener(new TransferListener() {
+            @Override
+            public void finished(long rows, Exception error, boolean cancelled) {
+                runningImport = null;
+                iModel.checkpointJournal();
+                if (error != null) {
+                    System.out.println("Import stopped after " + rows + " targets: " + error.getMessage());
+                } else {
+                    System.out.println((cancelled ? "Import cancelled after " : "Imported ") + rows + " targets");
+                }
+            }
+        });
+        runningImport = importer;
+        importer.start(targetsFile, model, Platform::runLater);
+    }
+
+    /**
+     * Stops a running import and waits for its parser to finish, so no more batches are handed to the model
+     */
+    public void cancelImport() {
+        if (runningImport == null) return;
+        runningImport.cancel();
+        try {
+            runningImport.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes every blob of the scene to the targets file
+     */
+    public void exportTargets() {
+        try {
+            long rows = new BlobExporter(TargetFormat.forPath(targetsFile)).export(targetsFile, model);
+            System.out.println("Exported " + rows + " targets to " + targetsFile.toAbsolutePath());
+        } catch (IOException e) {
+            System.out.println("Could not export targets: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Replaces the current scene with the one in the scene file
+     */
+    public void loadScene() {
+        try {
+            SceneFile.load(sceneFile, model, iModel);
+            iModel.checkpointJournal();
+            System.out.println("Scene loaded from " + sceneFile.toAbsolutePath());
+        } catch (IOException e) {
+            System.out.println("Could not load scene: " + e.getMessage());
+        }
+    }
 }
@@ -0,0 +1,80 @@
+package com.example.asn4;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Streams every blob of a model to a CSV or JSON-lines file. Rows are written straight from the model's arrays, so no
+ * copy of the blob list or handle is made. Runs on the calling thread, which must own the model; cancel() may be
+ * called from any thread.
+ */
+public class BlobExporter {
+
+    /** Progress is reported every this many rows */
+    public static final int PROGRESS_INTERVAL = 16 * 1024;
+
+    private final TargetFormat format;
+
+    private TransferListener listener = new TransferListener() {};
+
+    private volatile boolean cancelled;
+
+
+    public BlobExporter(TargetFormat format) {
+        this.format = format;
+    }
+
+    public void setListener(TransferListener newListener) {
+        listener = newListener;
+    }
+
+    /**
+     * Stops the export before the next row. The file is left with the rows written so far.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Writes the blobs of the model to a file, replacing it if it exists
+     * @param path file to write
+     * @param model model holding the blobs
+     * @return number of rows written
+     * @throws IOException if the file can't be written
+     */
+    public long export(Path path, BlobModel model) throws IOException {
+        BlobStore store = model.getStore();
+        long rows = 0;
+        try (Writer out = new BufferedWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8), 1 << 16)) {
+            if (format == TargetFormat.CSV) {
+                out.write("id,x,y,r,initialRadius\n");
+            }
+            StringBuilder line = new StringBuilder(128);
+            for (int i = 0; i < store.size && !cancelled; i++) {
+                line.setLength(0);
+                if (format == TargetFormat.CSV) {
+                    line.append(store.id[i]).append(',').append(store.x[i]).append(',').append(store.y[i])
+                            .append(',').append(store.r[i]).append(',').append(store.initialRadius[i]).append('\n');
+                } else {
+                    line.append("{\"id\":").append(store.id[i]).append(",\"x\":").append(store.x[i])
+                            .append(",\"y\":").append(store.y[i]).append(",\"r\":").append(store.r[i])
+                            .append(",\"initialRadius\":").append(store.initialRadius[i]).append("}\n");
+                }
+                out.append(line);
+                rows++;
+                if (rows % PROGRESS_INTERVAL == 0) {
+                    listener.progress(rows, -1, -1);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            listener.finished(rows, e, cancelled);
+            throw e;
+        }
+        listener.finished(rows, null, cancelled);
+        return rows;
+    }
+}
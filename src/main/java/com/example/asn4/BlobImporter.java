@@ -0,0 +1,287 @@
+package com.example.asn4;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+
+/**
+ * Streams a target layout from a CSV or JSON-lines file into a model. The file is parsed line by line on a background
+ * thread into fixed-size batches, and each batch is handed to the model's thread (through an executor) as a single
+ * BlobModel.addBlobs call. Only two batches exist, so memory use doesn't depend on the file size: the parser waits
+ * for a batch to be applied before it refills it.
+ */
+public class BlobImporter {
+
+    /** Rows per batch handed to the model */
+    public static final int BATCH_SIZE = 16 * 1024;
+
+    private final TargetFormat format;
+
+    private TransferListener listener = new TransferListener() {};
+
+    /** Batches free to be filled by the parser */
+    private final BlockingQueue<Batch> freeBatches = new ArrayBlockingQueue<>(2);
+
+    private volatile boolean cancelled;
+
+    private Thread worker;
+
+
+    public BlobImporter(TargetFormat format) {
+        this.format = format;
+        freeBatches.add(new Batch());
+        freeBatches.add(new Batch());
+    }
+
+    public void setListener(TransferListener newListener) {
+        listener = newListener;
+    }
+
+    /**
+     * Starts importing on a background thread
+     * @param path file to import
+     * @param model model receiving the blobs
+     * @param modelExecutor runs work on the thread that owns the model, e.g. Platform::runLater
+     */
+    public void start(Path path, BlobModel model, Executor modelExecutor) {
+        worker = new Thread(() -> run(path, model, modelExecutor), "blob-import");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Stops the import after the batch being parsed. Batches already applied stay in the model.
+     */
+    public void cancel() {
+        cancelled = true;
+        if (worker != null) worker.interrupt();
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Waits for the background thread to finish parsing
+     */
+    public void await() throws InterruptedException {
+        if (worker != null) worker.join();
+    }
+
+    private void run(Path path, BlobModel model, Executor modelExecutor) {
+        long[] rows = {0};
+        Exception error = null;
+        try (CountingInputStream in = new CountingInputStream(Files.newInputStream(path));
+             BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16)) {
+            long totalBytes = Files.size(path);
+            LineParser parser = format == TargetFormat.CSV ? new CsvParser() : new JsonLineParser();
+            Batch batch = freeBatches.take();
+            String line;
+            long lineNumber = 0;
+            while (!cancelled && (line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) continue;
+                if (!parser.parse(line, lineNumber, batch)) continue;
+                if (batch.count == BATCH_SIZE) {
+                    submit(batch, model, modelExecutor, rows, in.count, totalBytes);
+                    batch = freeBatches.take();
+                }
+            }
+            if (!cancelled && batch.count > 0) {
+                submit(batch, model, modelExecutor, rows, in.count, totalBytes);
+            } else {
+                freeBatches.add(batch);
+            }
+            // both batches are back once every submitted one was applied
+            freeBatches.take();
+            freeBatches.take();
+        } catch (InterruptedException | ClosedByInterruptException e) {
+            // cancel() interrupted a wait for a batch, or a read, which closes the file
+            cancelled = true;
+        } catch (IOException | RuntimeException e) {
+            error = e;
+        }
+        Exception finalError = error;
+        modelExecutor.execute(() -> listener.finished(rows[0], finalError, cancelled));
+    }
+
+    private void submit(Batch batch, BlobModel model, Executor modelExecutor, long[] rows, long bytes, long totalBytes) {
+        modelExecutor.execute(() -> {
+            model.addBlobs(batch.x, batch.y, batch.r, batch.count);
+            rows[0] += batch.count;
+            batch.count = 0;
+            freeBatches.add(batch);
+            listener.progress(rows[0], bytes, totalBytes);
+        });
+    }
+
+    /**
+     * Coordinates of the rows parsed since the last hand-off
+     */
+    private static final class Batch {
+        final double[] x = new double[BATCH_SIZE];
+        final double[] y = new double[BATCH_SIZE];
+        final double[] r = new double[BATCH_SIZE];
+        int count;
+
+        void add(double bx, double by, double br) {
+            x[count] = bx;
+            y[count] = by;
+            r[count] = br;
+            count++;
+        }
+    }
+
+    private interface LineParser {
+        /**
+         * Parses one line into the batch
+         * @return false if the line held no row (e.g. a header)
+         */
+        boolean parse(String line, long lineNumber, Batch batch) throws IOException;
+    }
+
+    /**
+     * Reads x, y and optional r columns. The first line is taken as a header if its first field isn't a number.
+     */
+    private static final class CsvParser implements LineParser {
+        private int xColumn = 0, yColumn = 1, rColumn = 2;
+        private boolean firstLine = true;
+        private double[] fields = new double[3];
+
+        @Override
+        public boolean parse(String line, long lineNumber, Batch batch) throws IOException {
+            if (firstLine) {
+                firstLine = false;
+                if (!startsWithNumber(line)) {
+                    readHeader(line, lineNumber);
+                    return false;
+                }
+            }
+            int wanted = Math.max(xColumn, Math.max(yColumn, rColumn)) + 1;
+            int found = 0;
+            int start = 0;
+            while (found < wanted && start <= line.length()) {
+                int end = line.indexOf(',', start);
+                if (end < 0) end = line.length();
+                if (found == xColumn || found == yColumn || found == rColumn) {
+                    fields[found] = number(line, start, end, lineNumber);
+                }
+                found++;
+                start = end + 1;
+            }
+            if (found <= Math.max(xColumn, yColumn)) {
+                throw new IOException("Line " + lineNumber + ": expected x and y columns");
+            }
+            double r = rColumn >= 0 && found > rColumn ? fields[rColumn] : Blob.DEFAULT_RADIUS;
+            batch.add(fields[xColumn], fields[yColumn], r);
+            return true;
+        }
+
+        private void readHeader(String line, long lineNumber) throws IOException {
+            xColumn = yColumn = rColumn = -1;
+            String[] names = line.split(",");
+            for (int i = 0; i < names.length; i++) {
+                String name = names[i].trim().replace("\"", "").toLowerCase();
+                if (name.equals("x")) xColumn = i;
+                if (name.equals("y")) yColumn = i;
+                if (name.equals("r") || name.equals("radius")) rColumn = i;
+            }
+            if (xColumn < 0 || yColumn < 0) {
+                throw new IOException("Line " + lineNumber + ": header has no x and y columns");
+            }
+            fields = new double[Math.max(xColumn, Math.max(yColumn, rColumn)) + 1];
+        }
+
+        private static boolean startsWithNumber(String line) {
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (c == ' ' || c == '\t') continue;
+                return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.';
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Reads the x, y and optional r keys of a flat JSON object, ignoring any other keys
+     */
+    private static final class JsonLineParser implements LineParser {
+        @Override
+        public boolean parse(String line, long lineNumber, Batch batch) throws IOException {
+            double x = Double.NaN, y = Double.NaN, r = Blob.DEFAULT_RADIUS;
+            int i = line.indexOf('{');
+            if (i < 0) throw new IOException("Line " + lineNumber + ": expected a JSON object");
+            while (true) {
+                int keyStart = line.indexOf('"', i + 1);
+                if (keyStart < 0) break;
+                int keyEnd = line.indexOf('"', keyStart + 1);
+                int colon = keyEnd < 0 ? -1 : line.indexOf(':', keyEnd);
+                if (colon < 0) throw new IOException("Line " + lineNumber + ": malformed JSON object");
+                int valueStart = colon + 1;
+                while (valueStart < line.length() && line.charAt(valueStart) == ' ') valueStart++;
+                if (valueStart < line.length() && line.charAt(valueStart) == '"') {
+                    // string values are never coordinates, skip past them
+                    i = line.indexOf('"', valueStart + 1);
+                    if (i < 0) throw new IOException("Line " + lineNumber + ": unterminated string");
+                    continue;
+                }
+                int valueEnd = valueStart;
+                while (valueEnd < line.length() && line.charAt(valueEnd) != ',' && line.charAt(valueEnd) != '}') {
+                    valueEnd++;
+                }
+                String key = line.substring(keyStart + 1, keyEnd);
+                if (key.equals("x")) x = number(line, valueStart, valueEnd, lineNumber);
+                else if (key.equals("y")) y = number(line, valueStart, valueEnd, lineNumber);
+                else if (key.equals("r") || key.equals("radius")) r = number(line, valueStart, valueEnd, lineNumber);
+                i = valueEnd;
+            }
+            if (Double.isNaN(x) || Double.isNaN(y)) {
+                throw new IOException("Line " + lineNumber + ": expected x and y keys");
+            }
+            batch.add(x, y, r);
+            return true;
+        }
+    }
+
+    private static double number(String line, int start, int end, long lineNumber) throws IOException {
+        try {
+            return Double.parseDouble(line.substring(start, end).trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("Line " + lineNumber + ": not a number: " + line.substring(start, end).trim());
+        }
+    }
+
+    /**
+     * Counts the bytes read so progress can be reported against the file size
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        volatile long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+    }
+}
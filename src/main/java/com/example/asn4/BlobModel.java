@@ -1,15 +1,106 @@
 package com.example.asn4;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
+/**
+ * Holds the blobs of the scene. The model belongs to the thread that created it (the FX thread in the application):
+ * its methods must only be called there. Other threads use it through two doors that never make that thread wait:
+ * snapshot() hands out an immutable copy of the blobs, and submit() queues a change to be applied on the model's
+ * thread.
+ */
 public class BlobModel {
+    /** Listeners notified at most once per pulse through the scheduler */
     private List<BlobModelListener> subscribers;
+
+    /** Listeners notified immediately after every change, such as tests */
+    private List<BlobModelListener> synchronousSubscribers;
+
+    /** Coalesces notifications to the regular subscribers; without one they are notified immediately as well */
+    private NotificationScheduler scheduler;
+
+    /** Notifies the regular subscribers, handed to the scheduler */
+    private final Runnable delivery = this::deliverToSubscribers;
+
+    /** Primitive-array storage of every blob in the model, in stacking order */
+    private BlobStore store;
+
+    /** Read-only list view over the store, handing out blob handles */
     private List<Blob> blobs;
 
+    /** Smallest radius a blob can be shrunk to */
+    public static final double MIN_RADIUS = 5;
+
+    /** Spatial index over the blobs, kept in sync with every mutation so hit tests don't scan the whole list */
+    private SpatialGrid grid;
+
+    /** Areas changed since the view last drew, so it only repaints those */
+    private DirtyRegion dirty;
+
+    /** Blob counts and centroids per cell at each level of detail, kept in sync like the grid, for drawing dense
+     * areas as clusters */
+    private ClusterGrid[] clusterLevels;
+
+    /** Number of blobs each blob overlaps, kept in sync like the grid while overlaps are tracked, null otherwise */
+    private OverlapIndex overlaps;
+
+    /** Thread the model belongs to */
+    private final Thread owner;
+
+    /** Runs work on the model's thread, e.g. Platform::runLater */
+    private Executor executor = Runnable::run;
+
+    /** Number of changes made to the model so far */
+    private long version;
+
+    /** Latest snapshot published, read by any thread */
+    private volatile BlobSnapshot snapshot = BlobSnapshot.EMPTY;
+
+    /** Set once a snapshot was asked for; until then no snapshot is kept, so the model costs nothing extra */
+    private volatile boolean snapshotsWanted;
+
+    /** Publishes a snapshot of the latest changes, handed to the scheduler */
+    private final Runnable publisher = this::publishSnapshot;
+
+    /** Changes submitted from any thread, waiting to be applied in order on the model's thread */
+    private final ConcurrentLinkedQueue<Mutation> mutations = new ConcurrentLinkedQueue<>();
+
+    /** Whether a drain of the mutation queue was handed to the executor and hasn't started yet */
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
+    private final Runnable drain = this::drainMutations;
+
     public BlobModel() {
+        owner = Thread.currentThread();
         subscribers = new ArrayList<>();
-        blobs = new ArrayList<>();
+        synchronousSubscribers = new ArrayList<>();
+        store = new BlobStore(64);
+        blobs = new AbstractList<>() {
+            @Override
+            public Blob get(int index) {
+                if (index < 0 || index >= store.size) throw new IndexOutOfBoundsException(index);
+                return store.handle(index);
+            }
+
+            @Override
+            public int size() {
+                return store.size;
+            }
+        };
+        grid = new SpatialGrid(100, store);
+        dirty = new DirtyRegion();
+        clusterLevels = new ClusterGrid[ClusterGrid.LEVELS];
+        for (int level = 0; level < clusterLevels.length; level++) {
+            double cellSize = ClusterGrid.DEFAULT_CELL_SIZE * Math.pow(ClusterGrid.LEVEL_SCALE, level);
+            clusterLevels[level] = new ClusterGrid(cellSize, dirty);
+        }
     }
 
 
@@ -18,22 +109,256 @@ public class BlobModel {
         subscribers.add(sub);
     }
 
+    /**
+     * Adds a listener that is told about every change as it happens instead of once per pulse
+     * @param sub listener
+     */
+    public void addSynchronousSubscriber(BlobModelListener sub) {
+        synchronousSubscribers.add(sub);
+    }
+
+    /**
+     * Sets the scheduler used to coalesce notifications to the regular subscribers
+     * @param newScheduler scheduler shared with the other models of the application
+     */
+    public void setScheduler(NotificationScheduler newScheduler) {
+        scheduler = newScheduler;
+    }
+
     private void notifySubscribers() {
-        subscribers.forEach(BlobModelListener::modelChanged);
+        version++;
+        if (snapshotsWanted) {
+            if (scheduler == null) {
+                publishSnapshot();
+            } else {
+                scheduler.schedule(publisher);
+            }
+        }
+        // indexed so that notifying doesn't allocate an iterator on every mouse event
+        for (int i = 0; i < synchronousSubscribers.size(); i++) {
+            BlobModelListener sub = synchronousSubscribers.get(i);
+            PipelineEvents.NotificationEvent timing = PipelineEvents.beginNotification();
+            sub.modelChanged();
+            PipelineEvents.endNotification(timing, "BlobModel", sub);
+        }
+        if (subscribers.isEmpty()) return;
+        if (scheduler == null) {
+            deliverToSubscribers();
+        } else {
+            scheduler.schedule(delivery);
+        }
+    }
+
+    private void deliverToSubscribers() {
+        for (int i = 0; i < subscribers.size(); i++) {
+            BlobModelListener sub = subscribers.get(i);
+            PipelineEvents.NotificationEvent timing = PipelineEvents.beginNotification();
+            sub.modelChanged();
+            PipelineEvents.endNotification(timing, "BlobModel", sub);
+        }
+    }
+
+
+
+    // access from other threads
+
+    /**
+     * Sets how work is handed to the model's thread, for the changes submitted from other threads and the first
+     * snapshot asked for. Without one, that work runs on the calling thread, which only suits single-threaded use.
+     * @param modelExecutor runs work on the thread that owns the model, e.g. Platform::runLater
+     */
+    public void setExecutor(Executor modelExecutor) {
+        executor = modelExecutor;
+    }
+
+    /**
+     * Hands out an immutable copy of the blobs that any thread can read at its own pace. Snapshots are published at
+     * most once per pulse, so one taken on another thread can be a pulse behind the model; on the model's thread it
+     * is always current. Keeping snapshots only starts with the first call: a thread other than the model's waits
+     * for that first one to be published, later calls return straight away.
+     * @return the latest snapshot published
+     */
+    public BlobSnapshot snapshot() {
+        if (Thread.currentThread() == owner) {
+            snapshotsWanted = true;
+            publishSnapshot();
+        } else if (!snapshotsWanted) {
+            CompletableFuture<Void> published = new CompletableFuture<>();
+            executor.execute(() -> {
+                snapshotsWanted = true;
+                publishSnapshot();
+                published.complete(null);
+            });
+            published.join();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Takes a snapshot on the model's thread for a one-off copy, without keeping snapshots after every change the way
+     * snapshot() does. Only the segments written since the last snapshot are copied.
+     */
+    BlobSnapshot currentSnapshot() {
+        publishSnapshot();
+        return snapshot;
+    }
+
+    private void publishSnapshot() {
+        if (snapshot.getVersion() == version && snapshot != BlobSnapshot.EMPTY) return;
+        snapshot = BlobSnapshot.publish(store, snapshot, version);
+    }
+
+    /**
+     * Queues a change to be applied on the model's thread, in the order changes were submitted. May be called from
+     * any thread and never waits for the model.
+     * @param change calls the model's methods to make the change
+     * @return completes once the change was applied and is visible to snapshot(), or with the exception it threw
+     */
+    public CompletableFuture<Void> submit(Consumer<BlobModel> change) {
+        Mutation mutation = new Mutation(change);
+        mutations.add(mutation);
+        if (drainScheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(drain);
+            } catch (RuntimeException e) {
+                // the queue is kept; the next submit tries to hand it over again
+                drainScheduled.set(false);
+                throw e;
+            }
+        }
+        return mutation.done;
+    }
+
+    /**
+     * Applies every queued change, then completes their futures once a snapshot holding them is published
+     */
+    private void drainMutations() {
+        // cleared first, so a change queued while draining either is picked up below or schedules another drain
+        drainScheduled.set(false);
+        List<Mutation> applied = new ArrayList<>();
+        Mutation mutation;
+        while ((mutation = mutations.poll()) != null) {
+            try {
+                mutation.change.accept(this);
+                applied.add(mutation);
+            } catch (RuntimeException e) {
+                mutation.done.completeExceptionally(e);
+            }
+        }
+        if (snapshotsWanted) publishSnapshot();
+        for (Mutation m : applied) {
+            m.done.complete(null);
+        }
+    }
+
+    /**
+     * A change waiting in the queue, and the future telling its submitter when it was applied
+     */
+    private static final class Mutation {
+        final Consumer<BlobModel> change;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Mutation(Consumer<BlobModel> change) {
+            this.change = change;
+        }
     }
 
 
 
     // getter and setter methods
 
+    /**
+     * All blobs of the model in stacking order. The list is a read-only view; use the model methods to change it.
+     */
     public List<Blob> getBlobs() {
         return blobs;
     }
 
+    /**
+     * Gives the view and the selection tools direct access to the blob arrays so they can scan them without handles
+     */
+    BlobStore getStore() {
+        return store;
+    }
+
+    /**
+     * Gives selection tools access to the spatial index so they can work cell by cell
+     */
+    SpatialGrid getGrid() {
+        return grid;
+    }
+
+    /**
+     * Gives the view the per-cell blob counts it needs to draw dense areas as clusters
+     * @param level level of detail, 0 being the finest
+     */
+    ClusterGrid getClusters(int level) {
+        return clusterLevels[level];
+    }
+
+    /**
+     * Areas of the scene changed since the view last drained them
+     */
+    DirtyRegion getDirtyRegion() {
+        return dirty;
+    }
+
 
 
     // methods for manipulating data
 
+    /**
+     * Stores a blob on top of all the others and registers it in the spatial index
+     * @param b blob to store
+     */
+    private void insertBlob(Blob b) {
+        store.attach(b);
+        index(b.counter);
+        dirty.addBlob(b);
+    }
+
+    /**
+     * Registers a stored blob in the spatial index and the cluster aggregation
+     */
+    private void index(int blobId) {
+        grid.insert(blobId);
+        int slot = store.slotOf(blobId);
+        for (ClusterGrid clusters : clusterLevels) {
+            clusters.insert(blobId, store.x[slot], store.y[slot], store.r[slot]);
+        }
+        if (overlaps != null) overlaps.add(blobId);
+    }
+
+    /**
+     * Brings the indexes up to date after a blob moved or changed size
+     */
+    private void reindex(int blobId) {
+        grid.update(blobId);
+        int slot = store.slotOf(blobId);
+        for (ClusterGrid clusters : clusterLevels) {
+            clusters.update(blobId, store.x[slot], store.y[slot], store.r[slot]);
+        }
+        if (overlaps != null) overlaps.add(blobId);
+    }
+
+    /**
+     * Takes a blob's overlaps out of the counts before it moves or changes size; reindex counts them again
+     */
+    private void unoverlap(int blobId) {
+        if (overlaps != null) overlaps.remove(blobId);
+    }
+
+    /**
+     * Takes a blob out of the indexes, before it is removed from the store
+     */
+    private void unindex(int blobId) {
+        unoverlap(blobId);
+        grid.remove(blobId);
+        for (ClusterGrid clusters : clusterLevels) {
+            clusters.remove(blobId);
+        }
+    }
+
     /**
      * Used by CreateCommand to create a new blob
      * @param newX new blob x coordinate
@@ -42,7 +367,7 @@ public class BlobModel {
      */
     public Blob createBlob(double newX, double newY) {
         Blob b = new Blob(newX, newY);
-        blobs.add(b);
+        insertBlob(b);
         notifySubscribers();
         return b;
     }
@@ -52,7 +377,73 @@ public class BlobModel {
      * @param newBlob blob object to be stored
      */
     public void addBlob(Blob newBlob) {
-        blobs.add(newBlob);
+        insertBlob(newBlob);
+        notifySubscribers();
+    }
+
+    /**
+     * Adds many blobs back to the model at once, on top of the existing ones, with a single notification. Used to
+     * undo a group delete.
+     * @param newBlobs blobs to store, in the order they should be stacked
+     */
+    public void addBlobs(List<Blob> newBlobs) {
+        newBlobs.forEach(b -> {
+            if (b.store == null) insertBlob(b);
+        });
+        notifySubscribers();
+    }
+
+    /**
+     * Creates many blobs at once, on top of the existing ones, with a single notification. No handles are created, so
+     * this is the path for bulk imports.
+     * @param xs x coordinates of the new blobs
+     * @param ys y coordinates of the new blobs
+     * @param rs radii of the new blobs
+     * @param count number of entries to use from the arrays
+     */
+    public void addBlobs(double[] xs, double[] ys, double[] rs, int count) {
+        reserve(count);
+        for (int i = 0; i < count; i++) {
+            insertRow(Blob.nextOrderNumber(), xs[i], ys[i], rs[i], rs[i]);
+        }
+        finishBulkInsert();
+    }
+
+    /**
+     * Stores a blob straight into the arrays without creating a handle or notifying anyone. Used by bulk loads, which
+     * call finishBulkInsert() once they are done.
+     */
+    void insertRow(int blobId, double x, double y, double r, double initialRadius) {
+        store.add(blobId, x, y, r, initialRadius);
+        index(blobId);
+    }
+
+    /**
+     * Makes room for a number of additional blobs ahead of a bulk load
+     */
+    void reserve(int additionalBlobs) {
+        store.ensureCapacity(store.size + additionalBlobs);
+    }
+
+    /**
+     * Notifies subscribers once after blobs were stored with insertRow
+     */
+    void finishBulkInsert() {
+        dirty.markAll();
+        notifySubscribers();
+    }
+
+    /**
+     * Removes every blob from the model
+     */
+    public void clear() {
+        store.clear();
+        grid.clear();
+        for (ClusterGrid clusters : clusterLevels) {
+            clusters.clear();
+        }
+        if (overlaps != null) overlaps.clear();
+        dirty.markAll();
         notifySubscribers();
     }
 
@@ -62,17 +453,78 @@ public class BlobModel {
      * @param y
      */
     public void addBlob(double x, double y) {
-        blobs.add(new Blob(x,y));
+        insertBlob(new Blob(x,y));
         notifySubscribers();
     }
 
     public void moveBlob(Blob b, double dx, double dy) {
+        dirty.addBlob(b);
+        unoverlap(b.counter);
         b.move(dx,dy);
+        reindex(b.counter);
+        dirty.addBlob(b);
+        notifySubscribers();
+    }
+
+    public void moveBlobs(List<Blob> blobs, double dX, double dY) {
+        // called on every drag event, so loop by index rather than with a capturing lambda or an iterator
+        for (int i = 0; i < blobs.size(); i++) {
+            Blob b = blobs.get(i);
+            dirty.addBlob(b);
+            unoverlap(b.counter);
+            b.move(dX, dY);
+            reindex(b.counter);
+            dirty.addBlob(b);
+        }
+        notifySubscribers();
+    }
+
+    /**
+     * Changes the radius of a blob
+     * @param b blob to resize
+     * @param newRadius radius to give the blob
+     */
+    public void resizeBlob(Blob b, double newRadius) {
+        dirty.addBlob(b);
+        unoverlap(b.counter);
+        b.setR(newRadius);
+        reindex(b.counter);
+        dirty.addBlob(b);
         notifySubscribers();
     }
 
-    public void moveBlobs(ArrayList<Blob> blobs, double dX, double dY) {
-        blobs.forEach(b -> b.move(dX, dY));
+    /**
+     * Grows or shrinks every given blob by the same amount, never going below MIN_RADIUS
+     * @param blobs blobs to resize
+     * @param dR change in radius
+     */
+    public void resizeBlobs(List<Blob> blobs, double dR) {
+        for (int i = 0; i < blobs.size(); i++) {
+            Blob b = blobs.get(i);
+            dirty.addBlob(b);
+            unoverlap(b.counter);
+            b.setR(Math.max(MIN_RADIUS, b.getR() + dR));
+            reindex(b.counter);
+            dirty.addBlob(b);
+        }
+        notifySubscribers();
+    }
+
+    /**
+     * Gives each blob its own radius, with a single notification. Used by ResizeCommand to apply or revert a resize
+     * of a whole selection.
+     * @param blobs blobs to resize
+     * @param radii new radius of each blob, in the same order
+     */
+    public void resizeBlobs(List<Blob> blobs, double[] radii) {
+        for (int i = 0; i < blobs.size(); i++) {
+            Blob b = blobs.get(i);
+            dirty.addBlob(b);
+            unoverlap(b.counter);
+            b.setR(radii[i]);
+            reindex(b.counter);
+            dirty.addBlob(b);
+        }
         notifySubscribers();
     }
 
@@ -80,11 +532,34 @@ public class BlobModel {
      * Redraws the blobs to reflect visual changes
      */
     public void redrawBlobs() {
+        dirty.markAll();
         notifySubscribers();
     }
 
     public void deleteBlob(Blob blob) {
-        blobs.remove(blob);
+        if (blob.store == store) {
+            dirty.addBlob(blob);
+            unindex(blob.counter);
+            store.remove(store.slotOf(blob.counter));
+        }
+        notifySubscribers();
+    }
+
+    /**
+     * Deletes many blobs at once with a single pass over the blob arrays and a single notification
+     * @param deleted blobs to delete
+     */
+    public void deleteBlobs(List<Blob> deleted) {
+        int[] slots = new int[deleted.size()];
+        int count = 0;
+        for (Blob b : deleted) {
+            if (b.store != store) continue;
+            dirty.addBlob(b);
+            unindex(b.counter);
+            slots[count++] = store.slotOf(b.counter);
+        }
+        Arrays.sort(slots, 0, count);
+        store.removeSlots(slots, count);
         notifySubscribers();
     }
 
@@ -92,19 +567,88 @@ public class BlobModel {
      * Checks if the mouse is within the blob hitbox
      */
     public boolean hitBlob(double x, double y) {
-        for (Blob b : blobs) {
-            if (b.contains(x,y)) return true;
-        }
-        return false;
+        return whichHit(x, y) != null;
     }
 
     /**
-     * Distinguish which blob was pressed
+     * Distinguish which blob was pressed. When blobs overlap, the one drawn on top is returned.
+     * @return the topmost blob under the point, null if the point doesn't hit any blob
      */
     public Blob whichHit(double x, double y) {
-        for (Blob b : blobs) {
-            if (b.contains(x,y)) return b;
+        int slot = grid.topmostAt(x, y);
+        return slot < 0 ? null : store.handle(slot);
+    }
+
+
+
+    // overlap queries
+
+    /**
+     * Finds every pair of blobs that overlap. Candidate pairs come from the spatial grid, only blobs sharing a cell
+     * are compared, and each candidate is then tested exactly as two circles.
+     * @param minRatio least area shared by the two blobs over the area of the smaller one; 0 finds every pair that
+     *                 intersects
+     * @return the overlapping pairs, most overlapping first
+     */
+    public List<BlobOverlap> findOverlaps(double minRatio) {
+        SlotList pairs = new SlotList();
+        grid.candidatePairs(pairs);
+        ArrayList<BlobOverlap> found = new ArrayList<>();
+        for (int i = 0; i < pairs.size; i += 2) {
+            int a = pairs.slots[i], b = pairs.slots[i + 1];
+            double ratio = OverlapIndex.overlapRatio(store.x[a], store.y[a], store.r[a],
+                    store.x[b], store.y[b], store.r[b]);
+            if (ratio > 0 && ratio >= minRatio) {
+                found.add(new BlobOverlap(store.handle(a), store.handle(b), ratio));
+            }
         }
-        return null;
+        found.sort((o1, o2) -> Double.compare(o2.getRatio(), o1.getRatio()));
+        return found;
+    }
+
+    /**
+     * Starts keeping count of the blobs each blob overlaps, so that isOverlapping answers straight away and stays
+     * correct as blobs are added, moved, resized and deleted. Tracking costs a little on every change, so it is off
+     * until asked for.
+     * @param minRatio least overlap counted, as in findOverlaps
+     */
+    public void trackOverlaps(double minRatio) {
+        overlaps = new OverlapIndex(store, grid, dirty, minRatio);
+        notifySubscribers();
+    }
+
+    /**
+     * Stops keeping count of overlaps
+     */
+    public void stopTrackingOverlaps() {
+        if (overlaps == null) return;
+        overlaps = null;
+        dirty.markAll();
+        notifySubscribers();
+    }
+
+    public boolean isTrackingOverlaps() {
+        return overlaps != null;
+    }
+
+    /**
+     * Whether a blob overlaps another by at least the tracked ratio; always false when overlaps aren't tracked
+     */
+    public boolean isOverlapping(Blob b) {
+        return b.store == store && overlapCount(b.counter) > 0;
+    }
+
+    /**
+     * @return number of blobs a blob overlaps, 0 when overlaps aren't tracked
+     */
+    int overlapCount(int blobId) {
+        return overlaps == null ? 0 : overlaps.count(blobId);
+    }
+
+    /**
+     * @return number of blobs overlapping at least one other blob, 0 when overlaps aren't tracked
+     */
+    public int getOverlappingBlobCount() {
+        return overlaps == null ? 0 : overlaps.overlappingCount();
     }
 }
@@ -0,0 +1,42 @@
+package com.example.asn4;
+
+/**
+ * Two blobs that overlap, as found by BlobModel.findOverlaps
+ */
+public final class BlobOverlap {
+
+    private final Blob lower;
+
+    private final Blob upper;
+
+    private final double ratio;
+
+
+    BlobOverlap(Blob lower, Blob upper, double ratio) {
+        this.lower = lower;
+        this.upper = upper;
+        this.ratio = ratio;
+    }
+
+    /**
+     * @return the blob of the pair that is drawn underneath
+     */
+    public Blob getLower() {
+        return lower;
+    }
+
+    /**
+     * @return the blob of the pair that is drawn on top
+     */
+    public Blob getUpper() {
+        return upper;
+    }
+
+    /**
+     * @return area the two blobs share over the area of the smaller one, from just above 0 to 1 when the smaller
+     * blob is entirely covered
+     */
+    public double getRatio() {
+        return ratio;
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.asn4;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Set of selected blobs with constant-time membership checks. Blobs are kept in a linked hash set so iteration
+ * follows the order they were selected in, and their order numbers are mirrored in a bitset so the view can check a
+ * blob straight from the model's arrays without asking for its handle.
+ */
+class BlobSelection {
+
+    /** Selected blobs in the order they were selected */
+    private final LinkedHashSet<Blob> blobs;
+
+    /** Order numbers of the selected blobs */
+    private final BitSet ids;
+
+    /** List copy of the selection handed out to callers, rebuilt after the selection changes */
+    private List<Blob> snapshot;
+
+
+    BlobSelection() {
+        blobs = new LinkedHashSet<>();
+        ids = new BitSet();
+        snapshot = Collections.emptyList();
+    }
+
+    boolean contains(Blob b) {
+        return ids.get(b.counter) && blobs.contains(b);
+    }
+
+    boolean containsId(int blobId) {
+        return ids.get(blobId);
+    }
+
+    /**
+     * @return true if the blob wasn't selected before
+     */
+    boolean add(Blob b) {
+        if (!blobs.add(b)) return false;
+        ids.set(b.counter);
+        snapshot = null;
+        return true;
+    }
+
+    /**
+     * @return true if the blob was selected before
+     */
+    boolean remove(Blob b) {
+        if (!blobs.remove(b)) return false;
+        ids.clear(b.counter);
+        snapshot = null;
+        return true;
+    }
+
+    void clear() {
+        blobs.clear();
+        ids.clear();
+        snapshot = Collections.emptyList();
+    }
+
+    int size() {
+        return blobs.size();
+    }
+
+    boolean isEmpty() {
+        return blobs.isEmpty();
+    }
+
+    /**
+     * The selected blobs in selection order. The list is not updated by later changes to the selection, so callers can
+     * change the selection while iterating it.
+     */
+    List<Blob> asList() {
+        if (snapshot == null) {
+            snapshot = Collections.unmodifiableList(new ArrayList<>(blobs));
+        }
+        return snapshot;
+    }
+}
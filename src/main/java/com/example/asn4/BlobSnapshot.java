@@ -0,0 +1,111 @@
+package com.example.asn4;
+
+import java.util.Arrays;
+
+/**
+ * Immutable copy of a model's blobs at one version, which any thread can read while the model keeps changing on its
+ * own thread. Blobs are listed in stacking order, like the model's slots.
+ *
+ * The rows are split into segments of SEGMENT_SIZE blobs. When the model publishes a new snapshot it only copies
+ * the segments written to since the previous one and shares the others with it, so dragging a few blobs across a
+ * scene of a million copies a few segments rather than the whole scene.
+ */
+public final class BlobSnapshot {
+
+    /** Blobs per segment, as a power of two */
+    static final int SEGMENT_SHIFT = 8;
+    static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    static final BlobSnapshot EMPTY = new BlobSnapshot(0, 0, new Segment[0]);
+
+    private final long version;
+
+    private final int size;
+
+    private final Segment[] segments;
+
+
+    private BlobSnapshot(long version, int size, Segment[] segments) {
+        this.version = version;
+        this.size = size;
+        this.segments = segments;
+    }
+
+    /**
+     * Copies a store into a new snapshot, sharing the segments the store hasn't written to since the previous one,
+     * and clears the store's record of written segments. Must run on the thread that owns the store.
+     * @param store blobs to copy
+     * @param previous snapshot published before, whose untouched segments are reused
+     * @param version version of the model the snapshot is taken at
+     */
+    static BlobSnapshot publish(BlobStore store, BlobSnapshot previous, long version) {
+        int count = (store.size + SEGMENT_MASK) >>> SEGMENT_SHIFT;
+        Segment[] segments = new Segment[count];
+        for (int s = 0; s < count; s++) {
+            if (s < previous.segments.length && !store.isTouched(s)) {
+                segments[s] = previous.segments[s];
+            } else {
+                int from = s << SEGMENT_SHIFT;
+                segments[s] = new Segment(store, from, Math.min(from + SEGMENT_SIZE, store.size));
+            }
+        }
+        store.clearTouched();
+        return new BlobSnapshot(version, store.size, segments);
+    }
+
+    /**
+     * @return version of the model the snapshot was taken at; it grows with every change to the model
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return number of blobs in the snapshot
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getId(int index) {
+        return segment(index).id[index & SEGMENT_MASK];
+    }
+
+    public double getX(int index) {
+        return segment(index).x[index & SEGMENT_MASK];
+    }
+
+    public double getY(int index) {
+        return segment(index).y[index & SEGMENT_MASK];
+    }
+
+    public double getR(int index) {
+        return segment(index).r[index & SEGMENT_MASK];
+    }
+
+    public double getInitialRadius(int index) {
+        return segment(index).initialRadius[index & SEGMENT_MASK];
+    }
+
+    private Segment segment(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+        return segments[index >>> SEGMENT_SHIFT];
+    }
+
+    /**
+     * Rows of one segment, never written once made
+     */
+    private static final class Segment {
+        final int[] id;
+        final double[] x, y, r, initialRadius;
+
+        Segment(BlobStore store, int from, int to) {
+            id = Arrays.copyOfRange(store.id, from, to);
+            x = Arrays.copyOfRange(store.x, from, to);
+            y = Arrays.copyOfRange(store.y, from, to);
+            r = Arrays.copyOfRange(store.r, from, to);
+            initialRadius = Arrays.copyOfRange(store.initialRadius, from, to);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.example.asn4;
+
+import java.util.Arrays;
+
+/**
+ * Structure-of-arrays storage for the blobs of a model. Positions, radii and ids live in parallel primitive arrays
+ * indexed by slot, so scans over the scene (hit tests, selection tools, drawing) walk contiguous memory instead of
+ * chasing one heap object per blob.
+ *
+ * Slots are kept in stacking order: slot 0 is drawn first and the last slot is drawn on top. Removing a blob shifts
+ * the slots above it down by one so that order is preserved.
+ *
+ * Blob objects are only handles onto a slot. They are created on demand the first time a slot is asked for one, so
+ * blobs that are never touched individually cost nothing beyond their array entries.
+ */
+class BlobStore {
+
+    /** Blob centres, one entry per slot */
+    double[] x, y;
+
+    /** Current blob radii, one entry per slot */
+    double[] r;
+
+    /** Radius before the current resize started, one entry per slot */
+    double[] initialRadius;
+
+    /** Order number (Blob.counter) of the blob in each slot */
+    int[] id;
+
+    /** Number of slots in use */
+    int size;
+
+    /** Handle objects created so far, null for slots no one has asked a handle for */
+    private Blob[] handles;
+
+    /** Reverse lookup from a blob's order number to its slot, -1 when the blob isn't stored */
+    private int[] slotOfId;
+
+    /** One bit per BlobSnapshot segment of slots, set when a slot in it is written, so that publishing a snapshot
+     * only copies the segments that changed */
+    private long[] touched;
+
+
+    BlobStore(int capacity) {
+        capacity = Math.max(capacity, 16);
+        x = new double[capacity];
+        y = new double[capacity];
+        r = new double[capacity];
+        initialRadius = new double[capacity];
+        id = new int[capacity];
+        handles = new Blob[capacity];
+        slotOfId = new int[capacity];
+        Arrays.fill(slotOfId, -1);
+        touched = new long[touchedLength(capacity)];
+        size = 0;
+    }
+
+    private static int touchedLength(int capacity) {
+        int segments = (capacity + BlobSnapshot.SEGMENT_SIZE - 1) >>> BlobSnapshot.SEGMENT_SHIFT;
+        return (segments + 63) >>> 6;
+    }
+
+    /**
+     * Grows the slot arrays so that at least minCapacity slots fit
+     */
+    void ensureCapacity(int minCapacity) {
+        if (minCapacity <= x.length) return;
+        int newCapacity = Math.max(minCapacity, x.length + (x.length >> 1));
+        x = Arrays.copyOf(x, newCapacity);
+        y = Arrays.copyOf(y, newCapacity);
+        r = Arrays.copyOf(r, newCapacity);
+        initialRadius = Arrays.copyOf(initialRadius, newCapacity);
+        id = Arrays.copyOf(id, newCapacity);
+        handles = Arrays.copyOf(handles, newCapacity);
+        touched = Arrays.copyOf(touched, touchedLength(newCapacity));
+    }
+
+    private void ensureIdCapacity(int blobId) {
+        if (blobId < slotOfId.length) return;
+        int oldLength = slotOfId.length;
+        slotOfId = Arrays.copyOf(slotOfId, Math.max(blobId + 1, oldLength + (oldLength >> 1)));
+        Arrays.fill(slotOfId, oldLength, slotOfId.length, -1);
+    }
+
+    /**
+     * Records that a slot was written
+     */
+    void touch(int slot) {
+        int segment = slot >>> BlobSnapshot.SEGMENT_SHIFT;
+        touched[segment >>> 6] |= 1L << segment;
+    }
+
+    /**
+     * Records that a slot and every slot after it were written, as when removing shifts them down
+     */
+    void touchFrom(int slot) {
+        int segment = slot >>> BlobSnapshot.SEGMENT_SHIFT;
+        touched[segment >>> 6] |= -1L << segment;
+        Arrays.fill(touched, (segment >>> 6) + 1, touched.length, -1L);
+    }
+
+    boolean isTouched(int segment) {
+        return (touched[segment >>> 6] & (1L << segment)) != 0;
+    }
+
+    void clearTouched() {
+        Arrays.fill(touched, 0);
+    }
+
+    /**
+     * Finds where a blob is stored
+     * @param blobId order number of the blob
+     * @return slot of the blob, -1 if it isn't in the store
+     */
+    int slotOf(int blobId) {
+        return blobId >= 0 && blobId < slotOfId.length ? slotOfId[blobId] : -1;
+    }
+
+    /**
+     * Stores a blob on top of all the others without creating a handle for it
+     * @return slot the blob was stored in
+     */
+    int add(int blobId, double bx, double by, double br, double bInitialRadius) {
+        ensureCapacity(size + 1);
+        ensureIdCapacity(blobId);
+        int slot = size++;
+        x[slot] = bx;
+        y[slot] = by;
+        r[slot] = br;
+        initialRadius[slot] = bInitialRadius;
+        id[slot] = blobId;
+        handles[slot] = null;
+        slotOfId[blobId] = slot;
+        touch(slot);
+        return slot;
+    }
+
+    /**
+     * Moves a detached blob's values into the store and makes the blob a handle onto its new slot
+     * @param b blob that isn't stored anywhere
+     * @return slot the blob was stored in
+     */
+    int attach(Blob b) {
+        int slot = add(b.counter, b.getX(), b.getY(), b.getR(), b.getInitialRadius());
+        handles[slot] = b;
+        b.store = this;
+        return slot;
+    }
+
+    /**
+     * Removes the blob in a slot. If it has a handle, the handle keeps a copy of the blob's values so that it can be
+     * stored again later (undo of a delete).
+     * @param slot slot to remove
+     */
+    void remove(int slot) {
+        Blob handle = handles[slot];
+        if (handle != null) {
+            handle.detach(x[slot], y[slot], r[slot], initialRadius[slot]);
+        }
+        slotOfId[id[slot]] = -1;
+        touchFrom(slot);
+
+        int tail = size - slot - 1;
+        if (tail > 0) {
+            System.arraycopy(x, slot + 1, x, slot, tail);
+            System.arraycopy(y, slot + 1, y, slot, tail);
+            System.arraycopy(r, slot + 1, r, slot, tail);
+            System.arraycopy(initialRadius, slot + 1, initialRadius, slot, tail);
+            System.arraycopy(id, slot + 1, id, slot, tail);
+            System.arraycopy(handles, slot + 1, handles, slot, tail);
+            for (int i = slot; i < size - 1; i++) {
+                slotOfId[id[i]] = i;
+            }
+        }
+        size--;
+        handles[size] = null;
+    }
+
+    /**
+     * Removes the blobs in many slots with a single compaction pass over the arrays. Handles of removed blobs keep a
+     * copy of their values, like remove(int) does.
+     * @param slots slots to remove, sorted in increasing order without duplicates
+     * @param count number of slots to use from the array
+     */
+    void removeSlots(int[] slots, int count) {
+        if (count == 0) return;
+        touchFrom(slots[0]);
+        int write = slots[0];
+        int next = 0;
+        for (int read = slots[0]; read < size; read++) {
+            if (next < count && slots[next] == read) {
+                next++;
+                Blob handle = handles[read];
+                if (handle != null) {
+                    handle.detach(x[read], y[read], r[read], initialRadius[read]);
+                }
+                slotOfId[id[read]] = -1;
+                continue;
+            }
+            x[write] = x[read];
+            y[write] = y[read];
+            r[write] = r[read];
+            initialRadius[write] = initialRadius[read];
+            id[write] = id[read];
+            handles[write] = handles[read];
+            slotOfId[id[write]] = write;
+            write++;
+        }
+        for (int i = write; i < size; i++) {
+            handles[i] = null;
+        }
+        size = write;
+    }
+
+    /**
+     * Removes every blob. Existing handles keep a copy of their values.
+     */
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            if (handles[i] != null) {
+                handles[i].detach(x[i], y[i], r[i], initialRadius[i]);
+                handles[i] = null;
+            }
+            slotOfId[id[i]] = -1;
+        }
+        touchFrom(0);
+        size = 0;
+    }
+
+    /**
+     * Retrieves the handle for a slot, creating it if this is the first time it is asked for
+     * @param slot slot of the blob
+     * @return blob handle
+     */
+    Blob handle(int slot) {
+        Blob b = handles[slot];
+        if (b == null) {
+            b = new Blob(this, id[slot]);
+            handles[slot] = b;
+        }
+        return b;
+    }
+
+    /**
+     * Retrieves the handle for a slot only if one was created before
+     * @param slot slot of the blob
+     * @return blob handle, null if no handle exists for the slot
+     */
+    Blob handleIfPresent(int slot) {
+        return handles[slot];
+    }
+}
@@ -1,45 +1,64 @@
 package com.example.asn4;
 
+import javafx.geometry.VPos;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
-import javafx.scene.image.PixelReader;
-import javafx.scene.image.WritableImage;
+import javafx.scene.input.InputEvent;
 import javafx.scene.input.KeyCode;
 import javafx.scene.layout.StackPane;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
+import javafx.scene.text.TextAlignment;
+
+import java.util.Arrays;
 
 /**
- * This class uses 3 canvases, one shown to the user (myCanvas) and 2 hidden canvas (lassoCanvas, rectCanvas).
- * myCanvas is where the blobs, rectangle selection and tool selection visual feedback are shown to the user.
- * lassoCanvas is a hidden canvas where the area selection created by the lasso tool is created. rectCanvas stores
- * the area selection of the rectangle tool.
+ * This class stacks three canvases. The blobs are drawn on myCanvas, which is only repainted where blobs changed or
+ * were selected/unselected. The lasso and the rectangle are drawn on transparent canvases above it, so the blobs
+ * underneath are left alone as a selection tool is dragged. The rectangle's overlay is cleared and redrawn on every
+ * change, while the lasso's only gets the segments added since the last draw, so a long lasso costs the same to
+ * extend as a short one. The selection areas themselves are not rasterized anywhere: the lasso and rectangle tools
+ * in the interaction model test blobs against their geometry directly.
+ *
+ * The canvases follow the size of the view and shows the part of the world seen by the interaction model's camera.
+ * Everything is drawn in world coordinates through the camera's transform, and only the blobs within the visible
+ * world rectangle are looked at, so drawing costs depend on what is on screen rather than on the size of the scene.
  *
- * This class also uses a snapshot of the lassoCanvas and sends that snapshot to the interaction model so that, the
- * interaction model's lasso tool can use that snapshot to check if a blob is within the lasso tool's area selection.
+ * With software rendering on (Ctrl+B), myCanvas is left empty and the blobs are drawn by a SoftwareBlobLayer beneath
+ * it instead: every draw fills a display list from the same blobs and clusters and rasterizes the whole frame in tiles
+ * on the worker threads, so the two backends can be compared on the same scene.
  */
 public class BlobView extends StackPane implements BlobModelListener, IModelListener {
 
     /** pen abstraction for drawing blobs */
     private GraphicsContext gcBlobs;
 
-    /** pen abstraction for the selection tools (lasso, rectangle) shown to the user */
+    /** pen abstraction for the selection tools (lasso, rectangle) shown to the user, drawing on the overlay */
     private GraphicsContext gc;
 
-    /** pen abstraction for the lasso selection area's canvas, hidden from the user */
-    private GraphicsContext lassoGC;
-
-    /** pen abstraction for the rectangle selection area's canvas, hidden from the user */
-    private GraphicsContext rectGC;
-
-    /** Canvas where blobs and selection tool side effects are shown to the user */
+    /** Canvas where blobs are shown to the user; it also receives the mouse and key events */
     private Canvas myCanvas;
 
-    /** Canvas for the lasso selection hidden to the user */
+    /** Transparent canvas above myCanvas showing the selection tools */
+    private Canvas overlayCanvas;
+
+    /** Transparent canvas between myCanvas and overlayCanvas showing the lasso, drawn incrementally */
     private Canvas lassoCanvas;
 
-    /** Canvas for the rectangle selection hidden to the user */
-    private Canvas rectCanvas;
+    /** pen abstraction for the lasso */
+    private GraphicsContext gcLasso;
+
+    /** Number of lasso points already drawn on lassoCanvas */
+    private int lassoDrawnCount;
+
+    /** Stroke of the lasso drawn on lassoCanvas */
+    private int lassoStrokeId;
+
+    /** Camera the lasso on lassoCanvas was drawn with */
+    private double lassoLeft, lassoTop, lassoZoom;
+
+    /** Whether lassoCanvas must be redrawn from the first point, after it was resized */
+    private boolean lassoStale = true;
 
     /** Model holding the main data of the application, including the blobs created */
     private BlobModel model;
@@ -50,6 +69,70 @@ public class BlobView extends StackPane implements BlobModelListener, IModelList
     /** Stores the font style used to display a blob's order number */
     private Font font;
 
+    /** How far a blob's order number label can reach past the blob's bounds, used to pad repaint regions */
+    private static final double LABEL_MARGIN = 60;
+
+    /** Whether dense cells of blobs are drawn as a single cluster disc with a count instead of blob by blob */
+    private boolean levelOfDetail = true;
+
+    /** Least overlap flagged when overlap flags are on: a quarter of the smaller blob covered by the other */
+    private static final double FLAGGED_OVERLAP = 0.25;
+
+    /** Outline of a blob overlapping another one, and its width in screen pixels */
+    private static final Color OVERLAP_FLAG = Color.ORANGERED;
+    private static final double OVERLAP_FLAG_WIDTH = 3;
+
+    /** Fill of a cluster disc */
+    private static final Color CLUSTER_FILL = Color.DARKSLATEBLUE;
+
+    /** Smallest on-screen size of a cluster cell; the finest level of detail whose cells are at least this big at the
+     * current zoom is the one drawn */
+    private static final double MIN_CLUSTER_SCREEN_SIZE = 24;
+
+    /** Level of detail used by the current draw, null when clusters are off */
+    private ClusterGrid clusters;
+
+    /** Font of the count badge of each level of detail, sized to its discs */
+    private Font[] clusterFonts = new Font[ClusterGrid.LEVELS];
+
+    /** Slots of the blobs found by the last grid query, reused by every draw */
+    private final SlotList visibleSlots = new SlotList();
+
+    /** Text of the order numbers and cluster counts drawn so far, indexed by the number */
+    private String[] numberLabels = new String[1024];
+
+    /** Pre-rendered blob discs and order numbers */
+    private SpriteCache sprites;
+
+    /** Tells the sprite cache when a pulse is about to render, registered with the scene the view is shown in */
+    private Runnable pulseListener;
+
+    /** Blob layer rasterized on the worker threads, shown instead of myCanvas when software rendering is on */
+    private SoftwareBlobLayer softwareLayer;
+
+    /** Whether the blobs are drawn by softwareLayer rather than on myCanvas */
+    private boolean softwareRendering;
+
+    /** Display list of the frame being drawn in software, null when drawing on myCanvas */
+    private TileRasterizer displayList;
+
+    /** Frame pixels per world unit of the frame being drawn in software */
+    private double pixelScale;
+
+    /** Digits of the order numbers at the current pixel scale, null if too small to draw */
+    private TileRasterizer.GlyphSet labelGlyphs;
+
+    private static final int BLOB_ARGB = TileRasterizer.opaque(Color.STEELBLUE.getRed(),
+            Color.STEELBLUE.getGreen(), Color.STEELBLUE.getBlue());
+    private static final int SELECTED_ARGB = TileRasterizer.opaque(Color.ORCHID.getRed(),
+            Color.ORCHID.getGreen(), Color.ORCHID.getBlue());
+    private static final int OVERLAP_FLAG_ARGB = TileRasterizer.opaque(OVERLAP_FLAG.getRed(),
+            OVERLAP_FLAG.getGreen(), OVERLAP_FLAG.getBlue());
+    private static final int CLUSTER_ARGB = TileRasterizer.opaque(CLUSTER_FILL.getRed(),
+            CLUSTER_FILL.getGreen(), CLUSTER_FILL.getBlue());
+    private static final int LABEL_ARGB = 0xff000000;
+    private static final int CLUSTER_LABEL_ARGB = 0xffffffff;
+
 
 
 
@@ -57,100 +140,504 @@ public class BlobView extends StackPane implements BlobModelListener, IModelList
         // prepare canvas
         myCanvas = new Canvas(800,800);
         gcBlobs = myCanvas.getGraphicsContext2D();
-        gc = myCanvas.getGraphicsContext2D();  // gc for lasso tool and rectangle tool shown to the user
-
-        lassoCanvas = new Canvas(800, 800);  // canvas for lasso selection area (hidden)
-        lassoGC = lassoCanvas.getGraphicsContext2D();  // used to draw the area filled by the selection (hidden)
-        rectCanvas = new Canvas(800,800);
-        rectGC = rectCanvas.getGraphicsContext2D();
+        overlayCanvas = new Canvas(800,800);
+        overlayCanvas.setMouseTransparent(true);  // events go through to the blob canvas
+        gc = overlayCanvas.getGraphicsContext2D();  // gc for the rectangle tool shown to the user
+        lassoCanvas = new Canvas(800,800);
+        lassoCanvas.setMouseTransparent(true);
+        gcLasso = lassoCanvas.getGraphicsContext2D();
 
         font = new Font(15);
         gcBlobs.setFont(font);
 
+        sprites = new SpriteCache(font);
+        pulseListener = sprites::nextPulse;
+        sceneProperty().addListener((observable, oldScene, newScene) -> {
+            if (oldScene != null) oldScene.removePostLayoutPulseListener(pulseListener);
+            if (newScene != null) newScene.addPostLayoutPulseListener(pulseListener);
+        });
+
         this.setStyle("-fx-background-color: #b5e8e3;");  // set color of the background
-        this.getChildren().add(myCanvas);
+        softwareLayer = new SoftwareBlobLayer();
+        this.getChildren().addAll(softwareLayer.getNode(), myCanvas, lassoCanvas, overlayCanvas);
+
+        // the canvas fills the view whatever size the window is given
+        this.setPrefSize(800, 800);
+        myCanvas.setManaged(false);
+        myCanvas.widthProperty().bind(widthProperty());
+        myCanvas.heightProperty().bind(heightProperty());
+        overlayCanvas.setManaged(false);
+        overlayCanvas.widthProperty().bind(widthProperty());
+        overlayCanvas.heightProperty().bind(heightProperty());
+        lassoCanvas.setManaged(false);
+        lassoCanvas.widthProperty().bind(widthProperty());
+        lassoCanvas.heightProperty().bind(heightProperty());
+        // resizing a canvas clears it
+        lassoCanvas.widthProperty().addListener((observable, oldWidth, newWidth) -> lassoStale = true);
+        lassoCanvas.heightProperty().addListener((observable, oldHeight, newHeight) -> lassoStale = true);
+        myCanvas.widthProperty().addListener((observable, oldWidth, newWidth) -> viewportResized());
+        myCanvas.heightProperty().addListener((observable, oldHeight, newHeight) -> viewportResized());
     }
 
+    private void viewportResized() {
+        if (iModel != null) {
+            iModel.resizeViewport(myCanvas.getWidth(), myCanvas.getHeight());
+        }
+    }
 
+
+    /**
+     * Repaints the blobs that changed since the last draw. Only the areas recorded in the model's and iModel's dirty
+     * regions are cleared and redrawn, clipped, with just the blobs overlapping them. The whole canvas is repainted
+     * when too much changed.
+     */
     private void drawBlobs() {
-        // Clears a portion of the canvas with a transparent color value
-        gcBlobs.clearRect(0,0,myCanvas.getWidth(),myCanvas.getHeight());
-
-        model.getBlobs().forEach(b -> {
-            if (iModel.isSelected(b)) {
-                gcBlobs.setFill(Color.ORCHID);
-            } else {
-                gcBlobs.setFill(Color.STEELBLUE);
+        PipelineEvents.DrawEvent timing = PipelineEvents.beginDraw();
+        long start = System.nanoTime();
+
+        DirtyRegion modelDirty = model.getDirtyRegion();
+        DirtyRegion selectionDirty = iModel.getDirtyRegion();
+        int regions = 0, drawn;
+        if (softwareRendering && modelDirty.size() == 0 && !modelDirty.isFull()
+                && selectionDirty.size() == 0 && !selectionDirty.isFull()) {
+            // the frame shown is still up to date; camera moves and resizes mark everything dirty
+            return;
+        }
+
+        Camera camera = iModel.getCamera();
+        clusters = levelOfDetail ? model.getClusters(clusterLevel(camera.getZoom())) : null;
+        gcBlobs.save();
+        double zoom = camera.getZoom();
+        gcBlobs.setTransform(zoom, 0, 0, zoom, -camera.getLeft() * zoom, -camera.getTop() * zoom);
+        sprites.setRenderScale(zoom * outputScale());
+
+        if (softwareRendering) {
+            drawn = rasterizeAll();
+        } else if (modelDirty.isFull() || selectionDirty.isFull()
+                || modelDirty.size() + selectionDirty.size() > DirtyRegion.MAX_RECTS) {
+            drawn = redrawAll();
+        } else {
+            drawn = 0;
+            for (int i = 0; i < modelDirty.size(); i++) {
+                drawn += redrawRegion(modelDirty.getMinX(i), modelDirty.getMinY(i),
+                        modelDirty.getMaxX(i), modelDirty.getMaxY(i));
             }
+            for (int i = 0; i < selectionDirty.size(); i++) {
+                drawn += redrawRegion(selectionDirty.getMinX(i), selectionDirty.getMinY(i),
+                        selectionDirty.getMaxX(i), selectionDirty.getMaxY(i));
+            }
+            regions = modelDirty.size() + selectionDirty.size();
+        }
+        gcBlobs.restore();
+        modelDirty.clear();
+        selectionDirty.clear();
+        sprites.flush();
+        sprites.reportTo(PipelineMetrics.INSTANCE);
+
+        PipelineMetrics.INSTANCE.redrawn(System.nanoTime() - start);
+        if (timing != null) {
+            timing.end();
+            if (timing.shouldCommit()) {
+                timing.phase = softwareRendering ? "rasterizeBlobs" : "drawBlobs";
+                timing.regions = regions;
+                timing.blobs = drawn;
+                timing.commit();
+            }
+        }
+    }
 
-            gcBlobs.fillOval(b.x-b.r,b.y-b.r,b.r*2,b.r*2);
-            gcBlobs.setFill(Color.BLACK);
-            gcBlobs.fillText(String.valueOf(b.counter), b.x-3,b.y+3);
-        });
+    /**
+     * Clears the whole canvas and draws every blob the camera sees
+     * @return number of blobs drawn
+     */
+    private int redrawAll() {
+        Camera camera = iModel.getCamera();
+        double left = camera.getLeft(), top = camera.getTop(), right = camera.getRight(), bottom = camera.getBottom();
+        // Clears a portion of the canvas with a transparent color value; a software frame starts out cleared
+        if (displayList == null) gcBlobs.clearRect(left, top, right - left, bottom - top);
+
+        BlobStore store = model.getStore();
+        model.getGrid().slotsIntersecting(left - LABEL_MARGIN, top - LABEL_MARGIN,
+                right + LABEL_MARGIN, bottom + LABEL_MARGIN, visibleSlots);
+        int drawn = 0;
+        for (int i = 0; i < visibleSlots.size; i++) {
+            int slot = visibleSlots.slots[i];
+            if (hiddenInCluster(store, slot)) continue;
+            drawBlob(store, slot);
+            drawn++;
+        }
+        return drawn + drawClusters(left, top, right, bottom);
     }
 
+    /**
+     * Draws every blob the camera sees into a display list and rasterizes it, in parallel, into the software layer's
+     * frame. The FX thread waits for the workers, as it does for a parallel hit test.
+     * @return number of blobs drawn
+     */
+    private int rasterizeAll() {
+        Camera camera = iModel.getCamera();
+        double scale = outputScale();
+        pixelScale = camera.getZoom() * scale;
+        displayList = softwareLayer.begin(getWidth(), getHeight(), scale);
+        labelGlyphs = softwareLayer.glyphs(font.getSize() * pixelScale);
+        try {
+            int drawn = redrawAll();
+            softwareLayer.publish();
+            return drawn;
+        } finally {
+            displayList = null;
+        }
+    }
 
     /**
-     * Draws a rectangle and lasso selection tools to the canvas myCanvas where users can see them. The selection area
-     * of the rectangle and lasso tool are hidden to the user and drawn in selectionCanvas.
-     *
-     * Every time this function is called, the snapshot image of lassoCanvas is sent to the interaction model so that a
-     * copy of the snapshot can be used by the object instance of the lasso tool stored in the interaction model. The
-     * rectangle selection doesn't need a canvas snapshot. It only needs to send the dimensions of the selection to
-     * the iModel.
+     * @return horizontal position of a world x in the software frame, in pixels
      */
-    private void drawSelection() {
-        // drawing rectangle selection to the canvas shown to the user
-        gc.setStroke(Color.GREEN);
+    private double frameX(double x) {
+        return (x - iModel.getCamera().getLeft()) * pixelScale;
+    }
 
-        double boxLeft, boxTop, boxWidth, boxHeight;
-        boxLeft = iModel.getRectStartingX();
-        boxTop = iModel.getRectStartingY();
-        boxWidth = iModel.getDragMouseCursorX() - iModel.getRectStartingX();
-        boxHeight = iModel.getDragMouseCursorY() - iModel.getRectStartingY();
+    /**
+     * @return vertical position of a world y in the software frame, in pixels
+     */
+    private double frameY(double y) {
+        return (y - iModel.getCamera().getTop()) * pixelScale;
+    }
+
+    /**
+     * Draws the clusters whose disc can reach into an area of the world
+     * @return number of clusters drawn
+     */
+    private int drawClusters(double left, double top, double right, double bottom) {
+        if (clusters == null) return 0;
+        // a cluster disc stays within half a cell of its cell
+        double reach = clusters.getCellSize();
+        int minCol = clusters.cellOf(left - reach), maxCol = clusters.cellOf(right + reach);
+        int minRow = clusters.cellOf(top - reach), maxRow = clusters.cellOf(bottom + reach);
+        int drawn = 0;
+        if ((long) (maxCol - minCol + 1) * (maxRow - minRow + 1) > clusters.capacity()) {
+            // fewer table entries than cells in the area
+            for (int i = 0; i < clusters.capacity(); i++) {
+                if (!clusters.isDense(i)) continue;
+                double x = clusters.centroidX(i), y = clusters.centroidY(i);
+                if (x < left - reach || x > right + reach || y < top - reach || y > bottom + reach) continue;
+                drawCluster(i);
+                drawn++;
+            }
+            return drawn;
+        }
+        for (int col = minCol; col <= maxCol; col++) {
+            for (int row = minRow; row <= maxRow; row++) {
+                int index = clusters.indexOf(col, row);
+                if (clusters.isDense(index)) {
+                    drawCluster(index);
+                    drawn++;
+                }
+            }
+        }
+        return drawn;
+    }
+
+    /**
+     * @return the finest level of detail whose cells are at least MIN_CLUSTER_SCREEN_SIZE pixels wide at a zoom
+     */
+    private static int clusterLevel(double zoom) {
+        double cellSize = ClusterGrid.DEFAULT_CELL_SIZE;
+        for (int level = 0; level < ClusterGrid.LEVELS - 1; level++, cellSize *= ClusterGrid.LEVEL_SCALE) {
+            if (cellSize * zoom >= MIN_CLUSTER_SCREEN_SIZE) return level;
+        }
+        return ClusterGrid.LEVELS - 1;
+    }
+
+    /**
+     * Clears the area around a changed rectangle and redraws, clipped to that area, every blob that could have pixels
+     * in it
+     * @return number of blobs drawn
+     */
+    private int redrawRegion(double minX, double minY, double maxX, double maxY) {
+        // the changed blob's label may have been drawn outside its bounds, so clear a bit more than the rectangle
+        Camera camera = iModel.getCamera();
+        double left = Math.max(minX - LABEL_MARGIN, camera.getLeft());
+        double top = Math.max(minY - LABEL_MARGIN, camera.getTop());
+        double right = Math.min(maxX + LABEL_MARGIN, camera.getRight());
+        double bottom = Math.min(maxY + LABEL_MARGIN, camera.getBottom());
+        if (left >= right || top >= bottom) return 0;  // off screen
+
+        gcBlobs.save();
+        gcBlobs.beginPath();
+        gcBlobs.rect(left, top, right - left, bottom - top);
+        gcBlobs.clip();
+        gcBlobs.clearRect(left, top, right - left, bottom - top);
+
+        // blobs further away can still reach into the cleared area with their labels
+        BlobStore store = model.getStore();
+        model.getGrid().slotsIntersecting(left - LABEL_MARGIN, top - LABEL_MARGIN,
+                right + LABEL_MARGIN, bottom + LABEL_MARGIN, visibleSlots);
+        int drawn = 0;
+        for (int i = 0; i < visibleSlots.size; i++) {
+            int slot = visibleSlots.slots[i];
+            if (hiddenInCluster(store, slot)) continue;
+            drawBlob(store, slot);
+            drawn++;
+        }
 
-        gc.strokeRect(boxLeft, boxTop, boxWidth, boxHeight);  // draw rectangle selection border for the user
+        drawn += drawClusters(left, top, right, bottom);
+        gcBlobs.restore();
+        return drawn;
+    }
 
-        // create the selection area of the rectangle tool hidden to the user
-        rectGC.fillRect(boxLeft, boxTop, boxWidth, boxHeight);
+    /**
+     * Whether a blob is left out because its cell is drawn as a cluster. Blobs shown as selected are always drawn so
+     * the selection stays visible.
+     */
+    private boolean hiddenInCluster(BlobStore store, int slot) {
+        return clusters != null && !iModel.isShownSelected(store.id[slot])
+                && clusters.isDenseAt(store.x[slot], store.y[slot]);
+    }
 
-        // store the new dimensions of the rectangle selection to the iModel so that controller can use it to find blobs
-        iModel.storeRectSelectionDimension(boxLeft, boxTop, boxWidth, boxHeight);
+    /**
+     * Draws a dense cell as one disc at the centroid of its blobs, labelled with how many blobs it stands for
+     */
+    private void drawCluster(int index) {
+        double x = clusters.centroidX(index), y = clusters.centroidY(index);
+        double r = clusters.getCellSize() / 2;
+        if (displayList != null) {
+            rasterizeCluster(index, x, y, r);
+            return;
+        }
+        gcBlobs.setFill(CLUSTER_FILL);
+        gcBlobs.fillOval(x - r, y - r, r * 2, r * 2);
+
+        int level = clusterLevel(iModel.getCamera().getZoom());
+        if (clusterFonts[level] == null) clusterFonts[level] = new Font(r * 0.8);
+        gcBlobs.setFont(clusterFonts[level]);
+        gcBlobs.setFill(Color.WHITE);
+        gcBlobs.setTextAlign(TextAlignment.CENTER);
+        gcBlobs.setTextBaseline(VPos.CENTER);
+        gcBlobs.fillText(numberLabel(clusters.count(index)), x, y);
+        gcBlobs.setTextAlign(TextAlignment.LEFT);
+        gcBlobs.setTextBaseline(VPos.BASELINE);
+        gcBlobs.setFont(font);
+    }
 
+    /**
+     * Adds a cluster disc and its count, centred on it, to the software display list
+     */
+    private void rasterizeCluster(int index, double x, double y, double r) {
+        double fx = frameX(x), fy = frameY(y);
+        displayList.addDisc(fx, fy, r * pixelScale, CLUSTER_ARGB);
+        TileRasterizer.GlyphSet glyphs = softwareLayer.glyphs(r * 0.8 * pixelScale);
+        if (glyphs == null) return;
+        int count = clusters.count(index);
+        // centre the digits' box on the disc, as fillText does with VPos.CENTER
+        double baseline = fy + glyphs.ascent - glyphs.height / 2.0;
+        displayList.addNumber(fx - glyphs.advance(count) / 2, baseline, count, glyphs, CLUSTER_LABEL_ARGB);
+    }
 
-        // drawing lasso selection to the canvas shown to the user
-        if (!iModel.getLassoPathStatus()) {
-            // draw path during lasso selection
+    /**
+     * Turns drawing the blob layer in software on or off. Switching back to the canvas repaints it, since it was left
+     * empty while the software layer was shown.
+     * @param enabled true to rasterize the blobs on the worker threads, false to draw them on the canvas
+     */
+    public void setSoftwareRendering(boolean enabled) {
+        if (enabled == softwareRendering) return;
+        softwareRendering = enabled;
+        softwareLayer.getNode().setVisible(enabled);
+        gcBlobs.clearRect(0, 0, myCanvas.getWidth(), myCanvas.getHeight());
+        if (!enabled) softwareLayer.dispose();
+        model.redrawBlobs();
+    }
+
+    public boolean isSoftwareRendering() {
+        return softwareRendering;
+    }
 
-            gc.setFill(Color.RED);
-            // for showing the user the dots of the lasso tool
-            iModel.getPoints().forEach(p -> gc.fillOval(p.getX()-3,p.getY()-3,6,6));
+    /**
+     * Turns drawing dense areas as clusters on or off and repaints everything
+     * @param enabled true to draw clusters, false to always draw every blob
+     */
+    public void setLevelOfDetail(boolean enabled) {
+        levelOfDetail = enabled;
+        model.redrawBlobs();
+    }
 
-            // for the hidden canvas where bitmaps get compared to distinguish selection (hidden from user)
-            iModel.getPoints().forEach(p -> lassoGC.fillOval(p.getX()-3,p.getY()-3,6,6));
+    public boolean isLevelOfDetail() {
+        return levelOfDetail;
+    }
 
+    /**
+     * Turns outlining the blobs that overlap another one on or off. The model keeps the overlaps up to date, so the
+     * outlines follow the blobs as they are dragged.
+     * @param enabled true to flag overlapping blobs
+     */
+    public void setOverlapFlags(boolean enabled) {
+        if (enabled) {
+            model.trackOverlaps(FLAGGED_OVERLAP);
         } else {
-            // when path creation is completed, fill the area to indicate the lasso selection
+            model.stopTrackingOverlaps();
+        }
+    }
 
-            lassoGC.setFill(Color.ORANGE);
-            lassoGC.beginPath();
+    /**
+     * Draws a single blob and its order number, reading straight from the model's arrays. Both come from the sprite
+     * cache; only discs too big for an image and labels that don't fit in the atlas are rasterized here.
+     */
+    private void drawBlob(BlobStore store, int slot) {
+        int id = store.id[slot];
+        // while a selection tool is dragged, blobs are shown as they will be once it is released
+        boolean selected = iModel.isShownSelected(id);
+        double x = store.x[slot], y = store.y[slot], r = store.r[slot];
+        if (displayList != null) {
+            rasterizeBlob(id, selected, x, y, r);
+            return;
+        }
 
-            if (iModel.getPoints().size() != 0) {
-                // moving to the specified coordinates
-                lassoGC.moveTo(iModel.getPoints().get(0).getX(),iModel.getPoints().get(0).getY());
+        if (!sprites.drawDisc(gcBlobs, x, y, r, selected)) {
+            gcBlobs.setFill(selected ? Color.ORCHID : Color.STEELBLUE);
+            gcBlobs.fillOval(x-r,y-r,r*2,r*2);
+        }
+        if (model.overlapCount(id) > 0) {
+            // stroked inside the disc so that it stays within the area repainted for the blob
+            double width = Math.min(r, OVERLAP_FLAG_WIDTH / iModel.getCamera().getZoom());
+            gcBlobs.setStroke(OVERLAP_FLAG);
+            gcBlobs.setLineWidth(width);
+            gcBlobs.strokeOval(x-r+width/2, y-r+width/2, r*2-width, r*2-width);
+        }
+        if (!sprites.drawLabel(gcBlobs, id, x-3, y+3)) {
+            gcBlobs.setFill(Color.BLACK);
+            gcBlobs.fillText(numberLabel(id), x-3,y+3);
+        }
+    }
 
-                // Creates a line path element by drawing a straight line from the current coordinate to the new coordinates
-                iModel.getPoints().forEach(p -> lassoGC.lineTo(p.getX(),p.getY()));
-            }
+    /**
+     * Adds a blob, its overlap flag and its order number to the software display list
+     */
+    private void rasterizeBlob(int id, boolean selected, double x, double y, double r) {
+        double fx = frameX(x), fy = frameY(y), fr = r * pixelScale;
+        displayList.addDisc(fx, fy, fr, selected ? SELECTED_ARGB : BLOB_ARGB);
+        if (model.overlapCount(id) > 0) {
+            double width = Math.min(fr, OVERLAP_FLAG_WIDTH * pixelScale / iModel.getCamera().getZoom());
+            displayList.addRing(fx, fy, fr, fr - width, OVERLAP_FLAG_ARGB);
+        }
+        if (labelGlyphs != null) {
+            displayList.addNumber(frameX(x - 3), frameY(y + 3), id, labelGlyphs, LABEL_ARGB);
+        }
+    }
+
+    /**
+     * @return physical pixels per logical pixel of the screen showing the view, e.g. 2 on a HiDPI display
+     */
+    private double outputScale() {
+        if (getScene() == null || getScene().getWindow() == null) return 1;
+        return getScene().getWindow().getOutputScaleX();
+    }
+
+    /**
+     * @return the text of a non-negative number, made once and reused so redrawing labels doesn't create strings
+     */
+    private String numberLabel(int n) {
+        if (n >= numberLabels.length) {
+            numberLabels = Arrays.copyOf(numberLabels, Math.max(n + 1, numberLabels.length * 2));
+        }
+        String label = numberLabels[n];
+        if (label == null) {
+            label = String.valueOf(n);
+            numberLabels[n] = label;
+        }
+        return label;
+    }
+
+
+    /**
+     * Clears the overlay canvas and draws the rectangle and lasso selection tools on it while the user drags them.
+     *
+     * Nothing is sent back to the iModel: the rectangle tool keeps its dimensions up to date as its ending point moves
+     * and the lasso tool tests blobs against the points it already stores, so both can find their blobs without a draw
+     * happening first.
+     */
+    private void drawSelection() {
+        PipelineEvents.DrawEvent timing = PipelineEvents.beginDraw();
 
-            lassoGC.closePath();
-            lassoGC.fill();
+        gc.clearRect(0, 0, overlayCanvas.getWidth(), overlayCanvas.getHeight());
+
+        // the tools are stored in world coordinates, keep their strokes one pixel wide whatever the zoom
+        Camera camera = iModel.getCamera();
+        double zoom = camera.getZoom();
+        gc.save();
+        gc.setTransform(zoom, 0, 0, zoom, -camera.getLeft() * zoom, -camera.getTop() * zoom);
+        gc.setLineWidth(1 / zoom);
+
+        double boxLeft, boxTop, boxWidth, boxHeight;
+        boxLeft = iModel.getRectStartingX();
+        boxTop = iModel.getRectStartingY();
+        boxWidth = iModel.getRectEndingX() - iModel.getRectStartingX();
+        boxHeight = iModel.getRectEndingY() - iModel.getRectStartingY();
+
+        // the tools are only shown while a selection is being dragged
+        boolean dragging = !iModel.getLassoPathStatus() && iModel.getLassoPointCount() > 0;
+        if (dragging) {
+            // drawing rectangle selection to the canvas shown to the user
+            gc.setStroke(Color.GREEN);
+            gc.strokeRect(boxLeft, boxTop, boxWidth, boxHeight);  // draw rectangle selection border for the user
         }
+        gc.restore();
+        drawLasso(dragging);
+
+        if (timing != null) {
+            timing.end();
+            if (timing.shouldCommit()) {
+                timing.phase = "drawSelection";
+                timing.commit();
+            }
+        }
+    }
 
-        WritableImage lassoBuffer = lassoCanvas.snapshot(null, null);
-        PixelReader lassoReader = lassoBuffer.getPixelReader();
-        iModel.storeLassoCanvasSnapshot(lassoReader);  // stores/updates the photo of the canvas where area selection is stored
-        lassoGC.clearRect(0,0,myCanvas.getWidth(),myCanvas.getHeight());
+
+    /**
+     * Draws the lasso path on its canvas. Only the segments from the last point drawn to the newest one are stroked,
+     * unless the lasso was cleared, simplified or moved by the camera, in which case it is drawn again from its first
+     * point.
+     * @param dragging whether the lasso is being drawn; otherwise the canvas is cleared
+     */
+    private void drawLasso(boolean dragging) {
+        int count = iModel.getLassoPointCount();
+        int strokeId = iModel.getLassoStrokeId();
+        Camera camera = iModel.getCamera();
+        boolean cameraMoved = camera.getLeft() != lassoLeft || camera.getTop() != lassoTop
+                || camera.getZoom() != lassoZoom;
+        if (!dragging || lassoStale || cameraMoved || strokeId != lassoStrokeId || count < lassoDrawnCount) {
+            if (lassoDrawnCount > 0 || lassoStale) {
+                gcLasso.clearRect(0, 0, lassoCanvas.getWidth(), lassoCanvas.getHeight());
+            }
+            lassoDrawnCount = 0;
+            lassoStrokeId = strokeId;
+            lassoStale = false;
+            lassoLeft = camera.getLeft();
+            lassoTop = camera.getTop();
+            lassoZoom = camera.getZoom();
+        }
+        if (!dragging || count == lassoDrawnCount) return;
+
+        double zoom = camera.getZoom();
+        gcLasso.save();
+        gcLasso.setTransform(zoom, 0, 0, zoom, -camera.getLeft() * zoom, -camera.getTop() * zoom);
+        if (count == 1) {
+            // a single point has no segment yet, show where the lasso starts
+            double dot = 2 / zoom;
+            gcLasso.setFill(Color.RED);
+            gcLasso.fillOval(iModel.getLassoPointX(0) - dot, iModel.getLassoPointY(0) - dot, dot * 2, dot * 2);
+        } else {
+            gcLasso.setStroke(Color.RED);
+            gcLasso.setLineWidth(2 / zoom);
+            gcLasso.beginPath();
+            int first = Math.max(lassoDrawnCount - 1, 0);
+            gcLasso.moveTo(iModel.getLassoPointX(first), iModel.getLassoPointY(first));
+            for (int i = first + 1; i < count; i++) {
+                gcLasso.lineTo(iModel.getLassoPointX(i), iModel.getLassoPointY(i));
+            }
+            gcLasso.stroke();
+        }
+        gcLasso.restore();
+        lassoDrawnCount = count;
     }
 
 
@@ -161,6 +648,7 @@ public class BlobView extends StackPane implements BlobModelListener, IModelList
 
     public void setIModel(InteractionModel newIModel) {
         iModel = newIModel;
+        viewportResized();
     }
 
 
@@ -173,35 +661,46 @@ public class BlobView extends StackPane implements BlobModelListener, IModelList
     @Override
     public void iModelChanged() {
         drawBlobs();
+        drawSelection();  // the camera may have moved under the tools
     }
 
 
     @Override
     public void iModelChangedSelection() {
-        drawBlobs();
-        drawSelection();
+        drawSelection();  // only the tools changed, the blob layer stays as it is
     }
 
 
     public void setController(BlobController controller) {
         myCanvas.setFocusTraversable(true);
         myCanvas.setOnKeyPressed(e -> {
-            if (e.getCode() == KeyCode.DELETE) {
-                controller.deleteBlobs();
+            controller.handleKeyPressed(e);
+            if (e.isControlDown() && e.getCode() == KeyCode.L) {
+                setLevelOfDetail(!levelOfDetail);
+            }
+            if (e.isControlDown() && e.getCode() == KeyCode.B) {
+                setSoftwareRendering(!softwareRendering);
+            }
+            if (e.isControlDown() && e.getCode() == KeyCode.F) {
+                setOverlapFlags(!model.isTrackingOverlaps());
             }
-            if (e.isControlDown() && e.getCode() == KeyCode.Z) {
-                controller.handleUndo();
+            if (e.isControlDown() && e.getCode() == KeyCode.T) {
+                controller.toggleRecording();
             }
-            if (e.isControlDown() && e.getCode() == KeyCode.R) {
-                controller.handleRedo();
+            if (e.isControlDown() && e.getCode() == KeyCode.P) {
+                // Ctrl+P replays at the recorded pace, Ctrl+Shift+P as fast as possible
+                controller.replayTrace(myCanvas, !e.isShiftDown());
             }
         });
+        // every event reaching the canvas goes past the recorder first
+        myCanvas.addEventFilter(InputEvent.ANY, controller::recordInput);
         myCanvas.setOnMousePressed(controller::handlePressed);
         myCanvas.setOnMouseDragged(e -> {
             controller.handleDragged(e);
             controller.storeDraggingCursor(e);
         });
         myCanvas.setOnMouseReleased(controller::handleReleased);
+        myCanvas.setOnScroll(controller::handleScroll);
         myCanvas.setOnMouseMoved(controller::storeMovingCursor);
     }
 }
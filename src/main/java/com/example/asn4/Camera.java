@@ -0,0 +1,120 @@
+package com.example.asn4;
+
+/**
+ * Maps between world coordinates, which the blobs and the selection tools use, and screen coordinates on the canvas.
+ * The camera is the world position shown at the canvas' top-left corner plus a zoom factor (screen pixels per world
+ * unit). It is held by the interaction model, which notifies the view whenever it changes.
+ */
+public class Camera {
+
+    /** Zoom limits, in screen pixels per world unit */
+    public static final double MIN_ZOOM = 0.05, MAX_ZOOM = 8;
+
+    /** World position shown at the top-left corner of the canvas */
+    private double left, top;
+
+    /** Screen pixels per world unit */
+    private double zoom;
+
+    /** Size of the canvas in screen pixels */
+    private double viewportWidth, viewportHeight;
+
+
+    public Camera(double newViewportWidth, double newViewportHeight) {
+        viewportWidth = newViewportWidth;
+        viewportHeight = newViewportHeight;
+        zoom = 1;
+    }
+
+
+
+    public double getLeft() {
+        return left;
+    }
+
+    public double getTop() {
+        return top;
+    }
+
+    public double getZoom() {
+        return zoom;
+    }
+
+    public double getViewportWidth() {
+        return viewportWidth;
+    }
+
+    public double getViewportHeight() {
+        return viewportHeight;
+    }
+
+    void setViewportSize(double width, double height) {
+        viewportWidth = width;
+        viewportHeight = height;
+    }
+
+    // conversions
+
+    public double toWorldX(double screenX) {
+        return left + screenX / zoom;
+    }
+
+    public double toWorldY(double screenY) {
+        return top + screenY / zoom;
+    }
+
+    public double toScreenX(double worldX) {
+        return (worldX - left) * zoom;
+    }
+
+    public double toScreenY(double worldY) {
+        return (worldY - top) * zoom;
+    }
+
+    /** @return world x coordinate of the right edge of the canvas */
+    public double getRight() {
+        return left + viewportWidth / zoom;
+    }
+
+    /** @return world y coordinate of the bottom edge of the canvas */
+    public double getBottom() {
+        return top + viewportHeight / zoom;
+    }
+
+    // changes, made through the interaction model so the view gets notified
+
+    /**
+     * Moves the view by a distance in screen pixels; dragging the scene right moves the camera left
+     */
+    void pan(double screenDX, double screenDY) {
+        left -= screenDX / zoom;
+        top -= screenDY / zoom;
+    }
+
+    /**
+     * Multiplies the zoom, keeping the world point under (screenX, screenY) in place
+     */
+    void zoomAt(double factor, double screenX, double screenY) {
+        double worldX = toWorldX(screenX), worldY = toWorldY(screenY);
+        zoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom * factor));
+        left = worldX - screenX / zoom;
+        top = worldY - screenY / zoom;
+    }
+
+    /**
+     * Shows a given world position at the top-left corner at a given zoom
+     */
+    void moveTo(double newLeft, double newTop, double newZoom) {
+        left = newLeft;
+        top = newTop;
+        zoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, newZoom));
+    }
+
+    /**
+     * Goes back to showing the world origin at 1:1
+     */
+    void reset() {
+        left = top = 0;
+        zoom = 1;
+    }
+}
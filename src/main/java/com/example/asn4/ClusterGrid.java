@@ -0,0 +1,273 @@
+package com.example.asn4;
+
+import java.util.Arrays;
+
+/**
+ * Aggregates blobs into small square cells for level-of-detail drawing. Each blob counts towards the cell holding its
+ * centre, and every cell keeps the number of blobs in it and the sum of their centres, so its centroid is known
+ * without looking at the blobs. The sums are adjusted as blobs are added, moved and removed, so the aggregation is
+ * never rebuilt.
+ *
+ * A cell holding at least denseCount blobs is dense: the view draws it as a single disc instead of its blobs. When a
+ * cell turns dense or sparse, the area its blobs cover is added to the model's dirty region so the view repaints it,
+ * and while it is dense every change to it marks the area of its disc.
+ *
+ * The model keeps one grid per level of detail, each with cells four times as wide as the one before, so that the
+ * view can pick the level whose cells are about the same size on screen at the current zoom.
+ */
+class ClusterGrid {
+
+    /** Width and height of a cluster cell at the finest level */
+    static final double DEFAULT_CELL_SIZE = 32;
+
+    /** Number of levels of detail the model keeps, each with cells LEVEL_SCALE times wider than the one before */
+    static final int LEVELS = 4;
+    static final double LEVEL_SCALE = 4;
+
+    /** Default number of blobs from which a cell is drawn as one cluster */
+    static final int DEFAULT_DENSE_COUNT = 8;
+
+    private static final long NO_CELL = Long.MIN_VALUE;
+
+    private final double cellSize;
+
+    private int denseCount = DEFAULT_DENSE_COUNT;
+
+    /** Dirty region of the model, told about cells turning dense or sparse */
+    private final DirtyRegion dirty;
+
+    // open-addressing table of cells; entries stay once created so indexes are stable between rehashes
+    private long[] keys;
+    private boolean[] used;
+    private int[] count;
+    private double[] sumX, sumY;
+
+    /** Largest radius of a blob in the cell since it was last empty, to bound the area its blobs cover */
+    private double[] maxR;
+
+    private int cellCount;
+
+    /** Cell (packed key) and centre each blob was counted with, indexed by order number */
+    private long[] cellOfId;
+    private double[] xOfId, yOfId;
+
+
+    ClusterGrid(double cellSize, DirtyRegion dirty) {
+        this.cellSize = cellSize;
+        this.dirty = dirty;
+        allocate(1024);
+        cellOfId = new long[256];
+        Arrays.fill(cellOfId, NO_CELL);
+        xOfId = new double[256];
+        yOfId = new double[256];
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        used = new boolean[capacity];
+        count = new int[capacity];
+        sumX = new double[capacity];
+        sumY = new double[capacity];
+        maxR = new double[capacity];
+        cellCount = 0;
+    }
+
+    private static long key(int col, int row) {
+        return ((long) col << 32) | (row & 0xffffffffL);
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    int cellOf(double v) {
+        return (int) Math.floor(v / cellSize);
+    }
+
+    double getCellSize() {
+        return cellSize;
+    }
+
+    int getDenseCount() {
+        return denseCount;
+    }
+
+    /**
+     * Sets how many blobs a cell needs to be drawn as a cluster. Every cell may change, so the whole canvas is marked
+     * dirty.
+     */
+    void setDenseCount(int newDenseCount) {
+        denseCount = Math.max(2, newDenseCount);
+        dirty.markAll();
+    }
+
+    /**
+     * @return table index of the cell, -1 if no blob was ever counted in it
+     */
+    int indexOf(int col, int row) {
+        long k = key(col, row);
+        int mask = keys.length - 1;
+        for (int i = hash(k) & mask; used[i]; i = (i + 1) & mask) {
+            if (keys[i] == k) return i;
+        }
+        return -1;
+    }
+
+    private int indexOrCreate(long k) {
+        int mask = keys.length - 1;
+        int i = hash(k) & mask;
+        for (; used[i]; i = (i + 1) & mask) {
+            if (keys[i] == k) return i;
+        }
+        used[i] = true;
+        keys[i] = k;
+        if (++cellCount * 2 > keys.length) {
+            rehash(keys.length * 2);
+            return indexOf((int) (k >> 32), (int) k);
+        }
+        return i;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        boolean[] oldUsed = used;
+        int[] oldCount = count;
+        double[] oldSumX = sumX, oldSumY = sumY, oldMaxR = maxR;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (!oldUsed[j]) continue;
+            int i = hash(oldKeys[j]) & mask;
+            while (used[i]) i = (i + 1) & mask;
+            used[i] = true;
+            keys[i] = oldKeys[j];
+            count[i] = oldCount[j];
+            sumX[i] = oldSumX[j];
+            sumY[i] = oldSumY[j];
+            maxR[i] = oldMaxR[j];
+            cellCount++;
+        }
+    }
+
+    /** Table capacity, for iterating every cell by index */
+    int capacity() {
+        return keys.length;
+    }
+
+    boolean isDense(int index) {
+        return index >= 0 && used[index] && count[index] >= denseCount;
+    }
+
+    /**
+     * @return whether the blob centred at (x, y) lies in a dense cell
+     */
+    boolean isDenseAt(double x, double y) {
+        return isDense(indexOf(cellOf(x), cellOf(y)));
+    }
+
+    int count(int index) {
+        return count[index];
+    }
+
+    double centroidX(int index) {
+        return sumX[index] / count[index];
+    }
+
+    double centroidY(int index) {
+        return sumY[index] / count[index];
+    }
+
+    /**
+     * Counts a blob in the cell holding its centre
+     */
+    void insert(int blobId, double x, double y, double r) {
+        if (blobId >= cellOfId.length) {
+            int oldLength = cellOfId.length;
+            int newLength = Math.max(blobId + 1, oldLength * 2);
+            cellOfId = Arrays.copyOf(cellOfId, newLength);
+            Arrays.fill(cellOfId, oldLength, newLength, NO_CELL);
+            xOfId = Arrays.copyOf(xOfId, newLength);
+            yOfId = Arrays.copyOf(yOfId, newLength);
+        }
+        long k = key(cellOf(x), cellOf(y));
+        int i = indexOrCreate(k);
+        count[i]++;
+        sumX[i] += x;
+        sumY[i] += y;
+        maxR[i] = Math.max(maxR[i], r);
+        if (count[i] == denseCount) {
+            changedDensity(i);
+        } else if (count[i] > denseCount) {
+            changedCluster(i);
+        }
+
+        cellOfId[blobId] = k;
+        xOfId[blobId] = x;
+        yOfId[blobId] = y;
+    }
+
+    /**
+     * Takes a blob out of the cell it was counted in
+     */
+    void remove(int blobId) {
+        if (blobId >= cellOfId.length || cellOfId[blobId] == NO_CELL) return;
+        long k = cellOfId[blobId];
+        int i = indexOf((int) (k >> 32), (int) k);
+        if (count[i] == denseCount) {
+            changedDensity(i);
+        } else if (count[i] > denseCount) {
+            changedCluster(i);
+        }
+        count[i]--;
+        if (count[i] == 0) {
+            sumX[i] = sumY[i] = maxR[i] = 0;
+        } else {
+            sumX[i] -= xOfId[blobId];
+            sumY[i] -= yOfId[blobId];
+        }
+        cellOfId[blobId] = NO_CELL;
+    }
+
+    /**
+     * Follows a blob that moved or changed size. A move within the same cell only shifts the cell's centroid.
+     */
+    void update(int blobId, double x, double y, double r) {
+        long k = key(cellOf(x), cellOf(y));
+        if (cellOfId[blobId] != k) {
+            remove(blobId);
+            insert(blobId, x, y, r);
+            return;
+        }
+        int i = indexOf((int) (k >> 32), (int) k);
+        if (count[i] >= denseCount) changedCluster(i);
+        sumX[i] += x - xOfId[blobId];
+        sumY[i] += y - yOfId[blobId];
+        maxR[i] = Math.max(maxR[i], r);
+        xOfId[blobId] = x;
+        yOfId[blobId] = y;
+    }
+
+    private void changedDensity(int index) {
+        int col = (int) (keys[index] >> 32), row = (int) keys[index];
+        double reach = Math.max(maxR[index], cellSize / 2);
+        dirty.add(col * cellSize - reach, row * cellSize - reach,
+                (col + 1) * cellSize + reach, (row + 1) * cellSize + reach);
+    }
+
+    /**
+     * Marks the area a dense cell's disc can cover, since its count or centroid is changing. The disc is centred
+     * somewhere in the cell and reaches half a cell past it.
+     */
+    private void changedCluster(int index) {
+        int col = (int) (keys[index] >> 32), row = (int) keys[index];
+        double reach = cellSize / 2;
+        dirty.add(col * cellSize - reach, row * cellSize - reach,
+                (col + 1) * cellSize + reach, (row + 1) * cellSize + reach);
+    }
+
+    void clear() {
+        allocate(1024);
+        Arrays.fill(cellOfId, NO_CELL);
+    }
+}
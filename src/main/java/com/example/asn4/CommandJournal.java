@@ -0,0 +1,552 @@
+package com.example.asn4;
+
+import com.example.asn4.Commands.CreateCommand;
+import com.example.asn4.Commands.DeleteCommand;
+import com.example.asn4.Commands.MoveCommand;
+import com.example.asn4.Commands.ResizeCommand;
+import com.example.asn4.Commands.TargetCommand;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of every command executed, undone or redone, so the scene survives a crash.
+ *
+ * Each record holds the effect of a command on the blobs it touched, keyed by their order numbers, so it can be
+ * applied forwards (executed/redone) or backwards (undone) without the command objects. Records are collected in
+ * memory and written by a background thread every commit interval with a single fsync for the whole group. The FX
+ * thread only holds the journal's lock to append a record or to swap out the buffer of pending records; the write
+ * and the fsync happen after the lock is released, so the FX thread never waits for the disk.
+ *
+ * The log is split into segments. A checkpoint saves the whole scene with SceneFile and starts a new segment, after
+ * which the older segments and checkpoints are deleted. The automatic checkpoint taken every few thousand records
+ * is written by the background thread too: the FX thread only takes a BlobSnapshot of the model and marks where in
+ * the pending records the checkpoint falls, and the records before that mark go to the old segment, those after it
+ * to the new one. Recovery loads the latest checkpoint and replays the segments
+ * written after it. A record that was only partly written when the application died fails its checksum, and it and
+ * anything after it in that segment are ignored.
+ *
+ * Layout of a record, little-endian:
+ * <pre>
+ *   int payload length, int CRC32 of the payload
+ *   payload: byte action, byte command type, then per type
+ *     CREATE  int id, double x, y, r
+ *     DELETE  int count, per blob: int id, double x, y, r, initialRadius
+ *     MOVE    double dx, dy, int count, per blob: int id
+ *     RESIZE  int count, per blob: int id, double old r, double new r
+ * </pre>
+ */
+public class CommandJournal implements AutoCloseable {
+
+    /** Default delay between group commits */
+    public static final long DEFAULT_COMMIT_INTERVAL_MILLIS = 50;
+
+    /** Default number of records between automatic checkpoints */
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 10_000;
+
+    static final byte EXECUTED = 0, UNDONE = 1, REDONE = 2;
+
+    static final byte CREATE = 1, DELETE = 2, MOVE = 3, RESIZE = 4;
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT_PREFIX = "checkpoint-";
+    private static final String CHECKPOINT_SUFFIX = ".blob";
+
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private final Path directory;
+    private final BlobModel model;
+    private final InteractionModel iModel;
+    private final long commitIntervalMillis;
+    private int checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+
+    /** Records appended since the last group commit, guarded by this */
+    private ByteBuffer pending = newBuffer(64 * 1024);
+
+    /** Buffer being written by the committing thread, swapped with pending, guarded by writeLock */
+    private ByteBuffer committing = newBuffer(64 * 1024);
+
+    /** Held while writing to the disk, so commits and checkpoints don't interleave; never taken while holding this */
+    private final Object writeLock = new Object();
+
+    /** Segment the records are appended to, guarded by writeLock */
+    private FileChannel segment;
+    private long segmentNumber;
+
+    /** Records appended since the last checkpoint was taken, guarded by this */
+    private int recordsSinceCheckpoint;
+
+    /** Automatic checkpoint waiting for the committing thread, null if none, and the position in pending it was
+     * taken at; guarded by this */
+    private Checkpoint requestedCheckpoint;
+    private int checkpointPosition;
+
+    private final CRC32 crc = new CRC32();
+    private final Thread committer;
+    private volatile boolean closed;
+
+    private CommandJournal(Path directory, BlobModel model, InteractionModel iModel, long commitIntervalMillis) {
+        this.directory = directory;
+        this.model = model;
+        this.iModel = iModel;
+        this.commitIntervalMillis = commitIntervalMillis;
+        committer = new Thread(this::commitLoop, "command-journal");
+        committer.setDaemon(true);
+    }
+
+    /**
+     * Opens the journal in a directory, first recovering the scene it holds into the model, and writes a fresh
+     * checkpoint so the replayed records don't have to be replayed again next time
+     * @param directory directory of the journal, created if needed
+     * @param model model to recover the blobs into
+     * @param iModel interaction model to recover the selection into
+     * @return the open journal
+     * @throws IOException if the directory can't be read or written
+     */
+    public static CommandJournal open(Path directory, BlobModel model, InteractionModel iModel) throws IOException {
+        return open(directory, model, iModel, DEFAULT_COMMIT_INTERVAL_MILLIS);
+    }
+
+    public static CommandJournal open(Path directory, BlobModel model, InteractionModel iModel,
+                                      long commitIntervalMillis) throws IOException {
+        Files.createDirectories(directory);
+        CommandJournal journal = new CommandJournal(directory, model, iModel, commitIntervalMillis);
+        journal.segmentNumber = journal.recover();
+        synchronized (journal.writeLock) {
+            journal.writeCheckpoint(null);
+        }
+        journal.committer.start();
+        return journal;
+    }
+
+    /**
+     * Sets how many records are appended before a checkpoint is written automatically
+     * @param records number of records, 0 or less to only checkpoint when asked to
+     */
+    public void setCheckpointInterval(int records) {
+        checkpointInterval = records;
+    }
+
+    /** Records a command that was just executed */
+    public void executed(TargetCommand command) {
+        append(EXECUTED, command);
+    }
+
+    /** Records a command that was just undone */
+    public void undone(TargetCommand command) {
+        append(UNDONE, command);
+    }
+
+    /** Records a command that was just redone */
+    public void redone(TargetCommand command) {
+        append(REDONE, command);
+    }
+
+    private void append(byte action, TargetCommand command) {
+        if (closed) return;
+        boolean checkpointDue;
+        synchronized (this) {
+            int start = pending.position();
+            ensureRoom(RECORD_HEADER_SIZE + 2 + payloadSize(command));
+            pending.position(start + RECORD_HEADER_SIZE);
+            if (!encode(action, command)) {
+                pending.position(start);
+                checkpointDue = false;
+            } else {
+                int end = pending.position();
+                crc.reset();
+                crc.update(pending.duplicate().position(start + RECORD_HEADER_SIZE).limit(end));
+                pending.putInt(start, end - start - RECORD_HEADER_SIZE);
+                pending.putInt(start + 4, (int) crc.getValue());
+                recordsSinceCheckpoint++;
+                checkpointDue = checkpointInterval > 0 && recordsSinceCheckpoint >= checkpointInterval
+                        && requestedCheckpoint == null;
+                if (!checkpointDue) return;
+            }
+        }
+        if (checkpointDue) {
+            requestCheckpoint();
+        } else {
+            // no way to replay this command, so the scene after it has to be saved as a whole
+            checkpoint();
+        }
+    }
+
+    /**
+     * Takes what the automatic checkpoint will save and leaves the saving to the committing thread. Runs on the
+     * model's thread, right after the record that made the checkpoint due, so the snapshot holds every record
+     * appended so far and none after.
+     */
+    private void requestCheckpoint() {
+        BlobStore store = model.getStore();
+        List<Blob> selected = iModel.getSelectedBlobs();
+        int[] selectedIds = new int[selected.size()];
+        int count = 0;
+        for (Blob b : selected) {
+            if (b.store == store) selectedIds[count++] = b.counter;
+        }
+        Checkpoint image = new Checkpoint(model.currentSnapshot(), Arrays.copyOf(selectedIds, count),
+                Blob.getOrderCounter());
+        synchronized (this) {
+            requestedCheckpoint = image;
+            checkpointPosition = pending.position();
+            recordsSinceCheckpoint = 0;
+        }
+    }
+
+    private static int payloadSize(TargetCommand command) {
+        if (command instanceof DeleteCommand dc) return 4 + 36 * dc.getBlobs().size();
+        if (command instanceof MoveCommand mc) return 20 + 4 * mc.getBlobs().size();
+        if (command instanceof ResizeCommand rc) return 4 + 20 * rc.getBlobs().size();
+        return 28;
+    }
+
+    private boolean encode(byte action, TargetCommand command) {
+        pending.put(action);
+        if (command instanceof CreateCommand cc && cc.getBlob() != null) {
+            Blob b = cc.getBlob();
+            pending.put(CREATE).putInt(b.getId()).putDouble(b.getX()).putDouble(b.getY()).putDouble(b.getR());
+        } else if (command instanceof DeleteCommand dc) {
+            pending.put(DELETE).putInt(dc.getBlobs().size());
+            for (Blob b : dc.getBlobs()) {
+                pending.putInt(b.getId()).putDouble(b.getX()).putDouble(b.getY()).putDouble(b.getR())
+                        .putDouble(b.getInitialRadius());
+            }
+        } else if (command instanceof MoveCommand mc) {
+            pending.put(MOVE).putDouble(mc.getDx()).putDouble(mc.getDy()).putInt(mc.getBlobs().size());
+            for (Blob b : mc.getBlobs()) {
+                pending.putInt(b.getId());
+            }
+        } else if (command instanceof ResizeCommand rc) {
+            double[] oldRadii = rc.getOldRadii();
+            double[] newRadii = rc.getNewRadii();
+            pending.put(RESIZE).putInt(rc.getBlobs().size());
+            for (int i = 0; i < oldRadii.length; i++) {
+                pending.putInt(rc.getBlobs().get(i).getId()).putDouble(oldRadii[i]).putDouble(newRadii[i]);
+            }
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private void ensureRoom(int bytes) {
+        if (pending.remaining() >= bytes) return;
+        ByteBuffer larger = newBuffer(Math.max(pending.capacity() * 2, pending.position() + bytes));
+        pending.flip();
+        larger.put(pending);
+        pending = larger;
+    }
+
+    private static ByteBuffer newBuffer(int capacity) {
+        return ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private void commitLoop() {
+        while (!closed) {
+            try {
+                Thread.sleep(commitIntervalMillis);
+                commit();
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                System.out.println("Could not write command journal: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Writes every record appended so far to the current segment and waits until it is on disk, writing the
+     * automatic checkpoint on the way if one was taken
+     * @throws IOException if the segment can't be written
+     */
+    public void commit() throws IOException {
+        synchronized (writeLock) {
+            if (segment == null) return;
+            Checkpoint image;
+            int split;
+            synchronized (this) {
+                if (pending.position() == 0 && requestedCheckpoint == null) return;
+                ByteBuffer full = pending;
+                pending = committing;
+                committing = full;
+                image = requestedCheckpoint;
+                split = checkpointPosition;
+                requestedCheckpoint = null;
+            }
+            committing.flip();
+            if (image != null) {
+                // the records up to the checkpoint close the old segment, the rest start the new one
+                int end = committing.limit();
+                committing.limit(split);
+                write(committing);
+                writeCheckpoint(image);
+                committing.limit(end);
+            }
+            write(committing);
+            committing.clear();
+        }
+    }
+
+    /**
+     * Writes the rest of a buffer to the current segment and waits until it is on disk. Needs writeLock.
+     */
+    private void write(ByteBuffer records) throws IOException {
+        if (!records.hasRemaining()) return;  // nothing to wait for
+        while (records.hasRemaining()) {
+            segment.write(records);
+        }
+        segment.force(false);
+    }
+
+    /**
+     * Saves the whole scene and starts a new segment, deleting the segments and checkpoints it replaces. Called after
+     * changes that don't go through commands, like loading a scene or importing targets, on the model's thread, which
+     * waits for the scene to be written.
+     */
+    public void checkpoint() {
+        if (closed) return;
+        synchronized (writeLock) {
+            try {
+                synchronized (this) {
+                    // saved from the model itself below, which is as recent as any checkpoint waiting
+                    requestedCheckpoint = null;
+                    recordsSinceCheckpoint = 0;
+                }
+                commit();
+                writeCheckpoint(null);
+            } catch (IOException e) {
+                System.out.println("Could not write journal checkpoint: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Saves a checkpoint and starts the segment that follows it. Needs writeLock.
+     * @param image snapshot to save, null to save the model directly from the model's thread
+     */
+    private void writeCheckpoint(Checkpoint image) throws IOException {
+        long next = segmentNumber + 1;
+        Path temp = directory.resolve(CHECKPOINT_PREFIX + next + CHECKPOINT_SUFFIX + ".tmp");
+        if (image == null) {
+            SceneFile.save(temp, model, iModel);
+        } else {
+            SceneFile.save(temp, image.blobs, image.selectedIds, image.lastOrderNumber);
+        }
+        Files.move(temp, directory.resolve(CHECKPOINT_PREFIX + next + CHECKPOINT_SUFFIX),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        if (segment != null) segment.close();
+        segment = FileChannel.open(directory.resolve(SEGMENT_PREFIX + next + SEGMENT_SUFFIX),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        segmentNumber = next;
+
+        for (long n : list(SEGMENT_PREFIX, SEGMENT_SUFFIX).headMap(next).keySet()) {
+            Files.deleteIfExists(directory.resolve(SEGMENT_PREFIX + n + SEGMENT_SUFFIX));
+        }
+        for (long n : list(CHECKPOINT_PREFIX, CHECKPOINT_SUFFIX).headMap(next).keySet()) {
+            Files.deleteIfExists(directory.resolve(CHECKPOINT_PREFIX + n + CHECKPOINT_SUFFIX));
+        }
+    }
+
+    /**
+     * Commits what is left, writes a last checkpoint and stops the background thread
+     */
+    @Override
+    public void close() {
+        checkpoint();
+        closed = true;
+        committer.interrupt();
+        synchronized (writeLock) {
+            try {
+                if (segment != null) segment.close();
+            } catch (IOException e) {
+                System.out.println("Could not close command journal: " + e.getMessage());
+            }
+            segment = null;
+        }
+    }
+
+    /**
+     * What an automatic checkpoint saves, taken on the model's thread and written by the committing thread
+     */
+    private static final class Checkpoint {
+        final BlobSnapshot blobs;
+        final int[] selectedIds;
+        final int lastOrderNumber;
+
+        Checkpoint(BlobSnapshot blobs, int[] selectedIds, int lastOrderNumber) {
+            this.blobs = blobs;
+            this.selectedIds = selectedIds;
+            this.lastOrderNumber = lastOrderNumber;
+        }
+    }
+
+    // RECOVERY
+
+    /**
+     * Loads the latest readable checkpoint and replays the segments written after it
+     * @return number of the last segment found
+     */
+    private long recover() throws IOException {
+        TreeMap<Long, Path> checkpoints = list(CHECKPOINT_PREFIX, CHECKPOINT_SUFFIX);
+        long first = 0;
+        for (Long n : checkpoints.descendingKeySet()) {
+            try {
+                SceneFile.load(checkpoints.get(n), model, iModel);
+                first = n;
+                break;
+            } catch (IOException e) {
+                System.out.println("Skipping unreadable checkpoint " + checkpoints.get(n) + ": " + e.getMessage());
+            }
+        }
+
+        long last = first;
+        int replayed = 0;
+        for (var entry : list(SEGMENT_PREFIX, SEGMENT_SUFFIX).tailMap(first).entrySet()) {
+            replayed += replay(entry.getValue());
+            last = entry.getKey();
+        }
+        if (replayed > 0) {
+            BlobStore store = model.getStore();
+            iModel.removeFromSelection(iModel.getSelectedBlobs().stream().filter(b -> b.store != store).toList());
+        }
+        if (!checkpoints.isEmpty() || replayed > 0) {
+            System.out.println("Recovered " + model.getStore().size + " targets, replayed " + replayed
+                    + " journal records");
+        }
+        return last;
+    }
+
+    private int replay(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) return 0;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            CRC32 check = new CRC32();
+            int records = 0;
+            while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+                int length = buffer.getInt();
+                int expected = buffer.getInt();
+                if (length < 2 || length > buffer.remaining()) break;
+                ByteBuffer payload = buffer.slice(buffer.position(), length).order(ByteOrder.LITTLE_ENDIAN);
+                check.reset();
+                check.update(payload.duplicate());
+                if ((int) check.getValue() != expected) break;
+                apply(payload);
+                buffer.position(buffer.position() + length);
+                records++;
+            }
+            return records;
+        }
+    }
+
+    private void apply(ByteBuffer payload) {
+        boolean forward = payload.get() != UNDONE;
+        byte type = payload.get();
+        BlobStore store = model.getStore();
+        switch (type) {
+            case CREATE -> {
+                int blobId = payload.getInt();
+                double x = payload.getDouble(), y = payload.getDouble(), r = payload.getDouble();
+                if (forward) {
+                    insert(blobId, x, y, r, r);
+                } else {
+                    model.deleteBlobs(handles(store, new int[]{blobId}));
+                }
+            }
+            case DELETE -> {
+                int count = payload.getInt();
+                int[] ids = new int[count];
+                double[] rows = new double[count * 4];
+                for (int i = 0; i < count; i++) {
+                    ids[i] = payload.getInt();
+                    for (int j = 0; j < 4; j++) rows[i * 4 + j] = payload.getDouble();
+                }
+                if (forward) {
+                    model.deleteBlobs(handles(store, ids));
+                } else {
+                    for (int i = 0; i < count; i++) {
+                        insert(ids[i], rows[i * 4], rows[i * 4 + 1], rows[i * 4 + 2], rows[i * 4 + 3]);
+                    }
+                }
+            }
+            case MOVE -> {
+                double dx = payload.getDouble(), dy = payload.getDouble();
+                int[] ids = readIds(payload, payload.getInt());
+                model.moveBlobs(handles(store, ids), forward ? dx : -dx, forward ? dy : -dy);
+            }
+            case RESIZE -> {
+                int count = payload.getInt();
+                List<Blob> blobs = new ArrayList<>(count);
+                double[] radii = new double[count];
+                int found = 0;
+                for (int i = 0; i < count; i++) {
+                    int slot = store.slotOf(payload.getInt());
+                    double oldR = payload.getDouble(), newR = payload.getDouble();
+                    if (slot < 0) continue;
+                    blobs.add(store.handle(slot));
+                    radii[found++] = forward ? newR : oldR;
+                }
+                model.resizeBlobs(blobs, Arrays.copyOf(radii, found));
+            }
+            default -> throw new IllegalStateException("Unknown journal record type " + type);
+        }
+    }
+
+    private void insert(int blobId, double x, double y, double r, double initialRadius) {
+        if (model.getStore().slotOf(blobId) >= 0) return;
+        model.reserve(1);
+        model.insertRow(blobId, x, y, r, initialRadius);
+        Blob.restoreOrderCounter(Math.max(Blob.getOrderCounter(), blobId));
+        model.finishBulkInsert();
+    }
+
+    private static int[] readIds(ByteBuffer payload, int count) {
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++) ids[i] = payload.getInt();
+        return ids;
+    }
+
+    private static List<Blob> handles(BlobStore store, int[] ids) {
+        List<Blob> blobs = new ArrayList<>(ids.length);
+        for (int blobId : ids) {
+            int slot = store.slotOf(blobId);
+            if (slot >= 0) blobs.add(store.handle(slot));
+        }
+        return blobs;
+    }
+
+    /**
+     * @return the files of the directory with the given prefix and suffix, by the number between them
+     */
+    private TreeMap<Long, Path> list(String prefix, String suffix) throws IOException {
+        TreeMap<Long, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+            for (Path p : stream) {
+                String name = p.getFileName().toString();
+                try {
+                    files.put(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())), p);
+                } catch (NumberFormatException e) {
+                    // not one of ours
+                }
+            }
+        }
+        return files;
+    }
+}
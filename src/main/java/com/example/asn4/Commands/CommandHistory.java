@@ -0,0 +1,192 @@
+package com.example.asn4.Commands;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Undo/redo history with a bounded size. The history holds at most a given number of entries and an estimated byte
+ * budget across both stacks; when either is exceeded the oldest entries are evicted, undo entries first.
+ *
+ * A command pushed shortly after another one is offered to it through TargetCommand.mergeWith, so repeated moves or
+ * resizes of the same blobs become a single entry.
+ */
+public class CommandHistory {
+
+    /** Undo entries, oldest first */
+    private final ArrayDeque<TargetCommand> undoStack;
+
+    /** Redo entries, oldest first */
+    private final ArrayDeque<TargetCommand> redoStack;
+
+    /** Largest number of entries kept across both stacks */
+    private int maxEntries;
+
+    /** Largest estimated number of bytes kept across both stacks */
+    private long maxBytes;
+
+    /** Commands pushed within this many milliseconds of the previous one may be merged into it */
+    private long mergeWindowMillis;
+
+    /** Sum of estimatedSize() over every entry */
+    private long estimatedBytes;
+
+    /** When the last command was pushed, in System.currentTimeMillis() time */
+    private long lastPushTime;
+
+
+    public CommandHistory(int maxEntries, long maxBytes, long mergeWindowMillis) {
+        this.undoStack = new ArrayDeque<>();
+        this.redoStack = new ArrayDeque<>();
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.mergeWindowMillis = mergeWindowMillis;
+    }
+
+    /**
+     * Changes the limits of the history, evicting old entries right away if needed
+     * @param newMaxEntries largest number of entries kept
+     * @param newMaxBytes largest estimated number of bytes kept
+     */
+    public void setLimits(int newMaxEntries, long newMaxBytes) {
+        maxEntries = Math.max(1, newMaxEntries);
+        maxBytes = newMaxBytes;
+        evict();
+    }
+
+    public void setMergeWindowMillis(long newMergeWindowMillis) {
+        mergeWindowMillis = newMergeWindowMillis;
+    }
+
+    /**
+     * Records a command that was just executed
+     * @param command executed command
+     */
+    public void push(TargetCommand command) {
+        long now = System.currentTimeMillis();
+        TargetCommand top = undoStack.peekLast();
+        if (top != null && now - lastPushTime <= mergeWindowMillis) {
+            long before = top.estimatedSize();
+            if (top.mergeWith(command)) {
+                estimatedBytes += top.estimatedSize() - before;
+                lastPushTime = now;
+                return;
+            }
+        }
+        undoStack.addLast(command);
+        estimatedBytes += command.estimatedSize();
+        lastPushTime = now;
+        evict();
+    }
+
+    /**
+     * @return the command undo() would undo, null if there is none
+     */
+    public TargetCommand peekUndo() {
+        return undoStack.peekLast();
+    }
+
+    /**
+     * @return the command redo() would redo, null if there is none
+     */
+    public TargetCommand peekRedo() {
+        return redoStack.peekLast();
+    }
+
+    /**
+     * Undoes the latest command and moves it to the redo stack
+     * @return false if there was nothing to undo
+     */
+    public boolean undo() {
+        TargetCommand command = undoStack.pollLast();
+        if (command == null) return false;
+        command.undo();
+        redoStack.addLast(command);
+        // an undone command must never swallow the next one pushed
+        lastPushTime = Long.MIN_VALUE / 2;
+        return true;
+    }
+
+    /**
+     * Redoes the latest undone command and moves it back to the undo stack
+     * @return false if there was nothing to redo
+     */
+    public boolean redo() {
+        TargetCommand command = redoStack.pollLast();
+        if (command == null) return false;
+        command.doIt();
+        undoStack.addLast(command);
+        lastPushTime = Long.MIN_VALUE / 2;
+        return true;
+    }
+
+    /**
+     * Drops the oldest entries until the history fits within its limits again. The newest undo entry is always kept.
+     */
+    private void evict() {
+        while (undoStack.size() + redoStack.size() > maxEntries || estimatedBytes > maxBytes) {
+            TargetCommand evicted;
+            if (undoStack.size() > 1) {
+                evicted = undoStack.pollFirst();
+            } else if (!redoStack.isEmpty()) {
+                evicted = redoStack.pollFirst();
+            } else {
+                break;
+            }
+            estimatedBytes -= evicted.estimatedSize();
+        }
+    }
+
+    /**
+     * Removes every entry from both stacks
+     */
+    public void clear() {
+        undoStack.clear();
+        redoStack.clear();
+        estimatedBytes = 0;
+    }
+
+    public int getUndoDepth() {
+        return undoStack.size();
+    }
+
+    public int getRedoDepth() {
+        return redoStack.size();
+    }
+
+    /**
+     * @return estimated number of bytes kept alive by the commands in both stacks
+     */
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return undo entries from oldest to newest, read-only
+     */
+    public Collection<TargetCommand> getUndoEntries() {
+        return Collections.unmodifiableCollection(undoStack);
+    }
+
+    /**
+     * @return redo entries from oldest to newest, read-only
+     */
+    public Collection<TargetCommand> getRedoEntries() {
+        return Collections.unmodifiableCollection(redoStack);
+    }
+
+    /**
+     * Summary of the history, used for debugging and diagnostics
+     */
+    public String toString() {
+        return "History: " + undoStack.size() + " undo, " + redoStack.size() + " redo, ~" + estimatedBytes + " bytes";
+    }
+}
@@ -39,6 +39,18 @@ public class CreateCommand implements TargetCommand {
         model.deleteBlob(blob);
     }
 
+    /**
+     * @return the created blob, null until the command was executed
+     */
+    public Blob getBlob() {
+        return blob;
+    }
+
+    @Override
+    public long estimatedSize() {
+        return 64 + 72;
+    }
+
     /**
      * Used mainly for debugging to see the CreateCommand object
      * @return string data of the create command object
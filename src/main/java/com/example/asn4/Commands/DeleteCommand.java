@@ -3,28 +3,51 @@ package com.example.asn4.Commands;
 import com.example.asn4.Blob;
 import com.example.asn4.BlobModel;
 
+import java.util.List;
+
 public class DeleteCommand implements TargetCommand {
 
-    /** Blob to delete/bring back */
-    private Blob blob;
+    /** Blobs to delete/bring back */
+    private List<Blob> blobs;
 
     /** reference to the model, needed for the doIt() and undo() methods */
     private BlobModel model;
 
 
     public DeleteCommand(BlobModel newModel, Blob newBlob) {
+        this(newModel, List.of(newBlob));
+    }
+
+    /**
+     * Deletes a whole group of blobs (e.g. the selection) as a single undoable step
+     * @param newModel model holding the blobs
+     * @param newBlobs blobs to delete
+     */
+    public DeleteCommand(BlobModel newModel, List<Blob> newBlobs) {
         this.model = newModel;
-        this.blob = newBlob;
+        this.blobs = List.copyOf(newBlobs);
+    }
+
+    public List<Blob> getBlobs() {
+        return blobs;
     }
 
     @Override
     public void doIt() {
-        model.deleteBlob(blob);
+        model.deleteBlobs(blobs);
     }
 
     @Override
     public void undo() {
-        model.addBlob(blob);
+        model.addBlobs(blobs);
+    }
+
+    /**
+     * Deleted blobs are only kept alive by this command, so their handles count towards its size
+     */
+    @Override
+    public long estimatedSize() {
+        return 64 + 72L * blobs.size();
     }
 
     /**
@@ -32,8 +55,11 @@ public class DeleteCommand implements TargetCommand {
      * @return string data of the delete command object
      */
     public String toString() {
-        double roundOffX = Math.round(blob.x * 100.0) / 100.0;
-        double roundOffY = Math.round(blob.y * 100.0) / 100.0;
+        if (blobs.size() != 1) {
+            return "Delete Command: " + blobs.size() + " blobs deleted";
+        }
+        double roundOffX = Math.round(blobs.get(0).getX() * 100.0) / 100.0;
+        double roundOffY = Math.round(blobs.get(0).getY() * 100.0) / 100.0;
         return "Delete Command: blob deleted at " + roundOffX + " , " + roundOffY;
     }
 }
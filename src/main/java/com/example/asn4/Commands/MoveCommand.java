@@ -2,13 +2,13 @@ package com.example.asn4.Commands;
 
 import com.example.asn4.Blob;
 import com.example.asn4.BlobModel;
-import java.util.ArrayList;
-import java.util.Iterator;
+
+import java.util.List;
 
 public class MoveCommand implements TargetCommand {
 
     /** list of selected blobs */
-    private Blob blob;
+    private List<Blob> blobs;
 
     /** reference to the model, needed for the doIt() and undo() methods */
     private BlobModel model;
@@ -18,21 +18,64 @@ public class MoveCommand implements TargetCommand {
 
 
     public MoveCommand(BlobModel newModel, Blob newBlob, double newX, double newY) {
+        this(newModel, List.of(newBlob), newX, newY);
+    }
+
+    /**
+     * Moves a whole group of blobs (e.g. the selection) by the same amount as a single undoable step
+     * @param newModel model holding the blobs
+     * @param newBlobs blobs to move
+     * @param newX change in x
+     * @param newY change in y
+     */
+    public MoveCommand(BlobModel newModel, List<Blob> newBlobs, double newX, double newY) {
         this.model = newModel;
-        this.blob = newBlob;
+        this.blobs = List.copyOf(newBlobs);
         this.x = newX;
         this.y = newY;
     }
 
 
+    public List<Blob> getBlobs() {
+        return blobs;
+    }
+
+    /** @return change in x applied by doIt() */
+    public double getDx() {
+        return x;
+    }
+
+    /** @return change in y applied by doIt() */
+    public double getDy() {
+        return y;
+    }
+
     @Override
     public void doIt() {
-        model.moveBlob(blob, x, y);
+        model.moveBlobs(blobs, x, y);
     }
 
     @Override
     public void undo() {
-        model.moveBlob(blob, x * -1, y * -1);
+        model.moveBlobs(blobs, x * -1, y * -1);
+    }
+
+    /**
+     * Folds a following move of the same blobs into this one
+     */
+    @Override
+    public boolean mergeWith(TargetCommand next) {
+        if (next instanceof MoveCommand mc && mc.model == model && mc.blobs.equals(blobs)) {
+            x += mc.x;
+            y += mc.y;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public long estimatedSize() {
+        return 64 + 8L * blobs.size();
     }
 
     /**
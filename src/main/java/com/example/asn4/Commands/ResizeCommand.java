@@ -3,38 +3,83 @@ package com.example.asn4.Commands;
 import com.example.asn4.Blob;
 import com.example.asn4.BlobModel;
 
+import java.util.List;
+
 public class ResizeCommand implements TargetCommand {
 
-    /** Blob to resize/bring back to its previous size */
-    private Blob blob;
+    /** Blobs to resize/bring back to their previous size */
+    private List<Blob> blobs;
 
     /** reference to the model, needed for the doIt() and undo() methods */
     private BlobModel model;
 
-    /** new radius to replace the blob's current radius */
-    private double newRadius;
+    /** new radius of each blob, to replace the blob's current radius */
+    private double[] newRadii;
 
-    /** current radius of the blob before resizing occur */
-    private double oldRadius;
+    /** radius of each blob before resizing occur */
+    private double[] oldRadii;
 
 
     public ResizeCommand(BlobModel newModel, Blob newBlob) {
+        this(newModel, List.of(newBlob));
+    }
+
+    /**
+     * Records the resize of a whole group of blobs (e.g. the selection) as a single undoable step. Each blob's current
+     * radius is the new one and its initial radius is the one to go back to.
+     * @param newModel model holding the blobs
+     * @param newBlobs blobs that were resized
+     */
+    public ResizeCommand(BlobModel newModel, List<Blob> newBlobs) {
         this.model = newModel;
-        this.blob = newBlob;
-        this.newRadius = blob.r;
-        this.oldRadius =  blob.initialRadius;
+        this.blobs = List.copyOf(newBlobs);
+        this.newRadii = new double[blobs.size()];
+        this.oldRadii = new double[blobs.size()];
+        for (int i = 0; i < blobs.size(); i++) {
+            newRadii[i] = blobs.get(i).getR();
+            oldRadii[i] = blobs.get(i).getInitialRadius();
+        }
+    }
+
+    public List<Blob> getBlobs() {
+        return blobs;
+    }
+
+    /** @return radius of each blob after doIt(), in the order of getBlobs() */
+    public double[] getNewRadii() {
+        return newRadii.clone();
+    }
+
+    /** @return radius of each blob after undo(), in the order of getBlobs() */
+    public double[] getOldRadii() {
+        return oldRadii.clone();
     }
 
     @Override
     public void doIt() {
-        blob.r = newRadius;
-        model.redrawBlobs();
+        model.resizeBlobs(blobs, newRadii);
     }
 
     @Override
     public void undo() {
-        blob.r = oldRadius;
-        model.redrawBlobs();
+        model.resizeBlobs(blobs, oldRadii);
+    }
+
+    /**
+     * Folds a following resize of the same blobs into this one: undo still goes back to this command's old radii
+     */
+    @Override
+    public boolean mergeWith(TargetCommand next) {
+        if (next instanceof ResizeCommand rc && rc.model == model && rc.blobs.equals(blobs)) {
+            newRadii = rc.newRadii;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public long estimatedSize() {
+        return 64 + 24L * blobs.size();
     }
 
     /**
@@ -42,8 +87,11 @@ public class ResizeCommand implements TargetCommand {
      * @return string data of the delete command object
      */
     public String toString() {
-        double startSize = Math.round(oldRadius * 100.0) / 100.0;
-        double endSize = Math.round(newRadius * 100.0) / 100.0;
+        if (blobs.size() != 1) {
+            return "Resize Command: " + blobs.size() + " blobs resized";
+        }
+        double startSize = Math.round(oldRadii[0] * 100.0) / 100.0;
+        double endSize = Math.round(newRadii[0] * 100.0) / 100.0;
         return "Resize Command: blob resized from " + startSize + " to " + endSize;
     }
 }
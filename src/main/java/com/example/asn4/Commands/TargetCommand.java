@@ -4,4 +4,20 @@ public interface TargetCommand {
     void doIt();
 
     void undo();
+
+    /**
+     * Rough number of bytes kept alive by this command while it sits in the undo/redo history
+     */
+    default long estimatedSize() {
+        return 64;
+    }
+
+    /**
+     * Tries to absorb a command that was executed right after this one, so both are undone in a single step
+     * @param next command executed after this one
+     * @return true if this command now also covers next, false if they have to stay separate entries
+     */
+    default boolean mergeWith(TargetCommand next) {
+        return false;
+    }
 }
@@ -0,0 +1,110 @@
+package com.example.asn4;
+
+import java.util.Arrays;
+
+/**
+ * Collects the areas of the canvas that need repainting since the view last drew. Models add the old and new bounds
+ * of whatever they change and the view drains the region on its next redraw. Once too many rectangles pile up the
+ * region just becomes "everything", since repainting the whole scene is cheaper than clipping that many times.
+ */
+class DirtyRegion {
+
+    /** Past this many rectangles the whole canvas is treated as dirty */
+    static final int MAX_RECTS = 64;
+
+    /** Rectangles stored as (minX, minY, maxX, maxY) quadruples */
+    private double[] rects;
+
+    /** Number of rectangles stored */
+    private int count;
+
+    /** Set when everything needs repainting */
+    private boolean full;
+
+
+    DirtyRegion() {
+        rects = new double[16 * 4];
+        count = 0;
+        full = false;
+    }
+
+    /**
+     * Marks a rectangle as needing a repaint
+     */
+    void add(double minX, double minY, double maxX, double maxY) {
+        if (full) return;
+        if (count == MAX_RECTS) {
+            markAll();
+            return;
+        }
+        if ((count + 1) * 4 > rects.length) {
+            rects = Arrays.copyOf(rects, rects.length * 2);
+        }
+        int base = count * 4;
+        rects[base] = minX;
+        rects[base + 1] = minY;
+        rects[base + 2] = maxX;
+        rects[base + 3] = maxY;
+        count++;
+    }
+
+    /**
+     * Marks the bounding box of a circle as needing a repaint
+     */
+    void addCircle(double x, double y, double r) {
+        add(x - r, y - r, x + r, y + r);
+    }
+
+    /**
+     * Marks the bounds of a blob as needing a repaint, if it is currently stored in a model
+     */
+    void addBlob(Blob b) {
+        if (b.store != null) {
+            addCircle(b.getX(), b.getY(), b.getR());
+        }
+    }
+
+    /**
+     * Marks the whole canvas as needing a repaint
+     */
+    void markAll() {
+        full = true;
+        count = 0;
+    }
+
+    boolean isFull() {
+        return full;
+    }
+
+    boolean isEmpty() {
+        return !full && count == 0;
+    }
+
+    int size() {
+        return count;
+    }
+
+    double getMinX(int i) {
+        return rects[i * 4];
+    }
+
+    double getMinY(int i) {
+        return rects[i * 4 + 1];
+    }
+
+    double getMaxX(int i) {
+        return rects[i * 4 + 2];
+    }
+
+    double getMaxY(int i) {
+        return rects[i * 4 + 3];
+    }
+
+    /**
+     * Forgets everything that was marked, called once the view has repainted
+     */
+    void clear() {
+        full = false;
+        count = 0;
+    }
+}
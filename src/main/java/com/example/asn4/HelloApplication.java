@@ -5,16 +5,23 @@ import javafx.scene.Scene;
 import javafx.stage.Stage;
 
 public class HelloApplication extends Application {
+
+    private MainUI uiRoot;
+
     @Override
     public void start(Stage stage) {
-        MainUI uiRoot = new MainUI();
+        uiRoot = new MainUI();
         Scene scene = new Scene(uiRoot);
         stage.setTitle("2D Targeting Practice");
-        stage.setResizable(false);
         stage.setScene(scene);
         stage.show();
     }
 
+    @Override
+    public void stop() {
+        uiRoot.close();
+    }
+
     public static void main(String[] args) {
         launch();
     }
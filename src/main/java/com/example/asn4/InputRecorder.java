@@ -0,0 +1,138 @@
+package com.example.asn4;
+
+import javafx.event.EventHandler;
+import javafx.event.EventType;
+import javafx.scene.input.InputEvent;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Records the input reaching the canvas into an InputTrace file. The view installs it as an event filter on the
+ * canvas, so it sees every event before the controller does, exactly as it arrived.
+ *
+ * Records are encoded into a direct buffer and written out whenever it fills up, so recording costs a few puts per
+ * event and allocates nothing.
+ */
+public class InputRecorder implements EventHandler<InputEvent> {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ByteBuffer buffer;
+
+    /** File being recorded to, null when not recording */
+    private FileChannel channel;
+
+    private Path tracePath;
+
+    /** Time of the previous record, as records store the time since the one before */
+    private long lastNanos;
+
+
+    public InputRecorder() {
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public boolean isRecording() {
+        return channel != null;
+    }
+
+    /**
+     * Saves the current scene next to the trace and starts recording
+     * @param trace file to record to, replaced if it exists
+     * @param model model whose blobs the replay starts from
+     * @param iModel interaction model whose selection and camera the replay starts from
+     * @throws IOException if the scene or the trace can't be written
+     */
+    public void start(Path trace, BlobModel model, InteractionModel iModel) throws IOException {
+        if (isRecording()) stop();
+        SceneFile.save(InputTrace.sceneFileOf(trace), model, iModel);
+        channel = FileChannel.open(trace, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        tracePath = trace;
+        buffer.clear();
+        InputTrace.writeHeader(buffer, iModel.getCamera());
+        lastNanos = System.nanoTime();
+    }
+
+    /**
+     * Writes the remaining records and closes the trace
+     * @throws IOException if the records can't be written
+     */
+    public void stop() throws IOException {
+        if (!isRecording()) return;
+        try {
+            flush();
+        } finally {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    public Path getTracePath() {
+        return tracePath;
+    }
+
+    /**
+     * Whether a key press starts/stops recording or replaying; those are left out of traces so that a replay doesn't
+     * start recording or replaying itself
+     */
+    public static boolean isTraceControl(KeyEvent e) {
+        return e.isControlDown() && (e.getCode() == KeyCode.T || e.getCode() == KeyCode.P);
+    }
+
+    @Override
+    public void handle(InputEvent event) {
+        if (channel == null) return;
+        long now = System.nanoTime();
+        long micros = (now - lastNanos) / 1000;
+        EventType<? extends InputEvent> type = event.getEventType();
+
+        if (type == MouseEvent.MOUSE_PRESSED) {
+            InputTrace.writeMouse(buffer, InputTrace.PRESSED, (MouseEvent) event, micros);
+        } else if (type == MouseEvent.MOUSE_DRAGGED) {
+            InputTrace.writeMouse(buffer, InputTrace.DRAGGED, (MouseEvent) event, micros);
+        } else if (type == MouseEvent.MOUSE_RELEASED) {
+            InputTrace.writeMouse(buffer, InputTrace.RELEASED, (MouseEvent) event, micros);
+        } else if (type == MouseEvent.MOUSE_MOVED) {
+            InputTrace.writeMouse(buffer, InputTrace.MOVED, (MouseEvent) event, micros);
+        } else if (type == ScrollEvent.SCROLL) {
+            InputTrace.writeScroll(buffer, (ScrollEvent) event, micros);
+        } else if (type == KeyEvent.KEY_PRESSED && !isTraceControl((KeyEvent) event)) {
+            InputTrace.writeKey(buffer, (KeyEvent) event, micros);
+        } else {
+            return;  // not an event the application handles
+        }
+        // the time lost to rounding carries over to the next record
+        lastNanos += micros * 1000;
+
+        if (buffer.remaining() < InputTrace.MAX_RECORD_SIZE) {
+            try {
+                flush();
+            } catch (IOException e) {
+                System.out.println("Could not write input trace: " + e.getMessage());
+                try {
+                    stop();
+                } catch (IOException ignored) {
+                    // already reported
+                }
+            }
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,248 @@
+package com.example.asn4;
+
+import javafx.animation.AnimationTimer;
+import javafx.event.Event;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Feeds a recorded InputTrace back into the application and measures how long each event takes, so a session
+ * recorded from a user can be rerun as a load test. Events go either at the pace they were recorded at, or back to
+ * back as fast as possible.
+ *
+ * The latency of an event is the time to dispatch it plus the time to settle, which delivers the notifications it
+ * caused (and so the redraws) right away instead of at the next pulse.
+ *
+ * Running the class replays a trace headless, into a controller and models without a view:
+ * <pre>
+ *   java com.example.asn4.InputReplayer input.trace [--real-time]
+ * </pre>
+ */
+public class InputReplayer {
+
+    private final InputTrace trace;
+
+    /** Hands an event to the application */
+    private final Consumer<Event> dispatcher;
+
+    /** Delivers whatever the event caused, run after each event */
+    private final Runnable settle;
+
+    /** Latency of each event in nanoseconds */
+    private final long[] latencies;
+
+    /** Index of the next event to replay */
+    private int next;
+
+
+    /**
+     * @param trace events to replay
+     * @param dispatcher hands an event to the application, e.g. by firing it at the canvas
+     * @param settle delivers pending notifications after each event, e.g. by flushing the notification scheduler
+     */
+    public InputReplayer(InputTrace trace, Consumer<Event> dispatcher, Runnable settle) {
+        this.trace = trace;
+        this.dispatcher = dispatcher;
+        this.settle = settle;
+        latencies = new long[trace.size()];
+    }
+
+    private void replay(int index) {
+        Event event = trace.toEvent(index);
+        long start = System.nanoTime();
+        dispatcher.accept(event);
+        settle.run();
+        latencies[index] = System.nanoTime() - start;
+    }
+
+    /**
+     * Replays every event on the calling thread, back to back
+     * @return latencies of the events
+     */
+    public Report replayFast() {
+        for (next = 0; next < trace.size(); next++) {
+            replay(next);
+        }
+        return new Report(trace, latencies);
+    }
+
+    /**
+     * Replays every event on the calling thread at the pace it was recorded at, waiting between events
+     * @return latencies of the events
+     */
+    public Report replayRealTime() {
+        long start = System.nanoTime();
+        for (next = 0; next < trace.size(); next++) {
+            long wait;
+            while ((wait = start + trace.getTime(next) - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            replay(next);
+        }
+        return new Report(trace, latencies);
+    }
+
+    /**
+     * Replays the events on the FX thread at the pace they were recorded at. Each pulse replays the events that are
+     * due, so the application keeps drawing in between.
+     * @param done called with the latencies once every event was replayed
+     */
+    public void replayRealTimeOnPulses(Consumer<Report> done) {
+        next = 0;
+        long start = System.nanoTime();
+        new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                long elapsed = System.nanoTime() - start;
+                while (next < trace.size() && trace.getTime(next) <= elapsed) {
+                    replay(next++);
+                }
+                if (next == trace.size()) {
+                    stop();
+                    done.accept(new Report(trace, latencies));
+                }
+            }
+        }.start();
+    }
+
+    /**
+     * Latency percentiles of a replay, over all events and per kind of event
+     */
+    public static final class Report {
+
+        private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+        /** Sorted latencies of all events, then of each kind */
+        private final long[] all;
+        private final long[][] byKind;
+
+        private final long recordedNanos;
+
+        Report(InputTrace trace, long[] latencies) {
+            all = latencies.clone();
+            Arrays.sort(all);
+            byKind = new long[InputTrace.KIND_NAMES.length][];
+            for (byte kind = 0; kind < byKind.length; kind++) {
+                int count = 0;
+                for (int i = 0; i < trace.size(); i++) {
+                    if (trace.getKind(i) == kind) count++;
+                }
+                long[] ofKind = new long[count];
+                count = 0;
+                for (int i = 0; i < trace.size(); i++) {
+                    if (trace.getKind(i) == kind) ofKind[count++] = latencies[i];
+                }
+                Arrays.sort(ofKind);
+                byKind[kind] = ofKind;
+            }
+            recordedNanos = trace.size() == 0 ? 0 : trace.getTime(trace.size() - 1);
+        }
+
+        public int getEventCount() {
+            return all.length;
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         * @return latency in nanoseconds that the given percentage of events stayed within
+         */
+        public long getPercentile(double percentile) {
+            return percentile(all, percentile);
+        }
+
+        public long getMax() {
+            return all.length == 0 ? 0 : all[all.length - 1];
+        }
+
+        private static long percentile(long[] sorted, double percentile) {
+            if (sorted.length == 0) return 0;
+            int rank = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(sorted.length - 1, rank))];
+        }
+
+        /**
+         * @return a table of the percentiles in microseconds, one line for all events and one per kind
+         */
+        @Override
+        public String toString() {
+            StringBuilder table = new StringBuilder();
+            table.append(String.format(Locale.ROOT, "%d events over %.1f s recorded, latency in microseconds%n",
+                    all.length, recordedNanos / 1e9));
+            table.append(String.format(Locale.ROOT, "%-10s %8s %9s %9s %9s %9s %9s%n",
+                    "events", "count", "p50", "p90", "p99", "p99.9", "max"));
+            appendRow(table, "all", all);
+            for (int kind = 0; kind < byKind.length; kind++) {
+                if (byKind[kind].length > 0) appendRow(table, InputTrace.KIND_NAMES[kind], byKind[kind]);
+            }
+            return table.toString();
+        }
+
+        private static void appendRow(StringBuilder table, String name, long[] sorted) {
+            table.append(String.format(Locale.ROOT, "%-10s %8d", name, sorted.length));
+            for (double p : PERCENTILES) {
+                table.append(String.format(Locale.ROOT, " %9.1f", percentile(sorted, p) / 1000.0));
+            }
+            table.append(String.format(Locale.ROOT, " %9.1f%n", sorted[sorted.length - 1] / 1000.0));
+        }
+    }
+
+    /**
+     * Hands an event to the controller the way the view's handlers do
+     */
+    static void dispatchToController(BlobController controller, Event event) {
+        if (event instanceof MouseEvent e) {
+            if (e.getEventType() == MouseEvent.MOUSE_PRESSED) {
+                controller.handlePressed(e);
+            } else if (e.getEventType() == MouseEvent.MOUSE_DRAGGED) {
+                controller.handleDragged(e);
+                controller.storeDraggingCursor(e);
+            } else if (e.getEventType() == MouseEvent.MOUSE_RELEASED) {
+                controller.handleReleased(e);
+            } else {
+                controller.storeMovingCursor(e);
+            }
+        } else if (event instanceof ScrollEvent e) {
+            controller.handleScroll(e);
+        } else if (event instanceof KeyEvent e) {
+            controller.handleKeyPressed(e);
+        }
+    }
+
+    /**
+     * Replays a trace headless and prints the latencies
+     * @param args trace file, optionally followed by --real-time to keep the recorded pace
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: InputReplayer <trace> [--real-time]");
+            return;
+        }
+        Path tracePath = Path.of(args[0]);
+        boolean realTime = args.length > 1 && args[1].equals("--real-time");
+        InputTrace trace = InputTrace.read(tracePath);
+
+        BlobModel model = new BlobModel();
+        InteractionModel iModel = new InteractionModel();
+        BlobController controller = new BlobController();
+        controller.setModel(model);
+        controller.setIModel(iModel);
+        Path scene = InputTrace.sceneFileOf(tracePath);
+        if (Files.exists(scene)) {
+            SceneFile.load(scene, model, iModel);
+        }
+        iModel.setCameraView(trace.getCameraLeft(), trace.getCameraTop(), trace.getCameraZoom());
+
+        InputReplayer replayer = new InputReplayer(trace, e -> dispatchToController(controller, e), () -> {});
+        Report report = realTime ? replayer.replayRealTime() : replayer.replayFast();
+        System.out.print(report);
+    }
+}
@@ -0,0 +1,318 @@
+package com.example.asn4;
+
+import javafx.event.Event;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * A recorded stream of the mouse, scroll and key events that reached the canvas, written by InputRecorder and fed
+ * back by InputReplayer. The scene at the start of the recording is saved next to the trace (see sceneFileOf), and
+ * the camera is kept in the header, so replaying starts from the same state.
+ *
+ * Layout, all little-endian:
+ * <pre>
+ *   header (32 bytes)   magic, version, double camera left, top, zoom
+ *   records             byte kind, short flags, varint microseconds since the previous record, then
+ *                         mouse:  float x, y
+ *                         scroll: float x, y, deltaX, deltaY
+ *                         key:    varint key code
+ * </pre>
+ * Coordinates are in the scene, which is what an event fired at the canvas is converted from. The flags hold the
+ * modifier keys, the buttons held down and, in bits 7-8, the button that changed state. A mouse drag is 15 bytes. A
+ * trace cut short by a crash is read up to its last complete record.
+ */
+public final class InputTrace {
+
+    /** "A4TR" in ASCII */
+    public static final int MAGIC = 0x52543441;
+
+    public static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 32;
+
+    /** Largest record, so a writer knows when its buffer needs flushing */
+    static final int MAX_RECORD_SIZE = 3 + 10 + 16;
+
+    // event kinds
+    static final byte PRESSED = 0, DRAGGED = 1, RELEASED = 2, MOVED = 3, SCROLL = 4, KEY_PRESSED = 5;
+    static final String[] KIND_NAMES = {"pressed", "dragged", "released", "moved", "scroll", "key"};
+
+    // flag bits
+    private static final int SHIFT = 1, CONTROL = 1 << 1, ALT = 1 << 2, META = 1 << 3;
+    private static final int PRIMARY_DOWN = 1 << 4, SECONDARY_DOWN = 1 << 5, MIDDLE_DOWN = 1 << 6;
+    private static final int BUTTON_SHIFT = 7;
+    private static final MouseButton[] BUTTONS = {MouseButton.NONE, MouseButton.PRIMARY, MouseButton.SECONDARY,
+            MouseButton.MIDDLE};
+
+    /** Camera when the recording started */
+    private final double cameraLeft, cameraTop, cameraZoom;
+
+    // records, one array per field
+    private long[] times;
+    private byte[] kinds;
+    private short[] flags;
+    private float[] x, y, deltaX, deltaY;
+    private int[] keyCodes;
+    private int size;
+
+
+    private InputTrace(double cameraLeft, double cameraTop, double cameraZoom) {
+        this.cameraLeft = cameraLeft;
+        this.cameraTop = cameraTop;
+        this.cameraZoom = cameraZoom;
+        times = new long[1024];
+        kinds = new byte[1024];
+        flags = new short[1024];
+        x = new float[1024];
+        y = new float[1024];
+        deltaX = new float[1024];
+        deltaY = new float[1024];
+        keyCodes = new int[1024];
+    }
+
+    /**
+     * @return file the scene at the start of a trace is saved in
+     */
+    public static Path sceneFileOf(Path trace) {
+        return trace.resolveSibling(trace.getFileName() + ".blob");
+    }
+
+    // writing
+
+    static void writeHeader(ByteBuffer buffer, Camera camera) {
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putDouble(camera.getLeft());
+        buffer.putDouble(camera.getTop());
+        buffer.putDouble(camera.getZoom());
+    }
+
+    /**
+     * Appends a mouse record
+     */
+    static void writeMouse(ByteBuffer buffer, byte kind, MouseEvent e, long micros) {
+        int f = modifiers(e.isShiftDown(), e.isControlDown(), e.isAltDown(), e.isMetaDown());
+        if (e.isPrimaryButtonDown()) f |= PRIMARY_DOWN;
+        if (e.isSecondaryButtonDown()) f |= SECONDARY_DOWN;
+        if (e.isMiddleButtonDown()) f |= MIDDLE_DOWN;
+        f |= buttonIndex(e.getButton()) << BUTTON_SHIFT;
+        writeStart(buffer, kind, f, micros);
+        buffer.putFloat((float) e.getSceneX());
+        buffer.putFloat((float) e.getSceneY());
+    }
+
+    static void writeScroll(ByteBuffer buffer, ScrollEvent e, long micros) {
+        writeStart(buffer, SCROLL, modifiers(e.isShiftDown(), e.isControlDown(), e.isAltDown(), e.isMetaDown()),
+                micros);
+        buffer.putFloat((float) e.getSceneX());
+        buffer.putFloat((float) e.getSceneY());
+        buffer.putFloat((float) e.getDeltaX());
+        buffer.putFloat((float) e.getDeltaY());
+    }
+
+    static void writeKey(ByteBuffer buffer, KeyEvent e, long micros) {
+        writeStart(buffer, KEY_PRESSED, modifiers(e.isShiftDown(), e.isControlDown(), e.isAltDown(), e.isMetaDown()),
+                micros);
+        writeVarint(buffer, e.getCode().getCode());
+    }
+
+    private static void writeStart(ByteBuffer buffer, byte kind, int f, long micros) {
+        buffer.put(kind);
+        buffer.putShort((short) f);
+        writeVarint(buffer, micros);
+    }
+
+    private static int modifiers(boolean shift, boolean control, boolean alt, boolean meta) {
+        return (shift ? SHIFT : 0) | (control ? CONTROL : 0) | (alt ? ALT : 0) | (meta ? META : 0);
+    }
+
+    private static int buttonIndex(MouseButton button) {
+        return switch (button) {
+            case PRIMARY -> 1;
+            case SECONDARY -> 2;
+            case MIDDLE -> 3;
+            default -> 0;
+        };
+    }
+
+    private static void writeVarint(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    // reading
+
+    /**
+     * Reads a whole trace into memory
+     * @param path trace file
+     * @return the trace, up to its last complete record
+     * @throws IOException if the file can't be read or isn't a trace
+     */
+    public static InputTrace read(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            throw new IOException(path + " is not an input trace");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported input trace version " + version);
+        }
+        InputTrace trace = new InputTrace(buffer.getDouble(), buffer.getDouble(), buffer.getDouble());
+
+        long time = 0;
+        try {
+            while (buffer.hasRemaining()) {
+                byte kind = buffer.get();
+                short f = buffer.getShort();
+                time += readVarint(buffer) * 1000;
+                float ex = 0, ey = 0, dx = 0, dy = 0;
+                int keyCode = 0;
+                if (kind == KEY_PRESSED) {
+                    keyCode = (int) readVarint(buffer);
+                } else if (kind >= PRESSED && kind <= SCROLL) {
+                    ex = buffer.getFloat();
+                    ey = buffer.getFloat();
+                    if (kind == SCROLL) {
+                        dx = buffer.getFloat();
+                        dy = buffer.getFloat();
+                    }
+                } else {
+                    throw new IOException("Unknown input trace record kind " + kind);
+                }
+                trace.add(time, kind, f, ex, ey, dx, dy, keyCode);
+            }
+        } catch (BufferUnderflowException e) {
+            // the recording was cut short; keep the complete records
+        }
+        return trace;
+    }
+
+    private static long readVarint(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+    }
+
+    private void add(long time, byte kind, short f, float ex, float ey, float dx, float dy, int keyCode) {
+        if (size == times.length) {
+            int capacity = size * 2;
+            times = Arrays.copyOf(times, capacity);
+            kinds = Arrays.copyOf(kinds, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+            x = Arrays.copyOf(x, capacity);
+            y = Arrays.copyOf(y, capacity);
+            deltaX = Arrays.copyOf(deltaX, capacity);
+            deltaY = Arrays.copyOf(deltaY, capacity);
+            keyCodes = Arrays.copyOf(keyCodes, capacity);
+        }
+        times[size] = time;
+        kinds[size] = kind;
+        flags[size] = f;
+        x[size] = ex;
+        y[size] = ey;
+        deltaX[size] = dx;
+        deltaY[size] = dy;
+        keyCodes[size] = keyCode;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double getCameraLeft() {
+        return cameraLeft;
+    }
+
+    public double getCameraTop() {
+        return cameraTop;
+    }
+
+    public double getCameraZoom() {
+        return cameraZoom;
+    }
+
+    /**
+     * @return nanoseconds from the start of the recording to the event
+     */
+    public long getTime(int index) {
+        return times[index];
+    }
+
+    byte getKind(int index) {
+        return kinds[index];
+    }
+
+    /**
+     * Rebuilds a recorded event
+     * @param index position of the event in the trace
+     * @return a MouseEvent, ScrollEvent or KeyEvent like the one that was recorded
+     */
+    public Event toEvent(int index) {
+        int f = flags[index];
+        boolean shift = (f & SHIFT) != 0, control = (f & CONTROL) != 0;
+        boolean alt = (f & ALT) != 0, meta = (f & META) != 0;
+        double ex = x[index], ey = y[index];
+        switch (kinds[index]) {
+            case SCROLL:
+                return new ScrollEvent(ScrollEvent.SCROLL, ex, ey, ex, ey, shift, control, alt, meta, false, false,
+                        deltaX[index], deltaY[index], deltaX[index], deltaY[index],
+                        ScrollEvent.HorizontalTextScrollUnits.NONE, 0, ScrollEvent.VerticalTextScrollUnits.NONE, 0,
+                        0, null);
+            case KEY_PRESSED:
+                KeyCode code = keyCode(keyCodes[index]);
+                return new KeyEvent(KeyEvent.KEY_PRESSED, KeyEvent.CHAR_UNDEFINED, "", code,
+                        shift, control, alt, meta);
+            default:
+                MouseButton button = BUTTONS[(f >> BUTTON_SHIFT) & 3];
+                return new MouseEvent(mouseType(kinds[index]), ex, ey, ex, ey, button, 1,
+                        shift, control, alt, meta,
+                        (f & PRIMARY_DOWN) != 0, (f & MIDDLE_DOWN) != 0, (f & SECONDARY_DOWN) != 0,
+                        false, false, false, null);
+        }
+    }
+
+    private static javafx.event.EventType<MouseEvent> mouseType(byte kind) {
+        return switch (kind) {
+            case PRESSED -> MouseEvent.MOUSE_PRESSED;
+            case DRAGGED -> MouseEvent.MOUSE_DRAGGED;
+            case RELEASED -> MouseEvent.MOUSE_RELEASED;
+            default -> MouseEvent.MOUSE_MOVED;
+        };
+    }
+
+    /** KeyCode by its code, built on first use */
+    private static KeyCode[] keyCodesByCode;
+
+    private static KeyCode keyCode(int code) {
+        if (keyCodesByCode == null) {
+            int max = 0;
+            for (KeyCode k : KeyCode.values()) max = Math.max(max, k.getCode());
+            KeyCode[] byCode = new KeyCode[max + 1];
+            for (KeyCode k : KeyCode.values()) {
+                // UNDEFINED is -1
+                if (k.getCode() >= 0 && byCode[k.getCode()] == null) byCode[k.getCode()] = k;
+            }
+            keyCodesByCode = byCode;
+        }
+        return code >= 0 && code < keyCodesByCode.length && keyCodesByCode[code] != null
+                ? keyCodesByCode[code] : KeyCode.UNDEFINED;
+    }
+}
@@ -1,13 +1,12 @@
 package com.example.asn4;
 
-import com.example.asn4.Commands.CreateCommand;
+import com.example.asn4.Commands.CommandHistory;
 import com.example.asn4.Commands.TargetCommand;
 import javafx.geometry.Point2D;
-import javafx.scene.image.PixelReader;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
-import java.util.Stack;
 
 public class InteractionModel {
 
@@ -16,8 +15,21 @@ public class InteractionModel {
     /** class subscribers that listen to interaction model, for the lasso and rectangle selection tool */
     private List<IModelListener> selectionSubscribers;
 
+    /** Listeners notified immediately after every change, such as tests */
+    private List<IModelListener> synchronousSubscribers;
+
+    /** Coalesces notifications to the blob and selection subscribers; without one they are notified immediately */
+    private NotificationScheduler scheduler;
+
+    /** Notify the blob and selection subscribers, handed to the scheduler */
+    private final Runnable blobDelivery = this::deliverToBlobSubscribers;
+    private final Runnable selectionDelivery = this::deliverToSelectionSubscribers;
+
     /** Stores multiple selected blobs */
-    private ArrayList<Blob> selectedBlobs;
+    private BlobSelection selectedBlobs;
+
+    /** Bounds of blobs whose selection state changed since the view last drew */
+    private DirtyRegion dirty;
 
     /** Stores the mouse cursor (x, y) at drag during a tool selection event */
     private double dragMouseCursorX, dragMouseCursorY;
@@ -31,29 +43,50 @@ public class InteractionModel {
     /** rectangle tool instance */
     private RectangleSelection rectSelection;
 
-    /** Everytime the lasso tool is used to create a selection area, the canvas holding its graphics content gets a
-     * snapshot image stored in this var. This is done so that blobs within the selection can be distinguished */
-    private PixelReader lassoCanvasSnapshot;
+    /** Blobs the selection tools would toggle if the mouse were released now */
+    private SelectionPreview selectionPreview;
+
+    /** Default limits of the undo/redo history */
+    public static final int DEFAULT_HISTORY_ENTRIES = 1000;
+    public static final long DEFAULT_HISTORY_BYTES = 64L * 1024 * 1024;
+    public static final long DEFAULT_MERGE_WINDOW_MILLIS = 1000;
+
+    /** Smallest distance in screen pixels between consecutive lasso points; closer mouse events are dropped */
+    public static final double LASSO_MIN_POINT_DISTANCE = 2;
 
-    /** Stores the command objects for undo */
-    private Stack<TargetCommand> undoStack;
+    /** Largest distance in screen pixels a lasso point may be moved by simplifying the finished lasso */
+    public static final double LASSO_SIMPLIFY_TOLERANCE = 0.75;
 
-    /** Stores the command objects for redo */
-    private Stack<TargetCommand> redoStack;
+    /** Default number of blobs from which the selection tools are evaluated in parallel */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 100_000;
+
+    /** Number of blobs from which the selection tools are evaluated in parallel */
+    private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
+    /** Part of the world shown on the canvas */
+    private Camera camera;
+
+    /** Stores the command objects for undo and redo */
+    private CommandHistory history;
+
+    /** Log of executed, undone and redone commands for crash recovery, null if there is none */
+    private CommandJournal journal;
 
 
 
     public InteractionModel() {
         blobSubscribers = new ArrayList<>();
         selectionSubscribers = new ArrayList<>();
-        selectedBlobs = new ArrayList<>();
+        synchronousSubscribers = new ArrayList<>();
+        selectedBlobs = new BlobSelection();
+        dirty = new DirtyRegion();
 
         lassoSelection = new LassoSelection();
         rectSelection = new RectangleSelection();
-        lassoCanvasSnapshot = null;
+        selectionPreview = new SelectionPreview(dirty);
+        camera = new Camera(800, 800);
 
-        undoStack = new Stack<>();
-        redoStack = new Stack<>();
+        history = new CommandHistory(DEFAULT_HISTORY_ENTRIES, DEFAULT_HISTORY_BYTES, DEFAULT_MERGE_WINDOW_MILLIS);
     }
 
 
@@ -64,12 +97,69 @@ public class InteractionModel {
 
     public void addSelectionSubscriber(IModelListener sub) {selectionSubscribers.add(sub);}
 
+    /**
+     * Adds a listener that is told about every blob and selection tool change as it happens instead of once per pulse
+     * @param sub listener
+     */
+    public void addSynchronousSubscriber(IModelListener sub) {
+        synchronousSubscribers.add(sub);
+    }
+
+    /**
+     * Sets the scheduler used to coalesce notifications to the blob and selection subscribers
+     * @param newScheduler scheduler shared with the other models of the application
+     */
+    public void setScheduler(NotificationScheduler newScheduler) {
+        scheduler = newScheduler;
+    }
+
     private void notifyBlobSubscribers() {
-        blobSubscribers.forEach(IModelListener::iModelChanged);
+        // indexed so that notifying doesn't allocate an iterator on every mouse event
+        for (int i = 0; i < synchronousSubscribers.size(); i++) {
+            IModelListener sub = synchronousSubscribers.get(i);
+            PipelineEvents.NotificationEvent timing = PipelineEvents.beginNotification();
+            sub.iModelChanged();
+            PipelineEvents.endNotification(timing, "InteractionModel", sub);
+        }
+        if (blobSubscribers.isEmpty()) return;
+        if (scheduler == null) {
+            deliverToBlobSubscribers();
+        } else {
+            scheduler.schedule(blobDelivery);
+        }
     }
 
     private void notifySelectionSubscribers() {
-        selectionSubscribers.forEach(IModelListener::iModelChangedSelection);
+        for (int i = 0; i < synchronousSubscribers.size(); i++) {
+            IModelListener sub = synchronousSubscribers.get(i);
+            PipelineEvents.NotificationEvent timing = PipelineEvents.beginNotification();
+            sub.iModelChangedSelection();
+            PipelineEvents.endNotification(timing, "InteractionModel", sub);
+        }
+        if (selectionSubscribers.isEmpty()) return;
+        if (scheduler == null) {
+            deliverToSelectionSubscribers();
+        } else {
+            scheduler.schedule(selectionDelivery);
+        }
+    }
+
+    private void deliverToBlobSubscribers() {
+        for (int i = 0; i < blobSubscribers.size(); i++) {
+            IModelListener sub = blobSubscribers.get(i);
+            PipelineEvents.NotificationEvent timing = PipelineEvents.beginNotification();
+            sub.iModelChanged();
+            PipelineEvents.endNotification(timing, "InteractionModel", sub);
+        }
+    }
+
+    private void deliverToSelectionSubscribers() {
+        for (int i = 0; i < selectionSubscribers.size(); i++) {
+            IModelListener sub = selectionSubscribers.get(i);
+            PipelineEvents.NotificationEvent timing = PipelineEvents.beginNotification();
+            sub.iModelChangedSelection();
+            PipelineEvents.endNotification(timing, "InteractionModel", sub);
+        }
     }
 
 
@@ -78,8 +168,79 @@ public class InteractionModel {
 
     // GETTER AND SETTER METHODS FOR DATA STORED IN INTERACTION MODEL
 
-    public ArrayList<Blob> getSelectedBlobs() {
-        return selectedBlobs;
+    /**
+     * @return number of selected blobs, without taking a snapshot of them
+     */
+    int getSelectionSize() {
+        return selectedBlobs.size();
+    }
+
+    /**
+     * @return the selected blobs in the order they were selected, as a read-only list that isn't affected by later
+     * selection changes
+     */
+    public List<Blob> getSelectedBlobs() {
+        return selectedBlobs.asList();
+    }
+
+    /**
+     * The camera, for converting between screen and world coordinates. Change it through the methods below so the
+     * view gets repainted.
+     */
+    public Camera getCamera() {
+        return camera;
+    }
+
+    /**
+     * Moves the camera by a distance in screen pixels
+     */
+    public void panCamera(double screenDX, double screenDY) {
+        camera.pan(screenDX, screenDY);
+        cameraChanged();
+    }
+
+    /**
+     * Zooms the camera by a factor around a point on the canvas
+     */
+    public void zoomCamera(double factor, double screenX, double screenY) {
+        camera.zoomAt(factor, screenX, screenY);
+        cameraChanged();
+    }
+
+    /**
+     * Brings the camera back to the world origin at 1:1
+     */
+    public void resetCamera() {
+        camera.reset();
+        cameraChanged();
+    }
+
+    /**
+     * Puts the camera back where it was, e.g. at the start of a recorded input trace
+     */
+    public void setCameraView(double left, double top, double zoom) {
+        camera.moveTo(left, top, zoom);
+        cameraChanged();
+    }
+
+    /**
+     * Tells the camera the new size of the canvas
+     */
+    public void resizeViewport(double width, double height) {
+        camera.setViewportSize(width, height);
+        cameraChanged();
+    }
+
+    private void cameraChanged() {
+        dirty.markAll();
+        notifyBlobSubscribers();
+    }
+
+    /**
+     * Areas of blobs that were selected or unselected since the view last drained them
+     */
+    DirtyRegion getDirtyRegion() {
+        return dirty;
     }
 
     /**
@@ -141,6 +302,25 @@ public class InteractionModel {
         return selectedBlobs.contains(b);
     }
 
+    /**
+     * Checks if the blob with the given order number is selected, without needing its handle
+     * @param blobId order number of the blob
+     * @return true if the blob is selected, false otherwise
+     */
+    boolean isSelected(int blobId) {
+        return selectedBlobs.containsId(blobId);
+    }
+
+    /**
+     * Checks if a blob is to be shown as selected: while a selection tool is dragged, that is whether it will be
+     * selected once the mouse is released
+     * @param blobId order number of the blob
+     * @return true if the blob is selected now and the tools leave it alone, or unselected now and the tools toggle it
+     */
+    boolean isShownSelected(int blobId) {
+        return selectedBlobs.containsId(blobId) != selectionPreview.contains(blobId);
+    }
+
     /**
      * The selected blobs in the controller are stored into the iModel's list of selected blobs, so that more
      * selected blobs can be stored
@@ -152,15 +332,66 @@ public class InteractionModel {
     }
 
     /**
-     * If blob is already selected, unselect (vice versa)
+     * If blob is already selected, unselect (vice versa). Subscribers are notified by the caller, once per batch.
      * @param b selected blob
      */
     private void updateSelected(Blob b) {
-        if (selectedBlobs.contains(b)) {
-            selectedBlobs.remove(b);
-        } else {
+        if (!selectedBlobs.remove(b)) {
             selectedBlobs.add(b);
         }
+        dirty.addBlob(b);
+    }
+
+    /**
+     * Adds every given blob to the selection, leaving blobs that are already selected as they are
+     * @param blobList blobs to select
+     */
+    public void addToSelection(List<Blob> blobList) {
+        blobList.forEach(b -> {
+            if (selectedBlobs.add(b)) dirty.addBlob(b);
+        });
+        notifyBlobSubscribers();
+    }
+
+    /**
+     * Removes every given blob from the selection, ignoring blobs that aren't selected
+     * @param blobList blobs to unselect
+     */
+    public void removeFromSelection(List<Blob> blobList) {
+        blobList.forEach(b -> {
+            if (selectedBlobs.remove(b)) dirty.addBlob(b);
+        });
+        notifyBlobSubscribers();
+    }
+
+    /**
+     * Selects every blob in the model
+     * @param model model holding all created blobs
+     */
+    public void selectAll(BlobModel model) {
+        BlobStore store = model.getStore();
+        for (int i = 0; i < store.size; i++) {
+            selectedBlobs.add(store.handle(i));
+        }
+        dirty.markAll();
+        notifyBlobSubscribers();
+    }
+
+    /**
+     * Selects every unselected blob in the model and unselects every selected one
+     * @param model model holding all created blobs
+     */
+    public void invertSelection(BlobModel model) {
+        BlobStore store = model.getStore();
+        BitSet wasSelected = new BitSet();
+        selectedBlobs.asList().forEach(b -> wasSelected.set(b.counter));
+        selectedBlobs.clear();
+        for (int i = 0; i < store.size; i++) {
+            if (!wasSelected.get(store.id[i])) {
+                selectedBlobs.add(store.handle(i));
+            }
+        }
+        dirty.markAll();
         notifyBlobSubscribers();
     }
 
@@ -168,6 +399,11 @@ public class InteractionModel {
      * Clears all the selected blobs stored in the iModel
      */
     public void clearBlobSelection() {
+        if (selectedBlobs.size() > DirtyRegion.MAX_RECTS) {
+            dirty.markAll();
+        } else {
+            selectedBlobs.asList().forEach(dirty::addBlob);
+        }
         selectedBlobs.clear();
         notifyBlobSubscribers();
     }
@@ -179,7 +415,10 @@ public class InteractionModel {
      * @return true if all selected blobs at controller is contained in the iModel, false otherwise
      */
     public boolean allSelectedBlobs(List<Blob> hitList) {
-        return selectedBlobs.containsAll(hitList);
+        for (Blob b : hitList) {
+            if (!selectedBlobs.contains(b)) return false;
+        }
+        return true;
     }
 
 
@@ -224,7 +463,14 @@ public class InteractionModel {
         return lassoSelection.isPathComplete();
     }
 
+    /**
+     * Marks the lasso as being drawn or finished. A finished lasso is simplified first, so the hit tests walk fewer
+     * edges; the tolerance is in screen pixels, so the lasso never visibly changes shape.
+     */
     public void setLassoPathStatus(boolean newStatus) {
+        if (newStatus && !lassoSelection.isPathComplete()) {
+            lassoSelection.simplify(LASSO_SIMPLIFY_TOLERANCE / camera.getZoom());
+        }
         lassoSelection.setPathComplete(newStatus);
         notifySelectionSubscribers();
     }
@@ -239,8 +485,19 @@ public class InteractionModel {
      * @param point2D point
      */
     public void addPoints(Point2D point2D) {
-        lassoSelection.addPoint(point2D);
-        notifySelectionSubscribers();
+        addLassoPoint(point2D.getX(), point2D.getY());
+    }
+
+    /**
+     * Adds a point to the lasso, unless it is within LASSO_MIN_POINT_DISTANCE screen pixels of the last point kept.
+     * Subscribers are only notified when the point is kept.
+     * @param x world x coordinate
+     * @param y world y coordinate
+     */
+    public void addLassoPoint(double x, double y) {
+        if (lassoSelection.addPoint(x, y, LASSO_MIN_POINT_DISTANCE / camera.getZoom())) {
+            notifySelectionSubscribers();
+        }
     }
 
     public void clearPoints() {
@@ -252,18 +509,30 @@ public class InteractionModel {
        return lassoSelection.getPoints();
     }
 
+    // lasso points without copying them, for drawing the lasso
+
+    int getLassoPointCount() {
+        return lassoSelection.getPointCount();
+    }
+
+    double getLassoPointX(int index) {
+        return lassoSelection.getPointX(index);
+    }
+
+    double getLassoPointY(int index) {
+        return lassoSelection.getPointY(index);
+    }
 
     /**
-     * Stores the canvas snapshot of the lasso tool by pixels
-     * @param reader canvas snapshot from the BlobView, from the hidden canvas containing the selection area of the
-     * lasso/rectangle tool
+     * @return number that changes every time the lasso points are cleared
      */
-    public void storeLassoCanvasSnapshot(PixelReader reader) {
-        this.lassoCanvasSnapshot = reader;
+    int getLassoStrokeId() {
+        return lassoSelection.getStrokeId();
     }
 
+
     /**
-     * Store the dimensions of the rectangle selection after it is drawn in the view
+     * Replaces the dimensions of the rectangle selection, which otherwise follow its starting and ending points
      * @param newLeft new left dimension
      * @param newTop new top dimension
      * @param newWidth new width dimension
@@ -277,16 +546,62 @@ public class InteractionModel {
     }
 
     /**
-     * Uses the canvas snapshot (stored in canvasSnapshot var) of the hidden canvas where the lasso selection
-     * is drawn, to see if a blob is within the tools' selection area. The list of all blobs in the application is
-     * iterated through to see if a blob is within the area selection.
+     * Starts showing what the selection tools would select, as a selection drag begins. The lasso must have been
+     * started already.
+     * @param model model holding all created blobs
+     */
+    public void startSelectionPreview(BlobModel model) {
+        selectionPreview.start(model, lassoSelection);
+    }
+
+    /**
+     * Updates the preview with the rectangle from its starting point to its ending point and the lasso points added
+     * since the last update. Only the blobs in the area the tools gained or lost are looked at; the blob subscribers
+     * are notified if the preview changed.
+     */
+    public void updateSelectionPreview() {
+        if (!selectionPreview.isActive()) return;
+        PipelineEvents.HitTestEvent timing = PipelineEvents.beginHitTest();
+        // the same rectangle rectAreaHit tests once the mouse is released
+        boolean changed = selectionPreview.update(rectSelection.getLeft(), rectSelection.getTop(),
+                rectSelection.getRight(), rectSelection.getBottom());
+        if (timing != null) timing.end();
+        if (timing != null && timing.shouldCommit()) {
+            timing.tool = "preview";
+            timing.blobs = selectionPreview.testedCount();
+            timing.hits = selectionPreview.size();
+            timing.commit();
+        }
+        if (changed) notifyBlobSubscribers();
+    }
+
+    /**
+     * Stops showing the preview, when the selection drag ends
+     */
+    public void endSelectionPreview() {
+        if (!selectionPreview.isActive()) return;
+        boolean shown = selectionPreview.size() > 0;
+        selectionPreview.stop();
+        if (shown) notifyBlobSubscribers();
+    }
+
+    /**
+     * @return number of blobs the selection tools would toggle if the mouse were released now
+     */
+    int getSelectionPreviewSize() {
+        return selectionPreview.size();
+    }
+
+    /**
+     * Tests the lasso polygon against each blob in the given list to see if a blob is within the tools' selection
+     * area.
      * @param blobs list of all created blobs in the application so far
      * @return list of all blobs WITHIN the selection area of the lasso tool
      */
     public List<Blob> lassoAreaHit(List<Blob> blobs) {
         List<Blob> hitList = new ArrayList<>();
         blobs.forEach(b -> {
-            if (checkLassoContains(b, lassoCanvasSnapshot)) {
+            if (lassoSelection.contains(b)) {
                 hitList.add(b);
             }
         });
@@ -294,9 +609,22 @@ public class InteractionModel {
     }
 
     /**
-     * Uses the canvas snapshot of the hidden canvas where the rectangle selection is drawn, to see if a blob is within
-     * the tools' selection area. The list of all blobs in the application is iterated through to see if a blob is
-     * within the area selection.
+     * Finds the blobs within the lasso tool's selection area using the model's spatial index, so only the blobs
+     * under the lasso are looked at
+     * @param model model holding all created blobs
+     * @return list of all blobs WITHIN the selection area of the lasso tool
+     */
+    public List<Blob> lassoAreaHit(BlobModel model) {
+        PipelineEvents.HitTestEvent timing = PipelineEvents.beginHitTest();
+        BlobStore store = model.getStore();
+        List<Blob> hitList = handles(store, lassoSelection.hitTest(model.getGrid(), store, runParallel(store)));
+        endHitTest(timing, "lasso", model, hitList);
+        return hitList;
+    }
+
+    /**
+     * Uses the stored dimensions of the rectangle selection to see if a blob is within the tools' selection area.
+     * The list of all blobs in the application is iterated through to see if a blob is within the area selection.
      * @param blobs list of all created blobs in the application so far
      * @return list of all blobs WITHIN the selection area of the rectangle tool
      */
@@ -311,46 +639,129 @@ public class InteractionModel {
     }
 
     /**
-     * Calls the lasso selection object to see if a given blob and coordinate is within the lasso tool's
-     * selection area
-     * @return true if a blob is within the area selection, false otherwise
+     * Scans the model's blob arrays for the blobs within the rectangle tool's selection area. Handles are only
+     * retrieved for the blobs that are hit.
+     * @param model model holding all created blobs
+     * @return list of all blobs WITHIN the selection area of the rectangle tool
      */
-    private boolean checkLassoContains(Blob b, PixelReader reader) {
-        return lassoSelection.contains(b, reader);
+    public List<Blob> rectAreaHit(BlobModel model) {
+        PipelineEvents.HitTestEvent timing = PipelineEvents.beginHitTest();
+        BlobStore store = model.getStore();
+        List<Blob> hitList = handles(store, rectSelection.hitTest(store, runParallel(store)));
+        endHitTest(timing, "rectangle", model, hitList);
+        return hitList;
+    }
+
+    /**
+     * Sets the number of blobs from which the lasso and rectangle tools split their work over the fork-join pool.
+     * Smaller scenes are evaluated on the FX thread, where the cost of handing out tasks would outweigh the gain.
+     * The blobs found and their order are the same either way.
+     * @param blobs number of blobs, Integer.MAX_VALUE to never evaluate in parallel
+     */
+    public void setParallelThreshold(int blobs) {
+        parallelThreshold = blobs;
+    }
+
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    private boolean runParallel(BlobStore store) {
+        return store.size >= parallelThreshold;
+    }
+
+    /**
+     * Retrieves the handles of the slots found by a selection tool. Done on the FX thread after the search since
+     * handles are created on demand.
+     */
+    private static List<Blob> handles(BlobStore store, int[] slots) {
+        List<Blob> hitList = new ArrayList<>(slots.length);
+        for (int slot : slots) {
+            hitList.add(store.handle(slot));
+        }
+        return hitList;
+    }
+
+    private static void endHitTest(PipelineEvents.HitTestEvent timing, String tool, BlobModel model, List<Blob> hits) {
+        if (timing == null) return;
+        timing.end();
+        if (timing.shouldCommit()) {
+            timing.tool = tool;
+            timing.blobs = model.getStore().size;
+            timing.hits = hits.size();
+            timing.commit();
+        }
     }
 
 
 
     // METHODS FOR UNDO/REDO STACKS
 
+    /**
+     * The undo/redo history, for changing its limits or reading its depth and estimated memory
+     */
+    public CommandHistory getHistory() {
+        return history;
+    }
+
+    /**
+     * Sets the journal every executed, undone and redone command is recorded in
+     * @param newJournal journal, or null to stop recording
+     */
+    public void setJournal(CommandJournal newJournal) {
+        journal = newJournal;
+    }
+
+    /**
+     * Checkpoints the journal, if there is one. Needed after changes to the blobs that don't go through commands.
+     */
+    public void checkpointJournal() {
+        if (journal != null) journal.checkpoint();
+    }
+
     public void handleUndo() {
-        if (undoStack.empty()) {
+        PipelineEvents.HistoryEvent timing = PipelineEvents.beginHistory();
+        TargetCommand command = history.peekUndo();
+        if (!history.undo()) {
             System.out.println("Nothing more to undo!");
         } else {
-            TargetCommand tc = undoStack.pop();
-            tc.undo();
-            redoStack.push(tc);
+            if (journal != null) journal.undone(command);
             notifyBlobSubscribers();
         }
+        endHistory(timing, "undo", command);
     }
 
     public void handleRedo() {
-        if (redoStack.empty()) {
+        PipelineEvents.HistoryEvent timing = PipelineEvents.beginHistory();
+        TargetCommand command = history.peekRedo();
+        if (!history.redo()) {
             System.out.println("Nothing more to redo!");
         } else {
-            TargetCommand tc = redoStack.pop();
-            tc.doIt();
-            undoStack.push(tc);
+            if (journal != null) journal.redone(command);
             notifyBlobSubscribers();
         }
+        endHistory(timing, "redo", command);
+    }
+
+    private void endHistory(PipelineEvents.HistoryEvent timing, String action, TargetCommand command) {
+        if (timing == null) return;
+        timing.end();
+        if (timing.shouldCommit()) {
+            timing.action = action;
+            timing.command = command == null ? null : command.toString();
+            timing.undoDepth = history.getUndoDepth();
+            timing.redoDepth = history.getRedoDepth();
+            timing.commit();
+        }
     }
 
     /**
-     * Add a new task command to the undo stack
+     * Add a new task command to the undo stack. It may be merged into the previous entry if it repeats it.
      * @param targetCommand new task command object to be pushed
      */
     public void addToUndoStack(TargetCommand targetCommand) {
-        undoStack.push(targetCommand);
+        history.push(targetCommand);
+        if (journal != null) journal.executed(targetCommand);
         notifyBlobSubscribers();
     }
 
@@ -359,7 +770,7 @@ public class InteractionModel {
      */
     public void printUndoStack() {
         System.out.println("UNDO STACK:");
-        undoStack.forEach(item -> {
+        history.getUndoEntries().forEach(item -> {
             System.out.println("    " + item.toString());
         });
         System.out.println();
@@ -370,7 +781,7 @@ public class InteractionModel {
      */
     private void printRedoStack() {
         System.out.println("REDO STACK:");
-        redoStack.forEach(item -> {
+        history.getRedoEntries().forEach(item -> {
             System.out.println("    " + item.toString());
         });
         System.out.println();
@@ -1,15 +1,24 @@
 package com.example.asn4;
 
 import javafx.geometry.Point2D;
-import javafx.scene.image.PixelReader;
-import javafx.scene.paint.Color;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+/**
+ * The lasso tool. Its points are kept in primitive coordinate arrays that the containment tests read directly.
+ *
+ * Points closer than a minimum distance to the last kept point are dropped as the mouse is dragged, and when the
+ * stroke is finished it is simplified with Douglas-Peucker, so a long, slow drag doesn't turn into thousands of
+ * vertices for every containment test to walk through.
+ */
 public class LassoSelection {
-    /** Store points of the lasso tool */
-    private List<Point2D> points;
+    /** Coordinates of the lasso points; the polygon's vertices once the path is complete */
+    private double[] polyX, polyY;
+
+    /** Number of valid points in polyX/polyY */
+    private int polySize;
 
     /** Stores the mouse position at the end of a mouse press event, just before a mouse drag event occurs
      * for blob selection through lasso tool */
@@ -18,9 +27,17 @@ public class LassoSelection {
     /** Indicates when drawing circles is currently occurring or not */
     private boolean pathComplete;
 
+    /** Bounding box of the lasso polygon, used to reject points before running the polygon test */
+    private double minX, minY, maxX, maxY;
+
+    /** Incremented every time the points are cleared, so a view can tell a new stroke from a longer one */
+    private int strokeId;
+
 
     public LassoSelection() {
-        points = new ArrayList<>();
+        polyX = new double[64];
+        polyY = new double[64];
+        resetBounds();
     }
 
 
@@ -28,10 +45,33 @@ public class LassoSelection {
 
     // getter and setter method
 
+    /**
+     * @return a copy of the lasso points
+     */
     public List<Point2D> getPoints() {
+        List<Point2D> points = new ArrayList<>(polySize);
+        for (int i = 0; i < polySize; i++) {
+            points.add(new Point2D(polyX[i], polyY[i]));
+        }
         return points;
     }
 
+    public int getPointCount() {
+        return polySize;
+    }
+
+    public double getPointX(int index) {
+        return polyX[index];
+    }
+
+    public double getPointY(int index) {
+        return polyY[index];
+    }
+
+    int getStrokeId() {
+        return strokeId;
+    }
+
     public double getCursorX() {
         return cursorX;
     }
@@ -55,27 +95,234 @@ public class LassoSelection {
 
 
     public void addPoint(Point2D p) {
-        points.add(p);
+        addPoint(p.getX(), p.getY(), 0);
+    }
+
+    /**
+     * Adds a point to the lasso unless it is closer than minDistance to the last point kept
+     * @param x x coordinate
+     * @param y y coordinate
+     * @param minDistance smallest distance between consecutive points
+     * @return true if the point was kept
+     */
+    public boolean addPoint(double x, double y, double minDistance) {
+        if (polySize > 0) {
+            double dx = x - polyX[polySize - 1], dy = y - polyY[polySize - 1];
+            if (dx * dx + dy * dy < minDistance * minDistance) return false;
+        }
+        if (polySize == polyX.length) {
+            polyX = Arrays.copyOf(polyX, polySize * 2);
+            polyY = Arrays.copyOf(polyY, polySize * 2);
+        }
+        polyX[polySize] = x;
+        polyY[polySize] = y;
+        polySize++;
+        minX = Math.min(minX, x);
+        minY = Math.min(minY, y);
+        maxX = Math.max(maxX, x);
+        maxY = Math.max(maxY, y);
+        return true;
     }
 
     /**
      * Removes all points of the lasso tool
      */
     public void clearPoints() {
-        points.clear();
+        polySize = 0;
+        strokeId++;
+        resetBounds();
+    }
+
+    private void resetBounds() {
+        minX = minY = Double.POSITIVE_INFINITY;
+        maxX = maxY = Double.NEGATIVE_INFINITY;
     }
 
     /**
-     * Checks if a blob is within the lasso tool selection by using the pixel reader instance of the hidden canvas
-     * where the area selection of lasso tool is drawn
+     * Drops the points that deviate less than a tolerance from the line between their neighbours (Douglas-Peucker).
+     * The first and last points are always kept.
+     * @param tolerance largest distance a dropped point may have from the simplified path
+     */
+    public void simplify(double tolerance) {
+        if (polySize < 3) return;
+        boolean[] keep = new boolean[polySize];
+        keep[0] = keep[polySize - 1] = true;
+
+        // ranges still to simplify, as (first, last) pairs, instead of recursing
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = polySize - 1;
+        double toleranceSquared = tolerance * tolerance;
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+            double ax = polyX[first], ay = polyY[first];
+            double dx = polyX[last] - ax, dy = polyY[last] - ay;
+            double lengthSquared = dx * dx + dy * dy;
+
+            int farthest = -1;
+            double farthestDistance = toleranceSquared;
+            for (int i = first + 1; i < last; i++) {
+                double px = polyX[i] - ax, py = polyY[i] - ay;
+                double distance;
+                if (lengthSquared == 0) {
+                    distance = px * px + py * py;
+                } else {
+                    double cross = px * dy - py * dx;
+                    distance = cross * cross / lengthSquared;
+                }
+                if (distance > farthestDistance) {
+                    farthestDistance = distance;
+                    farthest = i;
+                }
+            }
+            if (farthest < 0) continue;
+            keep[farthest] = true;
+            if (top + 4 > stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+            stack[top++] = first;
+            stack[top++] = farthest;
+            stack[top++] = farthest;
+            stack[top++] = last;
+        }
+
+        int kept = 0;
+        resetBounds();
+        for (int i = 0; i < polySize; i++) {
+            if (!keep[i]) continue;
+            polyX[kept] = polyX[i];
+            polyY[kept] = polyY[i];
+            minX = Math.min(minX, polyX[i]);
+            minY = Math.min(minY, polyY[i]);
+            maxX = Math.max(maxX, polyX[i]);
+            maxY = Math.max(maxY, polyY[i]);
+            kept++;
+        }
+        polySize = kept;
+    }
+
+    /**
+     * Even-odd test of a point against the closed lasso polygon. Counts how many polygon edges a ray going right
+     * from the point crosses; an odd count means the point is inside.
+     */
+    private boolean insidePolygon(double px, double py) {
+        boolean inside = false;
+        for (int i = 0, j = polySize - 1; i < polySize; j = i++) {
+            double yi = polyY[i];
+            double yj = polyY[j];
+            if ((yi > py) != (yj > py)) {
+                double crossX = polyX[i] + (py - yi) * (polyX[j] - polyX[i]) / (yj - yi);
+                if (px < crossX) inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    /**
+     * Checks if a point is within the area enclosed by the lasso tool
+     * @param px x coordinate
+     * @param py y coordinate
+     * @return true if the point is inside the lasso, false if not
+     */
+    public boolean contains(double px, double py) {
+        if (polySize < 3 || px < minX || px > maxX || py < minY || py > maxY) return false;
+        return insidePolygon(px, py);
+    }
+
+    /**
+     * Checks if a blob is within the lasso tool selection. A blob counts as selected when its centre is inside.
      * @param blob blob instance
-     * @param reader canvas snapshot instance
      * @return true if a blob is within the lasso selection, false if not
      */
-    public boolean contains(Blob blob, PixelReader reader) {
-        if (reader!=null) {
-            return reader.getColor((int) blob.x, (int) blob.y).equals(Color.ORANGE);
+    public boolean contains(Blob blob) {
+        return contains(blob.getX(), blob.getY());
+    }
+
+    /**
+     * Finds every blob within the lasso by walking the cells of the model's spatial grid under the lasso's bounding
+     * box. Cells that no lasso edge passes through lie entirely on one side of the lasso, so a single test at the cell
+     * centre accepts or rejects all of their blobs at once; only cells crossed by an edge test each blob.
+     * @param grid spatial index of the model
+     * @param store blob storage of the model
+     * @param parallel whether to split the columns of cells over the fork-join pool
+     * @return slots of the blobs within the lasso, in the order they are stacked in the model
+     */
+    int[] hitTest(SpatialGrid grid, BlobStore store, boolean parallel) {
+        if (polySize < 3) return new int[0];
+
+        int minCol = grid.cellOf(minX), maxCol = grid.cellOf(maxX);
+        int minRow = grid.cellOf(minY), maxRow = grid.cellOf(maxY);
+        int cols = maxCol - minCol + 1;
+        int rows = maxRow - minRow + 1;
+        double cellSize = grid.getCellSize();
+        boolean[] boundary = markBoundaryCells(grid, minCol, minRow, rows);
+
+        int[] hitSlots = ParallelScan.collect(cols, parallel, 1, (from, to, out) -> {
+            for (int c = from; c < to; c++) {
+                for (int r = 0; r < rows; r++) {
+                    int col = c + minCol;
+                    int row = r + minRow;
+                    int[] ids = grid.idsInCell(col, row);
+                    if (ids == null) continue;
+
+                    boolean wholeCell = false;
+                    if (!boundary[c * rows + r]) {
+                        if (!insidePolygon((col + 0.5) * cellSize, (row + 0.5) * cellSize)) continue;
+                        wholeCell = true;
+                    }
+                    for (int i = 1; i <= ids[0]; i++) {
+                        int slot = store.slotOf(ids[i]);
+                        double bx = store.x[slot], by = store.y[slot];
+                        // blobs are listed in every cell they overlap, only look at them from their centre cell
+                        if (grid.cellOf(bx) != col || grid.cellOf(by) != row) continue;
+                        if (wholeCell || insidePolygon(bx, by)) {
+                            out.add(slot);
+                        }
+                    }
+                }
+            }
+        });
+        // slots are in stacking order, so sorting them gives the same order as scanning the whole model
+        Arrays.sort(hitSlots);
+        return hitSlots;
+    }
+
+    /**
+     * Marks the cells each lasso edge passes through. An edge is walked one column at a time, and in each column only
+     * the rows between the edge's y values at the column's left and right borders are marked, so a long diagonal edge
+     * marks a thin band of cells rather than its whole bounding box.
+     * @return flags indexed by (column - minCol) * rows + (row - minRow)
+     */
+    private boolean[] markBoundaryCells(SpatialGrid grid, int minCol, int minRow, int rows) {
+        int cols = grid.cellOf(maxX) - minCol + 1;
+        double cellSize = grid.getCellSize();
+        // rounding in the interpolation must not skip the corner cell an edge just touches
+        double slack = cellSize * 1e-9;
+        boolean[] boundary = new boolean[cols * rows];
+        for (int i = 0, j = polySize - 1; i < polySize; j = i++) {
+            double x0 = polyX[i], y0 = polyY[i], x1 = polyX[j], y1 = polyY[j];
+            if (x0 > x1) {
+                double t = x0; x0 = x1; x1 = t;
+                t = y0; y0 = y1; y1 = t;
+            }
+            int c0 = grid.cellOf(x0), c1 = grid.cellOf(x1);
+            double slope = x1 == x0 ? 0 : (y1 - y0) / (x1 - x0);
+            for (int c = c0; c <= c1; c++) {
+                double ya, yb;
+                if (c0 == c1) {
+                    ya = y0;
+                    yb = y1;
+                } else {
+                    ya = y0 + (Math.max(x0, c * cellSize) - x0) * slope;
+                    yb = y0 + (Math.min(x1, (c + 1) * cellSize) - x0) * slope;
+                }
+                int r0 = Math.max(grid.cellOf(Math.min(ya, yb) - slack), minRow) - minRow;
+                int r1 = Math.min(grid.cellOf(Math.max(ya, yb) + slack), minRow + rows - 1) - minRow;
+                for (int r = r0; r <= r1; r++) {
+                    boundary[(c - minCol) * rows + r] = true;
+                }
+            }
         }
-        return false;
+        return boundary;
     }
 }
@@ -1,15 +1,28 @@
 package com.example.asn4;
 
+import javafx.application.Platform;
 import javafx.scene.layout.StackPane;
 
+import java.io.IOException;
+import java.nio.file.Path;
+
 public class MainUI extends StackPane {
 
+    /** Directory the command journal and its checkpoints are kept in */
+    public static final Path JOURNAL_DIRECTORY = Path.of("journal");
+
+    /** Records every change so the scene can be recovered after a crash, null if it couldn't be opened */
+    private CommandJournal journal;
+
+    private BlobController controller;
+
     public MainUI() {
         // create mvc components
         BlobModel model = new BlobModel();
-        BlobController controller = new BlobController();
+        controller = new BlobController();
         BlobView view = new BlobView();  // where canvas is created
         InteractionModel iModel = new InteractionModel();  // keeps track of the selected blob
+        NotificationScheduler scheduler = new NotificationScheduler();  // redraws at most once per frame
 
 
         // connect mvc components
@@ -17,11 +30,35 @@ public class MainUI extends StackPane {
         view.setModel(model);
         controller.setIModel(iModel);
         view.setIModel(iModel);
+        model.setScheduler(scheduler);
+        model.setExecutor(Platform::runLater);  // changes submitted from other threads are applied on the FX thread
+        iModel.setScheduler(scheduler);
         model.addSubscriber(view);
         iModel.addBlobSubscriber(view);
         iModel.addSelectionSubscriber(view);  // enables selection to be drawn in canvas
+        controller.setScheduler(scheduler);
         view.setController(controller);
 
+        PipelineMetrics.INSTANCE.register(model, iModel);  // live gauges over JMX
+
+        // recover the previous session and record this one
+        try {
+            journal = CommandJournal.open(JOURNAL_DIRECTORY, model, iModel);
+            iModel.setJournal(journal);
+        } catch (IOException e) {
+            System.out.println("Could not open command journal: " + e.getMessage());
+        }
+
         this.getChildren().add(view);
     }
+
+    /**
+     * Finishes an input trace being recorded, stops a running import, and writes the last journal records and a final
+     * checkpoint
+     */
+    public void close() {
+        controller.stopRecording();
+        controller.cancelImport();
+        if (journal != null) journal.close();
+    }
 }
@@ -0,0 +1,75 @@
+package com.example.asn4;
+
+import javafx.animation.AnimationTimer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Coalesces model notifications so that listeners hear about changes at most once per JavaFX pulse, however many
+ * mutations happened in between. Models hand the scheduler the runnable that notifies their listeners; scheduling the
+ * same runnable again before the next pulse does nothing.
+ *
+ * The pulse timer is only created the first time something is scheduled, so models built without a running JavaFX
+ * toolkit (tests, benchmarks) can share the class as long as they only use synchronous listeners.
+ */
+public class NotificationScheduler {
+
+    /** Deliveries waiting for the next pulse, in the order they were first scheduled */
+    private List<Runnable> pending;
+
+    /** Deliveries being run during the current pulse; swapped with pending so that new ones go to the next pulse */
+    private List<Runnable> delivering;
+
+    /** Calls flush() on every pulse while deliveries are pending */
+    private AnimationTimer timer;
+
+    /** Whether the timer is currently started */
+    private boolean running;
+
+
+    public NotificationScheduler() {
+        pending = new ArrayList<>();
+        delivering = new ArrayList<>();
+    }
+
+    /**
+     * Asks for a delivery to run on the next pulse
+     * @param delivery runnable notifying some listeners
+     */
+    public void schedule(Runnable delivery) {
+        if (!pending.contains(delivery)) {
+            pending.add(delivery);
+        }
+        if (!running) {
+            if (timer == null) {
+                timer = new AnimationTimer() {
+                    @Override
+                    public void handle(long now) {
+                        flush();
+                    }
+                };
+            }
+            timer.start();
+            running = true;
+        }
+    }
+
+    /**
+     * Runs every pending delivery now. Deliveries scheduled while flushing wait for the next pulse.
+     */
+    public void flush() {
+        List<Runnable> batch = pending;
+        pending = delivering;
+        delivering = batch;
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).run();
+        }
+        batch.clear();
+
+        if (pending.isEmpty() && running) {
+            timer.stop();
+            running = false;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.asn4;
+
+import java.util.Arrays;
+
+/**
+ * Keeps, for every blob, the number of other blobs it overlaps by at least a minimum ratio, so that the view can flag
+ * overlapping targets while they are dragged. How much two blobs overlap is the area they share over the area of the
+ * smaller one: 0 when they are apart or just touching, 1 when the smaller lies entirely inside the larger.
+ *
+ * The counts are adjusted blob by blob rather than recomputed: the model takes a blob out (remove) before moving,
+ * resizing or deleting it and puts it back (add) afterwards. Both look only at the blobs sharing a grid cell with it,
+ * so keeping the counts costs about as much as keeping the spatial grid. When a blob starts or stops overlapping
+ * anything, its area is added to the model's dirty region so the view repaints its flag.
+ */
+class OverlapIndex {
+
+    private final BlobStore store;
+
+    private final SpatialGrid grid;
+
+    private final DirtyRegion dirty;
+
+    /** Least overlap ratio counted, 0 counting any two blobs that intersect */
+    private final double minRatio;
+
+    /** Number of other blobs each blob overlaps, indexed by order number */
+    private int[] counts;
+
+    /** Number of blobs overlapping at least one other */
+    private int overlapping;
+
+    /** Blobs found near the one being added or removed, reused by every update */
+    private final SlotList near = new SlotList();
+
+
+    OverlapIndex(BlobStore store, SpatialGrid grid, DirtyRegion dirty, double minRatio) {
+        this.store = store;
+        this.grid = grid;
+        this.dirty = dirty;
+        this.minRatio = minRatio;
+        counts = new int[256];
+        rebuild();
+    }
+
+    /**
+     * Fraction of the smaller of two circles covered by the other
+     * @return 0 if the circles don't intersect, 1 if the smaller one is inside the larger
+     */
+    static double overlapRatio(double x1, double y1, double r1, double x2, double y2, double r2) {
+        double dx = x2 - x1, dy = y2 - y1;
+        double d2 = dx*dx + dy*dy;
+        double sum = r1 + r2;
+        if (d2 >= sum * sum) return 0;
+        double small = Math.min(r1, r2), large = Math.max(r1, r2);
+        double d = Math.sqrt(d2);
+        if (d <= large - small) return 1;
+        // area of the lens shared by the two circles, clamping what rounding can push out of range near the edges
+        double a1 = r1*r1 * Math.acos(Math.min(1, Math.max(-1, (d2 + r1*r1 - r2*r2) / (2 * d * r1))));
+        double a2 = r2*r2 * Math.acos(Math.min(1, Math.max(-1, (d2 + r2*r2 - r1*r1) / (2 * d * r2))));
+        double triangle = 0.5 * Math.sqrt(Math.max(0,
+                (-d + r1 + r2) * (d + r1 - r2) * (d - r1 + r2) * (d + r1 + r2)));
+        return Math.min(1, (a1 + a2 - triangle) / (Math.PI * small * small));
+    }
+
+    /**
+     * Whether the blobs in two slots overlap by at least the ratio counted
+     */
+    private boolean overlaps(int slotA, int slotB) {
+        double x1 = store.x[slotA], y1 = store.y[slotA], r1 = store.r[slotA];
+        double x2 = store.x[slotB], y2 = store.y[slotB], r2 = store.r[slotB];
+        double dx = x2 - x1, dy = y2 - y1, sum = r1 + r2;
+        if (dx*dx + dy*dy >= sum * sum) return false;
+        return minRatio <= 0 || overlapRatio(x1, y1, r1, x2, y2, r2) >= minRatio;
+    }
+
+    /**
+     * @return number of other blobs the blob overlaps
+     */
+    int count(int blobId) {
+        return blobId < counts.length ? counts[blobId] : 0;
+    }
+
+    /**
+     * @return number of blobs overlapping at least one other blob
+     */
+    int overlappingCount() {
+        return overlapping;
+    }
+
+    /**
+     * Counts the overlaps of a blob that was just stored, moved or resized, and adds it to the count of every blob
+     * it overlaps. The blob must already be registered in the grid at its current position.
+     */
+    void add(int blobId) {
+        if (blobId >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(blobId + 1, counts.length * 2));
+        }
+        int slot = store.slotOf(blobId);
+        grid.neighbours(blobId, near);
+        int found = 0;
+        for (int i = 0; i < near.size; i++) {
+            int other = near.slots[i];
+            if (!overlaps(slot, other)) continue;
+            found++;
+            int otherId = store.id[other];
+            if (counts[otherId]++ == 0) becameOverlapping(other);
+        }
+        counts[blobId] = found;
+        if (found > 0) overlapping++;
+    }
+
+    /**
+     * Takes a blob's overlaps back out of the counts, before it is moved, resized or deleted
+     */
+    void remove(int blobId) {
+        if (count(blobId) == 0) return;
+        int slot = store.slotOf(blobId);
+        grid.neighbours(blobId, near);
+        for (int i = 0; i < near.size; i++) {
+            int other = near.slots[i];
+            if (!overlaps(slot, other)) continue;
+            int otherId = store.id[other];
+            if (--counts[otherId] == 0) stoppedOverlapping(other);
+        }
+        counts[blobId] = 0;
+        overlapping--;
+    }
+
+    private void becameOverlapping(int slot) {
+        overlapping++;
+        dirty.addCircle(store.x[slot], store.y[slot], store.r[slot]);
+    }
+
+    private void stoppedOverlapping(int slot) {
+        overlapping--;
+        dirty.addCircle(store.x[slot], store.y[slot], store.r[slot]);
+    }
+
+    /**
+     * Counts every blob from scratch with one pass over the grid's cells, when tracking starts
+     */
+    void rebuild() {
+        Arrays.fill(counts, 0);
+        overlapping = 0;
+        SlotList pairs = new SlotList();
+        grid.candidatePairs(pairs);
+        for (int i = 0; i < pairs.size; i += 2) {
+            int slotA = pairs.slots[i], slotB = pairs.slots[i + 1];
+            if (!overlaps(slotA, slotB)) continue;
+            int idA = store.id[slotA], idB = store.id[slotB];
+            int maxId = Math.max(idA, idB);
+            if (maxId >= counts.length) {
+                counts = Arrays.copyOf(counts, Math.max(maxId + 1, counts.length * 2));
+            }
+            if (counts[idA]++ == 0) overlapping++;
+            if (counts[idB]++ == 0) overlapping++;
+        }
+        dirty.markAll();
+    }
+
+    /**
+     * Forgets every count, once the model was emptied
+     */
+    void clear() {
+        Arrays.fill(counts, 0);
+        overlapping = 0;
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.asn4;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Splits a scan over an index range (blob slots, grid columns) into chunks and runs them on the common fork-join pool
+ * with a parallel stream. Each chunk collects its hits into its own buffer, so the workers never share anything they
+ * write, and the buffers are joined in chunk order, so the result is the same as scanning the range sequentially.
+ *
+ * The scans only read the model, which is safe because the FX thread waits for them and is the only thread changing
+ * the model.
+ */
+final class ParallelScan {
+
+    /** Number of indexes a chunk gets at least, so each task does enough work to be worth scheduling */
+    static final int MIN_CHUNK = 4096;
+
+    /** Collects the hits among the indexes from (inclusive) to (exclusive) */
+    interface RangeCollector {
+        void collect(int from, int to, SlotList out);
+    }
+
+    private ParallelScan() {}
+
+    /**
+     * Runs the collector over [0, length)
+     * @param length number of indexes to scan
+     * @param parallel whether to split the range over the fork-join pool or scan it on the calling thread
+     * @param minChunk smallest number of indexes given to one chunk
+     * @return slots found, in the order the sequential scan would find them
+     */
+    static int[] collect(int length, boolean parallel, int minChunk, RangeCollector collector) {
+        int chunks = parallel && parallelism() > 1 ? Math.min(length / Math.max(1, minChunk), parallelism() * 4) : 1;
+        if (chunks <= 1) {
+            SlotList hits = new SlotList();
+            collector.collect(0, length, hits);
+            return Arrays.copyOf(hits.slots, hits.size);
+        }
+
+        SlotList[] parts = IntStream.range(0, chunks).parallel()
+                .mapToObj(chunk -> {
+                    SlotList hits = new SlotList();
+                    collector.collect(bound(chunk, chunks, length), bound(chunk + 1, chunks, length), hits);
+                    return hits;
+                })
+                .toArray(SlotList[]::new);
+
+        int total = 0;
+        for (SlotList part : parts) total += part.size;
+        int[] slots = new int[total];
+        int offset = 0;
+        for (SlotList part : parts) {
+            System.arraycopy(part.slots, 0, slots, offset, part.size);
+            offset += part.size;
+        }
+        return slots;
+    }
+
+    private static int bound(int chunk, int chunks, int length) {
+        return (int) ((long) length * chunk / chunks);
+    }
+
+    private static int parallelism() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+}
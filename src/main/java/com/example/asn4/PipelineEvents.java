@@ -0,0 +1,184 @@
+package com.example.asn4;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder events for the interaction pipeline: input handlers, model notifications, drawing, selection
+ * hit tests and undo/redo. Start a recording with -XX:StartFlightRecording or from JDK Mission Control to see them.
+ *
+ * Every event is timed with begin()/end() and its fields are only filled in when shouldCommit() says the event is
+ * enabled and over its threshold. The events are not even created unless their type is enabled, since the JIT doesn't
+ * always manage to remove the allocation and dragging should not produce garbage: the begin methods below return
+ * null instead, and the callers skip the timing. With recording off an event costs a check of its type.
+ */
+public final class PipelineEvents {
+
+    private static final String CATEGORY = "2D Targeting";
+
+    /** Types of the events, which are created only while enabled */
+    private static final EventType INPUT_TYPE = EventType.getEventType(InputEvent.class);
+    private static final EventType NOTIFICATION_TYPE = EventType.getEventType(NotificationEvent.class);
+    private static final EventType DRAW_TYPE = EventType.getEventType(DrawEvent.class);
+    private static final EventType HIT_TEST_TYPE = EventType.getEventType(HitTestEvent.class);
+    private static final EventType HISTORY_TYPE = EventType.getEventType(HistoryEvent.class);
+
+    private PipelineEvents() {}
+
+    @Name("com.example.asn4.Input")
+    @Label("Input Handler")
+    @Description("A mouse handler of the controller")
+    @Category({CATEGORY, "Input"})
+    @StackTrace(false)
+    public static final class InputEvent extends Event {
+        @Label("Handler")
+        public String handler;
+
+        @Label("State Before")
+        public String stateBefore;
+
+        @Label("State After")
+        public String stateAfter;
+    }
+
+    @Name("com.example.asn4.Notification")
+    @Label("Notification")
+    @Description("Delivery of a model change to one listener")
+    @Category({CATEGORY, "Model"})
+    @StackTrace(false)
+    public static final class NotificationEvent extends Event {
+        @Label("Source")
+        public String source;
+
+        @Label("Listener")
+        public String listener;
+    }
+
+    @Name("com.example.asn4.Draw")
+    @Label("Draw")
+    @Description("A repaint of the blobs or of the selection tools")
+    @Category({CATEGORY, "View"})
+    @StackTrace(false)
+    public static final class DrawEvent extends Event {
+        @Label("Phase")
+        public String phase;
+
+        @Label("Regions")
+        @Description("Dirty rectangles repainted, 0 for a full repaint")
+        public int regions;
+
+        @Label("Blobs")
+        public int blobs;
+    }
+
+    @Name("com.example.asn4.HitTest")
+    @Label("Selection Hit Test")
+    @Description("Evaluation of the lasso or rectangle tool against the blobs")
+    @Category({CATEGORY, "Selection"})
+    @StackTrace(false)
+    public static final class HitTestEvent extends Event {
+        @Label("Tool")
+        public String tool;
+
+        @Label("Blobs")
+        public int blobs;
+
+        @Label("Hits")
+        public int hits;
+    }
+
+    @Name("com.example.asn4.History")
+    @Label("Undo/Redo")
+    @Category({CATEGORY, "Model"})
+    @StackTrace(false)
+    public static final class HistoryEvent extends Event {
+        @Label("Action")
+        public String action;
+
+        @Label("Command")
+        public String command;
+
+        @Label("Undo Depth")
+        public int undoDepth;
+
+        @Label("Redo Depth")
+        public int redoDepth;
+    }
+
+    /**
+     * Starts timing an input handler
+     * @return the event, null if input events are disabled
+     */
+    static InputEvent beginInput() {
+        if (!INPUT_TYPE.isEnabled()) return null;
+        InputEvent event = new InputEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Starts timing a repaint
+     * @return the event, null if draw events are disabled
+     */
+    static DrawEvent beginDraw() {
+        if (!DRAW_TYPE.isEnabled()) return null;
+        DrawEvent event = new DrawEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Starts timing a hit test of the lasso or rectangle tool, or of the selection preview
+     * @return the event, null if hit test events are disabled
+     */
+    static HitTestEvent beginHitTest() {
+        if (!HIT_TEST_TYPE.isEnabled()) return null;
+        HitTestEvent event = new HitTestEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Starts timing an undo or redo
+     * @return the event, null if undo/redo events are disabled
+     */
+    static HistoryEvent beginHistory() {
+        if (!HISTORY_TYPE.isEnabled()) return null;
+        HistoryEvent event = new HistoryEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Starts timing the delivery of a notification
+     * @return the event, null if notification events are disabled
+     */
+    static NotificationEvent beginNotification() {
+        if (!NOTIFICATION_TYPE.isEnabled()) return null;
+        NotificationEvent event = new NotificationEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Finishes timing the delivery of a notification and counts it in the metrics
+     * @param event event returned by beginNotification(), null if notification events are disabled
+     * @param source name of the model that notified
+     * @param listener listener that was notified
+     */
+    static void endNotification(NotificationEvent event, String source, Object listener) {
+        PipelineMetrics.INSTANCE.notificationDelivered();
+        if (event == null) return;
+        event.end();
+        if (event.shouldCommit()) {
+            event.source = source;
+            event.listener = listener.getClass().getName();
+            event.commit();
+        }
+    }
+}
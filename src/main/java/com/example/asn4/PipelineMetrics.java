@@ -0,0 +1,196 @@
+package com.example.asn4;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters written by the FX thread and read by JMX. Recording is a couple of uncontended atomic adds, so it stays on
+ * all the time. The gauges read the models directly; they may be a frame stale since the models are only changed on
+ * the FX thread, which is fine for monitoring.
+ */
+public class PipelineMetrics implements PipelineMetricsMBean {
+
+    public static final String OBJECT_NAME = "com.example.asn4:type=PipelineMetrics";
+
+    /** Upper bounds of the redraw histogram buckets, in microseconds; the last bucket holds everything slower */
+    private static final long[] BUCKET_BOUNDS_MICROS = {100, 250, 500, 1000, 2500, 5000, 10000, 16667, 33333, 100000};
+
+    /** Shared instance the models and the view report to */
+    public static final PipelineMetrics INSTANCE = new PipelineMetrics();
+
+    private final LongAdder notifications = new LongAdder();
+    private final LongAdder redraws = new LongAdder();
+    private final LongAdder redrawNanos = new LongAdder();
+    private final AtomicLongArray redrawHistogram = new AtomicLongArray(BUCKET_BOUNDS_MICROS.length + 1);
+
+    private final LongAdder spriteHits = new LongAdder();
+    private final LongAdder spriteMisses = new LongAdder();
+    private final LongAdder labelHits = new LongAdder();
+    private final LongAdder labelMisses = new LongAdder();
+
+    private long lastRateNanos = System.nanoTime();
+    private long lastRateCount;
+
+    private volatile BlobModel model;
+    private volatile InteractionModel iModel;
+
+    private PipelineMetrics() {}
+
+    /**
+     * Points the gauges at the application's models and registers the MBean with the platform MBean server
+     * @param newModel model whose blobs are counted
+     * @param newIModel interaction model whose selection and history are measured
+     */
+    public void register(BlobModel newModel, InteractionModel newIModel) {
+        model = newModel;
+        iModel = newIModel;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // registered by an earlier window, which now reads the new models
+        } catch (JMException e) {
+            System.out.println("Could not register metrics: " + e.getMessage());
+        }
+    }
+
+    void notificationDelivered() {
+        notifications.increment();
+    }
+
+    /**
+     * Counts a repaint of the canvas in the redraw histogram
+     * @param nanos time the repaint took
+     */
+    void redrawn(long nanos) {
+        redraws.increment();
+        redrawNanos.add(nanos);
+        long micros = nanos / 1000;
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS_MICROS.length && micros > BUCKET_BOUNDS_MICROS[bucket]) {
+            bucket++;
+        }
+        redrawHistogram.incrementAndGet(bucket);
+    }
+
+    /**
+     * Counts the sprite cache lookups of a draw; the view reports them once per draw rather than per blob
+     */
+    void spriteCacheUsed(long newSpriteHits, long newSpriteMisses, long newLabelHits, long newLabelMisses) {
+        spriteHits.add(newSpriteHits);
+        spriteMisses.add(newSpriteMisses);
+        labelHits.add(newLabelHits);
+        labelMisses.add(newLabelMisses);
+    }
+
+    private static double hitRate(LongAdder hits, LongAdder misses) {
+        long h = hits.sum(), total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    @Override
+    public int getBlobCount() {
+        BlobModel m = model;
+        return m == null ? 0 : m.getStore().size;
+    }
+
+    @Override
+    public int getSelectionSize() {
+        InteractionModel im = iModel;
+        return im == null ? 0 : im.getSelectionSize();
+    }
+
+    @Override
+    public int getUndoDepth() {
+        InteractionModel im = iModel;
+        return im == null ? 0 : im.getHistory().getUndoDepth();
+    }
+
+    @Override
+    public int getRedoDepth() {
+        InteractionModel im = iModel;
+        return im == null ? 0 : im.getHistory().getRedoDepth();
+    }
+
+    @Override
+    public long getNotificationCount() {
+        return notifications.sum();
+    }
+
+    @Override
+    public synchronized double getNotificationsPerSecond() {
+        long now = System.nanoTime();
+        long count = notifications.sum();
+        double rate = (count - lastRateCount) * 1e9 / Math.max(1, now - lastRateNanos);
+        lastRateNanos = now;
+        lastRateCount = count;
+        return rate;
+    }
+
+    @Override
+    public long getRedrawCount() {
+        return redraws.sum();
+    }
+
+    @Override
+    public double getMeanRedrawMicros() {
+        long count = redraws.sum();
+        return count == 0 ? 0 : redrawNanos.sum() / 1000.0 / count;
+    }
+
+    @Override
+    public long[] getRedrawBucketBoundsMicros() {
+        return Arrays.copyOf(BUCKET_BOUNDS_MICROS, BUCKET_BOUNDS_MICROS.length);
+    }
+
+    @Override
+    public long[] getRedrawHistogram() {
+        long[] counts = new long[redrawHistogram.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = redrawHistogram.get(i);
+        }
+        return counts;
+    }
+
+    @Override
+    public double getSpriteCacheHitRate() {
+        return hitRate(spriteHits, spriteMisses);
+    }
+
+    @Override
+    public long getSpriteCacheMisses() {
+        return spriteMisses.sum();
+    }
+
+    @Override
+    public double getLabelCacheHitRate() {
+        return hitRate(labelHits, labelMisses);
+    }
+
+    @Override
+    public long getLabelCacheMisses() {
+        return labelMisses.sum();
+    }
+
+    @Override
+    public synchronized void reset() {
+        notifications.reset();
+        redraws.reset();
+        redrawNanos.reset();
+        spriteHits.reset();
+        spriteMisses.reset();
+        labelHits.reset();
+        labelMisses.reset();
+        for (int i = 0; i < redrawHistogram.length(); i++) {
+            redrawHistogram.set(i, 0);
+        }
+        lastRateNanos = System.nanoTime();
+        lastRateCount = 0;
+    }
+}
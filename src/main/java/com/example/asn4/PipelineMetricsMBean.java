@@ -0,0 +1,56 @@
+package com.example.asn4;
+
+/**
+ * Live gauges and counters of the application, readable over JMX (e.g. with JConsole) under
+ * {@value PipelineMetrics#OBJECT_NAME}
+ */
+public interface PipelineMetricsMBean {
+
+    int getBlobCount();
+
+    int getSelectionSize();
+
+    int getUndoDepth();
+
+    int getRedoDepth();
+
+    long getNotificationCount();
+
+    /**
+     * @return notifications delivered per second since the previous call
+     */
+    double getNotificationsPerSecond();
+
+    long getRedrawCount();
+
+    double getMeanRedrawMicros();
+
+    /**
+     * @return upper bound in microseconds of each redraw histogram bucket except the last, which is unbounded
+     */
+    long[] getRedrawBucketBoundsMicros();
+
+    /**
+     * @return number of redraws that took up to each bucket bound
+     */
+    long[] getRedrawHistogram();
+
+    /**
+     * @return fraction of the blob discs drawn from an already rendered image
+     */
+    double getSpriteCacheHitRate();
+
+    long getSpriteCacheMisses();
+
+    /**
+     * @return fraction of the order number labels drawn from an already rendered atlas cell
+     */
+    double getLabelCacheHitRate();
+
+    long getLabelCacheMisses();
+
+    /**
+     * Sets the counters, the cache statistics and the histogram back to zero
+     */
+    void reset();
+}
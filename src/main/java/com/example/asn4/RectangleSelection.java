@@ -8,8 +8,8 @@ public class RectangleSelection {
     /** Stores the mouse cursor (x, y) values for the rectangle selection */
     private double endingX, endingY;
 
-    /** dimensions of the rectangle after the user has released the mouse and rectangle selection event is over.
-     * This gets initialized with a value after the BlobView's creation of the rectangle selection */
+    /** dimensions of the rectangle tested against the blobs, from the starting cursor to the ending cursor. Kept up to
+     * date as either changes, so the rectangle is ready when the mouse is released whether or not it was drawn */
     double left, top, width, height;
 
 
@@ -27,9 +27,13 @@ public class RectangleSelection {
         return startingY;
     }
 
+    /**
+     * Starts a new rectangle at a point, with its ending cursor on the same point
+     */
     public void setStartingCursor(double newStartingX, double newStartingY) {
         this.startingX = newStartingX;
         this.startingY = newStartingY;
+        setEndingCursor(newStartingX, newStartingY);
     }
 
     public void setLeft(double left) {
@@ -48,6 +52,34 @@ public class RectangleSelection {
         this.height = height;
     }
 
+    /**
+     * @return left edge of the rectangle tested against the blobs
+     */
+    double getLeft() {
+        return left;
+    }
+
+    /**
+     * @return top edge of the rectangle tested against the blobs
+     */
+    double getTop() {
+        return top;
+    }
+
+    /**
+     * @return right edge of the rectangle tested against the blobs, left of the left edge if dragged to the left
+     */
+    double getRight() {
+        return left + width;
+    }
+
+    /**
+     * @return bottom edge of the rectangle tested against the blobs, above the top edge if dragged up
+     */
+    double getBottom() {
+        return top + height;
+    }
+
     // operations on data
 
     public double getEndingX() {
@@ -58,9 +90,17 @@ public class RectangleSelection {
         return endingY;
     }
 
+    /**
+     * Moves the corner being dragged and the dimensions with it. A rectangle dragged up or to the left of its starting
+     * point has a negative width or height and holds no blob.
+     */
     public void setEndingCursor(double newEndingX, double newEndingY) {
         this.endingX = newEndingX;
         this.endingY = newEndingY;
+        left = startingX;
+        top = startingY;
+        width = newEndingX - startingX;
+        height = newEndingY - startingY;
     }
 
     /**
@@ -69,7 +109,36 @@ public class RectangleSelection {
      * @return true if a blob is within the rectangle, false otherwise
      */
     public boolean contains(Blob b) {
-        return b.x >= left && b.x <= left+width && b.y >= top && b.y <= top+height;
+        return contains(b.getX(), b.getY());
+    }
+
+    /**
+     * Checks if a point is within the rectangle selection
+     * @param px x coordinate
+     * @param py y coordinate
+     * @return true if the point is within the rectangle, false otherwise
+     */
+    public boolean contains(double px, double py) {
+        return px >= left && px <= left+width && py >= top && py <= top+height;
+    }
+
+    /**
+     * Scans the model's blob arrays for the blobs whose centre is within the rectangle
+     * @param store blob storage of the model
+     * @param parallel whether to split the slots over the fork-join pool
+     * @return slots of the blobs within the rectangle, in the order they are stacked in the model
+     */
+    int[] hitTest(BlobStore store, boolean parallel) {
+        double[] xs = store.x, ys = store.y;
+        double right = getRight(), bottom = getBottom();
+        return ParallelScan.collect(store.size, parallel, ParallelScan.MIN_CHUNK, (from, to, out) -> {
+            for (int i = from; i < to; i++) {
+                double px = xs[i], py = ys[i];
+                if (px >= left && px <= right && py >= top && py <= bottom) {
+                    out.add(i);
+                }
+            }
+        });
     }
 }
 
@@ -0,0 +1,175 @@
+package com.example.asn4;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Saves and loads a whole scene in a compact binary format. Files are read and written through a memory-mapped
+ * FileChannel, and every record has the same width, so loading is a straight copy from the mapping into the model's
+ * arrays with no parsing.
+ *
+ * Layout, all little-endian:
+ * <pre>
+ *   header (32 bytes)   magic, version, blob count, selected count, last order number, 3 reserved ints
+ *   blob records        per blob: int order number, int padding, double x, y, r, initialRadius (40 bytes)
+ *   selection           per selected blob: int order number
+ * </pre>
+ */
+public class SceneFile {
+
+    /** "BLOB" in ASCII */
+    public static final int MAGIC = 0x424C4F42;
+
+    public static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 32;
+
+    static final int RECORD_SIZE = 40;
+
+    private SceneFile() {}
+
+    /**
+     * Writes every blob of the model and the current selection to a file, replacing it if it exists
+     * @param path file to write
+     * @param model model holding the blobs
+     * @param iModel interaction model holding the selection
+     * @throws IOException if the file can't be written
+     */
+    public static void save(Path path, BlobModel model, InteractionModel iModel) throws IOException {
+        BlobStore store = model.getStore();
+        List<Blob> selected = iModel.getSelectedBlobs();
+        int selectedCount = 0;
+        for (Blob b : selected) {
+            if (b.store == store) selectedCount++;
+        }
+        long fileSize = HEADER_SIZE + (long) store.size * RECORD_SIZE + (long) selectedCount * 4;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putInt(store.size);
+            buffer.putInt(selectedCount);
+            buffer.putInt(Blob.getOrderCounter());
+            buffer.putInt(0).putInt(0).putInt(0);
+
+            for (int i = 0; i < store.size; i++) {
+                buffer.putInt(store.id[i]);
+                buffer.putInt(0);
+                buffer.putDouble(store.x[i]);
+                buffer.putDouble(store.y[i]);
+                buffer.putDouble(store.r[i]);
+                buffer.putDouble(store.initialRadius[i]);
+            }
+            for (Blob b : selected) {
+                if (b.store == store) buffer.putInt(b.counter);
+            }
+            buffer.force();
+        }
+    }
+
+    /**
+     * Writes a snapshot of the blobs and a selection to a file, the same way save() writes a model. Any thread can do
+     * this, since nothing in the model is read.
+     * @param path file to write
+     * @param blobs blobs to save
+     * @param selectedIds order numbers of the selected blobs
+     * @param lastOrderNumber order number given to the last blob created
+     * @throws IOException if the file can't be written
+     */
+    static void save(Path path, BlobSnapshot blobs, int[] selectedIds, int lastOrderNumber) throws IOException {
+        long fileSize = HEADER_SIZE + (long) blobs.size() * RECORD_SIZE + (long) selectedIds.length * 4;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putInt(blobs.size());
+            buffer.putInt(selectedIds.length);
+            buffer.putInt(lastOrderNumber);
+            buffer.putInt(0).putInt(0).putInt(0);
+
+            for (int i = 0; i < blobs.size(); i++) {
+                buffer.putInt(blobs.getId(i));
+                buffer.putInt(0);
+                buffer.putDouble(blobs.getX(i));
+                buffer.putDouble(blobs.getY(i));
+                buffer.putDouble(blobs.getR(i));
+                buffer.putDouble(blobs.getInitialRadius(i));
+            }
+            for (int id : selectedIds) {
+                buffer.putInt(id);
+            }
+            buffer.force();
+        }
+    }
+
+    /**
+     * Replaces the scene in the model with the one in the file and restores its selection. The undo/redo history is
+     * cleared since its commands refer to blobs that are no longer in the model.
+     * @param path file to read
+     * @param model model to load the blobs into
+     * @param iModel interaction model to restore the selection into
+     * @throws IOException if the file can't be read or isn't a scene file
+     */
+    public static void load(Path path, BlobModel model, InteractionModel iModel) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE) {
+                throw new IOException("Not a scene file: " + path);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a scene file: " + path);
+            }
+            if (buffer.getInt(4) != VERSION) {
+                throw new IOException("Unsupported scene file version " + buffer.getInt(4) + ": " + path);
+            }
+            int blobCount = buffer.getInt(8);
+            int selectedCount = buffer.getInt(12);
+            int lastOrderNumber = buffer.getInt(16);
+            if (blobCount < 0 || selectedCount < 0
+                    || fileSize < HEADER_SIZE + (long) blobCount * RECORD_SIZE + (long) selectedCount * 4) {
+                throw new IOException("Truncated scene file: " + path);
+            }
+
+            iModel.clearBlobSelection();
+            iModel.getHistory().clear();
+            model.clear();
+            model.reserve(blobCount);
+
+            int maxOrderNumber = lastOrderNumber;
+            int offset = HEADER_SIZE;
+            for (int i = 0; i < blobCount; i++, offset += RECORD_SIZE) {
+                int blobId = buffer.getInt(offset);
+                maxOrderNumber = Math.max(maxOrderNumber, blobId);
+                model.insertRow(blobId, buffer.getDouble(offset + 8), buffer.getDouble(offset + 16),
+                        buffer.getDouble(offset + 24), buffer.getDouble(offset + 32));
+            }
+            Blob.restoreOrderCounter(maxOrderNumber);
+            model.finishBulkInsert();
+
+            BlobStore store = model.getStore();
+            List<Blob> selected = new ArrayList<>(selectedCount);
+            for (int i = 0; i < selectedCount; i++, offset += 4) {
+                int slot = store.slotOf(buffer.getInt(offset));
+                if (slot >= 0) selected.add(store.handle(slot));
+            }
+            iModel.addToSelection(selected);
+        }
+    }
+}
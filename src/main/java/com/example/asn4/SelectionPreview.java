@@ -0,0 +1,360 @@
+package com.example.asn4;
+
+import java.util.BitSet;
+
+/**
+ * Live preview of what the rectangle and lasso tools will select once the mouse is released, kept up to date on every
+ * drag event. As on release, the tool holding more blobs wins, and its blobs are shown toggled.
+ *
+ * Neither tool is evaluated from scratch while it is dragged. The blobs inside each tool are kept as a set of order
+ * numbers, and each update only looks at the area that changed since the last one:
+ * - for the rectangle, the strips where the old and the new rectangle don't overlap;
+ * - for the lasso, the triangle between the previous point, the new one and the first one, for each point added.
+ *   Closing the polygon through the new point flips inside and outside exactly there.
+ * In both cases the cells of the model's spatial grid under the changed area are walked, and each blob centred in
+ * them is tested against the whole tool again. An update therefore costs about the number of blobs in the changed
+ * area, however many blobs the tools already hold.
+ *
+ * Blobs whose preview state changes are added to the dirty region the view repaints.
+ */
+class SelectionPreview {
+
+    private static final int NONE = 0, RECTANGLE = 1, LASSO = 2;
+
+    private BlobStore store;
+
+    private SpatialGrid grid;
+
+    private final DirtyRegion dirty;
+
+    /** Order numbers of the blobs centred in the rectangle and in the lasso, and how many there are */
+    private final BitSet inRectangle = new BitSet(), inLasso = new BitSet();
+    private int rectangleCount, lassoCount;
+
+    /** Rectangle the blobs in inRectangle were found with; empty while right < left or bottom < top */
+    private double left, top, right = Double.NEGATIVE_INFINITY, bottom = Double.NEGATIVE_INFINITY;
+
+    /** Lasso the blobs in inLasso were found with, and how many of its points they account for */
+    private LassoSelection lasso;
+    private int lassoPoints;
+
+    /** Triangle being walked, and how far outside it a blob may be and still be tested against the lasso */
+    private double ax, ay, bx, by, cx, cy, triangleSlack;
+
+    /** Tool whose blobs are shown */
+    private int shown = NONE;
+
+    /** Number of blobs tested by the last update */
+    private int tested;
+
+    /** Order numbers of the blobs that entered or left a tool during the current update */
+    private final SlotList changedInRectangle = new SlotList(), changedInLasso = new SlotList();
+
+
+    SelectionPreview(DirtyRegion dirty) {
+        this.dirty = dirty;
+    }
+
+    /**
+     * Starts previewing a new selection drag, with both tools empty
+     */
+    void start(BlobModel model, LassoSelection newLasso) {
+        stop();
+        store = model.getStore();
+        grid = model.getGrid();
+        lasso = newLasso;
+    }
+
+    /**
+     * Stops previewing, marking the blobs shown so far for a repaint
+     */
+    void stop() {
+        if (shown != NONE) dirtyAll(shown);
+        inRectangle.clear();
+        inLasso.clear();
+        rectangleCount = lassoCount = 0;
+        right = bottom = Double.NEGATIVE_INFINITY;
+        lassoPoints = 0;
+        shown = NONE;
+        store = null;
+        grid = null;
+        lasso = null;
+    }
+
+    boolean isActive() {
+        return store != null;
+    }
+
+    /**
+     * @return whether the release would toggle the selection of a blob
+     */
+    boolean contains(int blobId) {
+        return switch (shown) {
+            case RECTANGLE -> inRectangle.get(blobId);
+            case LASSO -> inLasso.get(blobId);
+            default -> false;
+        };
+    }
+
+    /**
+     * @return number of blobs the release would toggle
+     */
+    int size() {
+        return shown == RECTANGLE ? rectangleCount : shown == LASSO ? lassoCount : 0;
+    }
+
+    /**
+     * @return number of blobs tested again by the last update
+     */
+    int testedCount() {
+        return tested;
+    }
+
+    /**
+     * Brings both tools up to date with the rectangle dragged so far and the points added to the lasso since the last
+     * update
+     * @return whether the blobs shown changed
+     */
+    boolean update(double newLeft, double newTop, double newRight, double newBottom) {
+        changedInRectangle.clear();
+        changedInLasso.clear();
+        tested = 0;
+        updateRectangle(newLeft, newTop, newRight, newBottom);
+        updateLasso();
+
+        int winner = lassoCount > rectangleCount ? LASSO : rectangleCount > lassoCount ? RECTANGLE : NONE;
+        if (winner != shown) {
+            if (shown != NONE) {
+                // the blobs that just left the tool shown are no longer among its members, but are still drawn toggled
+                dirtyAll(shown);
+                dirtyChanged(shown);
+            }
+            if (winner != NONE) dirtyAll(winner);
+            shown = winner;
+            return true;
+        }
+        return shown != NONE && dirtyChanged(shown);
+    }
+
+    /**
+     * Marks the blobs that entered or left a tool during this update
+     * @return whether there were any
+     */
+    private boolean dirtyChanged(int tool) {
+        SlotList changed = tool == RECTANGLE ? changedInRectangle : changedInLasso;
+        if (changed.size == 0) return false;
+        if (changed.size > DirtyRegion.MAX_RECTS) {
+            dirty.markAll();
+        } else {
+            for (int i = 0; i < changed.size; i++) dirtyBlob(changed.slots[i]);
+        }
+        return true;
+    }
+
+    private void dirtyAll(int tool) {
+        BitSet members = tool == RECTANGLE ? inRectangle : inLasso;
+        int count = tool == RECTANGLE ? rectangleCount : lassoCount;
+        if (count > DirtyRegion.MAX_RECTS) {
+            dirty.markAll();
+            return;
+        }
+        for (int id = members.nextSetBit(0); id >= 0; id = members.nextSetBit(id + 1)) {
+            dirtyBlob(id);
+        }
+    }
+
+    private void dirtyBlob(int blobId) {
+        int slot = store.slotOf(blobId);
+        if (slot >= 0) dirty.addCircle(store.x[slot], store.y[slot], store.r[slot]);
+    }
+
+
+    // RECTANGLE
+
+    /**
+     * Re-tests the blobs in the parts of the old and new rectangles that don't overlap
+     */
+    private void updateRectangle(double newLeft, double newTop, double newRight, double newBottom) {
+        double oldLeft = left, oldTop = top, oldRight = right, oldBottom = bottom;
+        left = newLeft;
+        top = newTop;
+        right = newRight;
+        bottom = newBottom;
+        visitDifference(oldLeft, oldTop, oldRight, oldBottom, newLeft, newTop, newRight, newBottom);
+        visitDifference(newLeft, newTop, newRight, newBottom, oldLeft, oldTop, oldRight, oldBottom);
+    }
+
+    /**
+     * Visits the area of rectangle a outside rectangle b, as up to four strips: above and below b across the width
+     * of a, then left and right of b between them
+     */
+    private void visitDifference(double aLeft, double aTop, double aRight, double aBottom,
+                                 double bLeft, double bTop, double bRight, double bBottom) {
+        if (aRight < aLeft || aBottom < aTop) return;
+        if (bRight < bLeft || bBottom < bTop
+                || bLeft > aRight || bRight < aLeft || bTop > aBottom || bBottom < aTop) {
+            visitRectangle(aLeft, aTop, aRight, aBottom, RECTANGLE);
+            return;
+        }
+        if (aTop < bTop) visitRectangle(aLeft, aTop, aRight, bTop, RECTANGLE);
+        if (aBottom > bBottom) visitRectangle(aLeft, bBottom, aRight, aBottom, RECTANGLE);
+        double bandTop = Math.max(aTop, bTop), bandBottom = Math.min(aBottom, bBottom);
+        if (aLeft < bLeft) visitRectangle(aLeft, bandTop, bLeft, bandBottom, RECTANGLE);
+        if (aRight > bRight) visitRectangle(bRight, bandTop, aRight, bandBottom, RECTANGLE);
+    }
+
+    /**
+     * Same test as RectangleSelection.hitTest
+     */
+    private boolean insideRectangle(double px, double py) {
+        return px >= left && px <= right && py >= top && py <= bottom;
+    }
+
+
+    // LASSO
+
+    /**
+     * Re-tests the blobs in the triangle each new lasso point closes with the previous point and the first one
+     */
+    private void updateLasso() {
+        int count = lasso.getPointCount();
+        if (count < lassoPoints) {
+            // the lasso was cleared: whatever is left in it is tested again as it goes
+            for (int id = inLasso.nextSetBit(0); id >= 0; id = inLasso.nextSetBit(id + 1)) {
+                changedInLasso.add(id);
+            }
+            inLasso.clear();
+            lassoCount = 0;
+            lassoPoints = 0;
+        }
+        // a lasso of fewer than three points holds nothing
+        for (int k = Math.max(lassoPoints, 2); k < count; k++) {
+            visitTriangle(lasso.getPointX(k - 1), lasso.getPointY(k - 1), lasso.getPointX(k), lasso.getPointY(k),
+                    lasso.getPointX(0), lasso.getPointY(0));
+        }
+        lassoPoints = count;
+    }
+
+    /**
+     * Walks the cells under a triangle one column at a time, like LassoSelection.markBoundaryCells does with each edge:
+     * in each column only the rows between the lowest and highest point of the triangle's edges within the column
+     * are visited, so a long thin triangle visits a thin band of cells
+     */
+    private void visitTriangle(double ax, double ay, double bx, double by, double cx, double cy) {
+        this.ax = ax;
+        this.ay = ay;
+        this.bx = bx;
+        this.by = by;
+        this.cx = cx;
+        this.cy = cy;
+        double minX = Math.min(ax, Math.min(bx, cx)), maxX = Math.max(ax, Math.max(bx, cx));
+        double minY = Math.min(ay, Math.min(by, cy)), maxY = Math.max(ay, Math.max(by, cy));
+        double span = maxX - minX + maxY - minY;
+        // rounding in the polygon test must not let a blob just outside the triangle change sides unseen
+        triangleSlack = span * span * 1e-9;
+        double cellSize = grid.getCellSize();
+        double slack = cellSize * 1e-9;
+        int minCol = grid.cellOf(minX), maxCol = grid.cellOf(maxX);
+        for (int col = minCol; col <= maxCol; col++) {
+            double stripLeft = Math.max(minX, col * cellSize), stripRight = Math.min(maxX, (col + 1) * cellSize);
+            double low = Double.POSITIVE_INFINITY, high = Double.NEGATIVE_INFINITY;
+            for (int edge = 0; edge < 3; edge++) {
+                double x0 = edge == 0 ? ax : edge == 1 ? bx : cx, y0 = edge == 0 ? ay : edge == 1 ? by : cy;
+                double x1 = edge == 0 ? bx : edge == 1 ? cx : ax, y1 = edge == 0 ? by : edge == 1 ? cy : ay;
+                if (x0 > x1) {
+                    double t = x0; x0 = x1; x1 = t;
+                    t = y0; y0 = y1; y1 = t;
+                }
+                if (x1 < stripLeft || x0 > stripRight) continue;
+                double ya, yb;
+                if (x1 == x0) {
+                    ya = y0;
+                    yb = y1;
+                } else {
+                    double slope = (y1 - y0) / (x1 - x0);
+                    ya = y0 + (Math.max(x0, stripLeft) - x0) * slope;
+                    yb = y0 + (Math.min(x1, stripRight) - x0) * slope;
+                }
+                low = Math.min(low, Math.min(ya, yb));
+                high = Math.max(high, Math.max(ya, yb));
+            }
+            if (low > high) continue;
+            for (int row = grid.cellOf(low - slack); row <= grid.cellOf(high + slack); row++) {
+                visitCell(col, row, LASSO);
+            }
+        }
+    }
+
+
+    /**
+     * Whether a point is inside the triangle being walked, or on its edges. Blobs elsewhere in the cells walked
+     * can't have changed sides, so the lasso test is only run on the ones that pass.
+     */
+    private boolean nearTriangle(double px, double py) {
+        double d1 = (bx - ax) * (py - ay) - (by - ay) * (px - ax);
+        double d2 = (cx - bx) * (py - by) - (cy - by) * (px - bx);
+        double d3 = (ax - cx) * (py - cy) - (ay - cy) * (px - cx);
+        boolean negative = d1 < -triangleSlack || d2 < -triangleSlack || d3 < -triangleSlack;
+        boolean positive = d1 > triangleSlack || d2 > triangleSlack || d3 > triangleSlack;
+        return !(negative && positive);
+    }
+
+
+    // WALKING THE GRID
+
+    /**
+     * Re-tests every blob centred in the cells under a rectangle against a tool. Like SpatialGrid.slotsIntersecting,
+     * falls back to scanning the blobs when there are more cells than blobs.
+     */
+    private void visitRectangle(double minX, double minY, double maxX, double maxY, int tool) {
+        int minCol = grid.cellOf(minX), maxCol = grid.cellOf(maxX);
+        int minRow = grid.cellOf(minY), maxRow = grid.cellOf(maxY);
+        if ((long) (maxCol - minCol + 1) * (maxRow - minRow + 1) > store.size) {
+            for (int slot = 0; slot < store.size; slot++) {
+                double bx = store.x[slot], by = store.y[slot];
+                if (bx >= minX && bx <= maxX && by >= minY && by <= maxY) refresh(slot, tool);
+            }
+            return;
+        }
+        for (int col = minCol; col <= maxCol; col++) {
+            for (int row = minRow; row <= maxRow; row++) {
+                visitCell(col, row, tool);
+            }
+        }
+    }
+
+    private void visitCell(int col, int row, int tool) {
+        int[] ids = grid.idsInCell(col, row);
+        if (ids == null) return;
+        for (int i = 1; i <= ids[0]; i++) {
+            int slot = store.slotOf(ids[i]);
+            // blobs are listed in every cell they overlap, only look at them from their centre cell
+            if (grid.cellOf(store.x[slot]) != col || grid.cellOf(store.y[slot]) != row) continue;
+            refresh(slot, tool);
+        }
+    }
+
+    /**
+     * Tests a blob against a tool and records it if it entered or left it. A blob can be visited more than once by
+     * the same update, since the areas walked share their edges; testing it again changes nothing.
+     */
+    private void refresh(int slot, int tool) {
+        int id = store.id[slot];
+        double px = store.x[slot], py = store.y[slot];
+        tested++;
+        if (tool == RECTANGLE) {
+            boolean inside = insideRectangle(px, py);
+            if (inside == inRectangle.get(id)) return;
+            inRectangle.set(id, inside);
+            rectangleCount += inside ? 1 : -1;
+            changedInRectangle.add(id);
+        } else {
+            if (!nearTriangle(px, py)) return;
+            boolean inside = lasso.contains(px, py);
+            if (inside == inLasso.get(id)) return;
+            inLasso.set(id, inside);
+            lassoCount += inside ? 1 : -1;
+            changedInLasso.add(id);
+        }
+    }
+}
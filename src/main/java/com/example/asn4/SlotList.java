@@ -0,0 +1,21 @@
+package com.example.asn4;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of blob slots. Scans fill one instead of returning a new array, so a caller that keeps its list and
+ * clears it between scans doesn't allocate once the list has grown to the size it needs.
+ */
+final class SlotList {
+    int[] slots = new int[64];
+    int size;
+
+    void add(int slot) {
+        if (size == slots.length) slots = Arrays.copyOf(slots, size * 2);
+        slots[size++] = slot;
+    }
+
+    void clear() {
+        size = 0;
+    }
+}
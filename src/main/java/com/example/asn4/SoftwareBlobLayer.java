@@ -0,0 +1,187 @@
+package com.example.asn4;
+
+import javafx.geometry.VPos;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelReader;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.Text;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Blob layer drawn by the TileRasterizer instead of a canvas. The view fills the rasterizer's display list, then
+ * publish() renders it on the worker threads straight into the pixels of a PixelBuffer and hands the buffer to the
+ * ImageView it is shown by. The FX thread waits for the workers and does nothing more than swap in the new frame.
+ *
+ * The frame has one pixel per physical screen pixel and the image view scales it back to the view's logical size,
+ * so it is as sharp as the canvas on a HiDPI screen.
+ *
+ * The digits of the labels are rendered once per font size in pixels with fillText and read back into alpha masks,
+ * so the labels look like the canvas ones. Everything but the rasterizing runs on the FX thread; snapshots need it.
+ */
+class SoftwareBlobLayer {
+
+    /** Labels smaller than this in pixels are left out, as they can't be read */
+    static final double MIN_LABEL_SIZE = 4;
+
+    /** Number of glyph sets kept before they are all dropped and rendered again as needed */
+    private static final int MAX_GLYPH_SETS = 32;
+
+    private final ImageView imageView = new ImageView();
+
+    private final TileRasterizer rasterizer = new TileRasterizer();
+
+    /** Pixels of the frame, shared by the pixel buffer, the image shown and the rasterizer */
+    private int[] pixels;
+    private PixelBuffer<IntBuffer> buffer;
+
+    /** Size of the frame in pixels */
+    private int width, height;
+
+    /** Whether the rasterizer renders on the fork-join pool or on the FX thread alone */
+    private boolean parallel = true;
+
+    /** Digits of each font size, indexed by the size in pixels */
+    private TileRasterizer.GlyphSet[] glyphSets = new TileRasterizer.GlyphSet[64];
+    private int glyphSetCount;
+
+    private final SnapshotParameters snapshotParameters;
+
+
+    SoftwareBlobLayer() {
+        imageView.setManaged(false);
+        imageView.setMouseTransparent(true);
+        imageView.setVisible(false);
+        snapshotParameters = new SnapshotParameters();
+        snapshotParameters.setFill(Color.TRANSPARENT);
+    }
+
+    /**
+     * @return the node showing the frames, to be placed where the blob canvas is
+     */
+    ImageView getNode() {
+        return imageView;
+    }
+
+    void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * Starts a frame, emptying the display list and sizing the frame to the view
+     * @param viewWidth logical width of the view
+     * @param viewHeight logical height of the view
+     * @param outputScale physical pixels per logical pixel
+     * @return the display list to fill, in frame pixels
+     */
+    TileRasterizer begin(double viewWidth, double viewHeight, double outputScale) {
+        int w = Math.max(1, (int) Math.ceil(viewWidth * outputScale));
+        int h = Math.max(1, (int) Math.ceil(viewHeight * outputScale));
+        if (w != width || h != height) {
+            width = w;
+            height = h;
+            pixels = new int[w * h];
+            buffer = new PixelBuffer<>(w, h, IntBuffer.wrap(pixels), PixelFormat.getIntArgbPreInstance());
+            imageView.setImage(new WritableImage(buffer));
+        }
+        imageView.setFitWidth(w / outputScale);
+        imageView.setFitHeight(h / outputScale);
+        rasterizer.clear();
+        return rasterizer;
+    }
+
+    /**
+     * Renders the display list into the frame and shows it. The pixels are only written inside updateBuffer, while
+     * the renderer is kept off them.
+     */
+    void publish() {
+        buffer.updateBuffer(b -> {
+            rasterizer.rasterize(pixels, width, height, parallel);
+            return null;  // the whole frame changed
+        });
+    }
+
+    /**
+     * Releases the frame, once the layer is switched off
+     */
+    void dispose() {
+        imageView.setImage(null);
+        pixels = null;
+        buffer = null;
+        width = height = 0;
+    }
+
+    /**
+     * @param size font size in pixels
+     * @return the digits of the label font at a size, rounded to whole pixels; null if too small to read
+     */
+    TileRasterizer.GlyphSet glyphs(double size) {
+        if (size < MIN_LABEL_SIZE) return null;
+        int pixelSize = (int) Math.round(size);
+        if (pixelSize >= glyphSets.length) {
+            glyphSets = Arrays.copyOf(glyphSets, Math.max(pixelSize + 1, glyphSets.length * 2));
+        }
+        TileRasterizer.GlyphSet set = glyphSets[pixelSize];
+        if (set == null) {
+            if (glyphSetCount == MAX_GLYPH_SETS) {
+                Arrays.fill(glyphSets, null);
+                glyphSetCount = 0;
+            }
+            set = renderGlyphs(pixelSize);
+            glyphSets[pixelSize] = set;
+            glyphSetCount++;
+        }
+        return set;
+    }
+
+    /**
+     * Draws the ten digits side by side on a canvas, one box each starting at the pen position with a pixel of
+     * padding above, below and to the right, and keeps the alpha of each box as its mask
+     */
+    private TileRasterizer.GlyphSet renderGlyphs(int pixelSize) {
+        Font font = new Font(pixelSize);
+        Text text = new Text();
+        text.setFont(font);
+        float[] advance = new float[10];
+        double widest = 0;
+        for (int digit = 0; digit < 10; digit++) {
+            text.setText(String.valueOf(digit));
+            advance[digit] = (float) text.getLayoutBounds().getWidth();
+            widest = Math.max(widest, advance[digit]);
+        }
+        // the layout bounds of a text drawn from its baseline start at minus the ascent
+        double ascent = -text.getLayoutBounds().getMinY();
+        double descent = text.getLayoutBounds().getMaxY();
+        int maskWidth = (int) Math.ceil(widest) + 1;
+        int boxAscent = (int) Math.ceil(ascent) + 1;
+        int maskHeight = boxAscent + (int) Math.ceil(descent) + 1;
+
+        Canvas canvas = new Canvas(maskWidth * 10, maskHeight);
+        GraphicsContext g = canvas.getGraphicsContext2D();
+        g.setFont(font);
+        g.setFill(Color.BLACK);
+        g.setTextBaseline(VPos.BASELINE);
+        for (int digit = 0; digit < 10; digit++) {
+            g.fillText(String.valueOf(digit), digit * maskWidth, boxAscent);
+        }
+        PixelReader reader = canvas.snapshot(snapshotParameters, null).getPixelReader();
+
+        byte[][] masks = new byte[10][maskWidth * maskHeight];
+        for (int digit = 0; digit < 10; digit++) {
+            for (int y = 0; y < maskHeight; y++) {
+                for (int x = 0; x < maskWidth; x++) {
+                    masks[digit][y * maskWidth + x] = (byte) (reader.getArgb(digit * maskWidth + x, y) >>> 24);
+                }
+            }
+        }
+        return new TileRasterizer.GlyphSet(maskWidth, maskHeight, boxAscent, advance, masks);
+    }
+}
@@ -0,0 +1,382 @@
+package com.example.asn4;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid over world space used by the model to answer hit queries without scanning every blob. A blob is
+ * registered (by order number) in every cell its bounding box overlaps, so a point query only has to look at the
+ * single cell under the point. The cell range each blob was registered with is remembered so that small moves that
+ * stay within the same cells cost nothing.
+ */
+class SpatialGrid {
+
+    /** Width and height of a single cell in world units */
+    private final double cellSize;
+
+    /** Store the indexed blobs live in */
+    private final BlobStore store;
+
+    /** Occupied cells, keyed by their packed (column, row) coordinates. Element 0 of each array is the number of
+     * blob order numbers that follow it */
+    private final CellTable cells;
+
+    /** Cell range (min column, min row, max column, max row) each blob is registered in, indexed by order number */
+    private int[] ranges;
+
+    /** Arrays of cells that became empty, handed to the next cells created. A blob dragged back and forth over a cell
+     * border empties and refills the same cell on every mouse event, which would otherwise allocate each time. */
+    private final int[][] spareCells = new int[64][];
+    private int spareCount;
+
+
+    SpatialGrid(double cellSize, BlobStore store) {
+        this.cellSize = cellSize;
+        this.store = store;
+        this.cells = new CellTable();
+        this.ranges = new int[256];
+    }
+
+    private static long key(int col, int row) {
+        return ((long) col << 32) | (row & 0xffffffffL);
+    }
+
+    private int cell(double v) {
+        return (int) Math.floor(v / cellSize);
+    }
+
+    double getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * Converts a world coordinate into the column/row index of the cell holding it
+     * @param v x or y coordinate
+     * @return cell index along that axis
+     */
+    int cellOf(double v) {
+        return cell(v);
+    }
+
+    /**
+     * Retrieves the blobs registered in a cell. This includes blobs whose bounding box only overlaps the cell.
+     * @param col cell column
+     * @param row cell row
+     * @return array whose element 0 is the number of order numbers stored after it, null if the cell is empty
+     */
+    int[] idsInCell(int col, int row) {
+        return cells.get(key(col, row));
+    }
+
+    private void addToCell(int col, int row, int blobId) {
+        long k = key(col, row);
+        int[] ids = cells.get(k);
+        if (ids == null) {
+            ids = spareCount > 0 ? spareCells[--spareCount] : new int[5];
+            cells.put(k, ids);
+        } else if (ids[0] + 1 == ids.length) {
+            ids = Arrays.copyOf(ids, ids.length * 2);
+            cells.put(k, ids);
+        }
+        ids[++ids[0]] = blobId;
+    }
+
+    private void removeFromCell(int col, int row, int blobId) {
+        long k = key(col, row);
+        int[] ids = cells.get(k);
+        if (ids == null) return;
+        int count = ids[0];
+        for (int i = 1; i <= count; i++) {
+            if (ids[i] == blobId) {
+                // order inside a cell doesn't matter, so move the last element into the hole
+                ids[i] = ids[count];
+                ids[0] = --count;
+                break;
+            }
+        }
+        if (count == 0) {
+            cells.remove(k);
+            if (spareCount < spareCells.length) spareCells[spareCount++] = ids;
+        }
+    }
+
+    /**
+     * Registers a stored blob in all the cells covered by its bounding box
+     * @param blobId order number of the blob
+     */
+    void insert(int blobId) {
+        int slot = store.slotOf(blobId);
+        double bx = store.x[slot], by = store.y[slot], br = store.r[slot];
+        if (blobId * 4 + 3 >= ranges.length) {
+            ranges = Arrays.copyOf(ranges, Math.max(blobId * 4 + 4, ranges.length * 2));
+        }
+        int base = blobId * 4;
+        ranges[base] = cell(bx - br);
+        ranges[base + 1] = cell(by - br);
+        ranges[base + 2] = cell(bx + br);
+        ranges[base + 3] = cell(by + br);
+        for (int col = ranges[base]; col <= ranges[base + 2]; col++) {
+            for (int row = ranges[base + 1]; row <= ranges[base + 3]; row++) {
+                addToCell(col, row, blobId);
+            }
+        }
+    }
+
+    /**
+     * Removes a blob from the cells it was registered in when it was last inserted/updated
+     * @param blobId order number of the blob
+     */
+    void remove(int blobId) {
+        int base = blobId * 4;
+        for (int col = ranges[base]; col <= ranges[base + 2]; col++) {
+            for (int row = ranges[base + 1]; row <= ranges[base + 3]; row++) {
+                removeFromCell(col, row, blobId);
+            }
+        }
+    }
+
+    /**
+     * Re-registers a blob after its position or radius changed. Nothing happens if it still covers the same cells.
+     * @param blobId order number of the blob that was moved or resized
+     */
+    void update(int blobId) {
+        int slot = store.slotOf(blobId);
+        double bx = store.x[slot], by = store.y[slot], br = store.r[slot];
+        int base = blobId * 4;
+        if (cell(bx - br) == ranges[base] && cell(by - br) == ranges[base + 1]
+                && cell(bx + br) == ranges[base + 2] && cell(by + br) == ranges[base + 3]) {
+            return;
+        }
+        remove(blobId);
+        insert(blobId);
+    }
+
+    /**
+     * Finds the blob drawn on top at the given point
+     * @param px x coordinate
+     * @param py y coordinate
+     * @return slot of the blob with the highest stacking order containing the point, -1 if there is none
+     */
+    int topmostAt(double px, double py) {
+        int[] ids = cells.get(key(cell(px), cell(py)));
+        if (ids == null) return -1;
+        int top = -1;
+        for (int i = 1; i <= ids[0]; i++) {
+            int slot = store.slotOf(ids[i]);
+            if (slot > top) {
+                double dx = px - store.x[slot];
+                double dy = py - store.y[slot];
+                double br = store.r[slot];
+                if (dx*dx + dy*dy <= br*br) top = slot;
+            }
+        }
+        return top;
+    }
+
+    /**
+     * Finds the blobs whose bounding box intersects a rectangle
+     * @param minX left edge of the rectangle
+     * @param minY top edge of the rectangle
+     * @param maxX right edge of the rectangle
+     * @param maxY bottom edge of the rectangle
+     * @return slots of the blobs found, sorted in stacking order
+     */
+    int[] slotsIntersecting(double minX, double minY, double maxX, double maxY) {
+        SlotList found = new SlotList();
+        slotsIntersecting(minX, minY, maxX, maxY, found);
+        return Arrays.copyOf(found.slots, found.size);
+    }
+
+    /**
+     * Finds the blobs whose bounding box intersects a rectangle, replacing the contents of a list the caller keeps
+     * between queries
+     * @param found list receiving the slots of the blobs found, sorted in stacking order
+     */
+    void slotsIntersecting(double minX, double minY, double maxX, double maxY, SlotList found) {
+        int minCol = cell(minX), minRow = cell(minY), maxCol = cell(maxX), maxRow = cell(maxY);
+        found.clear();
+        if ((long) (maxCol - minCol + 1) * (maxRow - minRow + 1) > store.size) {
+            // visiting the (mostly empty) cells would cost more than testing every blob
+            for (int slot = 0; slot < store.size; slot++) {
+                double bx = store.x[slot], by = store.y[slot], br = store.r[slot];
+                if (bx + br < minX || bx - br > maxX || by + br < minY || by - br > maxY) continue;
+                found.add(slot);
+            }
+            return;
+        }
+        for (int col = minCol; col <= maxCol; col++) {
+            for (int row = minRow; row <= maxRow; row++) {
+                int[] ids = cells.get(key(col, row));
+                if (ids == null) continue;
+                for (int i = 1; i <= ids[0]; i++) {
+                    int base = ids[i] * 4;
+                    // a blob sits in several cells; only report it from the first cell shared with the query
+                    if (col != Math.max(minCol, ranges[base]) || row != Math.max(minRow, ranges[base + 1])) continue;
+                    int slot = store.slotOf(ids[i]);
+                    double bx = store.x[slot], by = store.y[slot], br = store.r[slot];
+                    if (bx + br < minX || bx - br > maxX || by + br < minY || by - br > maxY) continue;
+                    found.add(slot);
+                }
+            }
+        }
+        Arrays.sort(found.slots, 0, found.size);
+    }
+
+    /**
+     * Finds the blobs sharing a cell with a blob, the candidates for overlapping it. Cheaper than a rectangle query
+     * as it walks only the cells the blob is registered in and leaves the slots unsorted.
+     * @param blobId order number of a blob registered in the grid
+     * @param found list receiving the slots of the other blobs, each once
+     */
+    void neighbours(int blobId, SlotList found) {
+        found.clear();
+        int base = blobId * 4;
+        for (int col = ranges[base]; col <= ranges[base + 2]; col++) {
+            for (int row = ranges[base + 1]; row <= ranges[base + 3]; row++) {
+                int[] ids = cells.get(key(col, row));
+                for (int i = 1; i <= ids[0]; i++) {
+                    int other = ids[i] * 4;
+                    if (other == base) continue;
+                    // only report a neighbour from the first cell both bounding boxes cover
+                    if (col != Math.max(ranges[base], ranges[other])
+                            || row != Math.max(ranges[base + 1], ranges[other + 1])) continue;
+                    found.add(store.slotOf(ids[i]));
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds every pair of blobs whose bounding boxes share a cell, the broad phase of an overlap query. Pairs are
+     * gathered cell by cell, so blobs far apart are never compared.
+     * @param pairs receives the slots of each pair as two consecutive entries, lower slot first; each pair is listed
+     *              once even when the two blobs share several cells
+     */
+    void candidatePairs(SlotList pairs) {
+        pairs.clear();
+        for (int c = 0; c < cells.capacity(); c++) {
+            int[] ids = cells.valueAt(c);
+            if (ids == null) continue;
+            long k = cells.keyAt(c);
+            int col = (int) (k >> 32), row = (int) k;
+            for (int i = 1; i <= ids[0]; i++) {
+                int a = ids[i] * 4;
+                for (int j = i + 1; j <= ids[0]; j++) {
+                    int b = ids[j] * 4;
+                    // only report the pair from the first cell both bounding boxes cover
+                    if (col != Math.max(ranges[a], ranges[b]) || row != Math.max(ranges[a + 1], ranges[b + 1])) {
+                        continue;
+                    }
+                    int slotA = store.slotOf(ids[i]), slotB = store.slotOf(ids[j]);
+                    pairs.add(Math.min(slotA, slotB));
+                    pairs.add(Math.max(slotA, slotB));
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes every blob from the grid
+     */
+    void clear() {
+        cells.clear();
+    }
+
+    /**
+     * Open-addressing hash table from packed cell keys to cell contents. Avoids boxing a Long per lookup, and mixes
+     * the key bits before probing since neighbouring cells differ only in their low bits.
+     */
+    private static final class CellTable {
+
+        private long[] keys;
+
+        private int[][] values;
+
+        private int size;
+
+        CellTable() {
+            keys = new long[1024];
+            values = new int[1024][];
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+
+        int[] get(long key) {
+            int mask = keys.length - 1;
+            for (int i = hash(key) & mask; values[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == key) return values[i];
+            }
+            return null;
+        }
+
+        void put(long key, int[] value) {
+            int mask = keys.length - 1;
+            int i = hash(key) & mask;
+            for (; values[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    values[i] = value;
+                    return;
+                }
+            }
+            keys[i] = key;
+            values[i] = value;
+            if (++size * 2 > keys.length) rehash(keys.length * 2);
+        }
+
+        void remove(long key) {
+            int mask = keys.length - 1;
+            int i = hash(key) & mask;
+            for (; values[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == key) break;
+            }
+            if (values[i] == null) return;
+            values[i] = null;
+            size--;
+            // shift following entries of the probe run back so that lookups never stop early at the hole
+            for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+                int home = hash(keys[j]) & mask;
+                boolean movable = (i <= j) ? (home <= i || home > j) : (home <= i && home > j);
+                if (movable) {
+                    keys[i] = keys[j];
+                    values[i] = values[j];
+                    values[j] = null;
+                    i = j;
+                }
+            }
+        }
+
+        private void rehash(int capacity) {
+            long[] oldKeys = keys;
+            int[][] oldValues = values;
+            keys = new long[capacity];
+            values = new int[capacity][];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] != null) put(oldKeys[i], oldValues[i]);
+            }
+        }
+
+        int capacity() {
+            return keys.length;
+        }
+
+        /**
+         * @return contents of the cell at an index of the table, null if the entry is free
+         */
+        int[] valueAt(int index) {
+            return values[index];
+        }
+
+        long keyAt(int index) {
+            return keys[index];
+        }
+
+        void clear() {
+            keys = new long[1024];
+            values = new int[1024][];
+            size = 0;
+        }
+    }
+}
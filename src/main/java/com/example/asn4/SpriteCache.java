@@ -0,0 +1,327 @@
+package com.example.asn4;
+
+import javafx.geometry.Rectangle2D;
+import javafx.geometry.VPos;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+
+import java.util.Arrays;
+
+/**
+ * Pre-rendered images of the blobs, so the view draws each blob with two drawImage calls instead of rasterizing a
+ * circle and laying out its order number every frame.
+ *
+ * Discs are rendered once per (radius bucket, selected state, render scale) into their own image. The render scale is
+ * the camera zoom times the screen's output scale, rounded to steps of an eighth of an octave; an image is stretched
+ * by at most a few percent to the exact size it is drawn at, which doesn't show.
+ *
+ * Order number labels are rendered into cells of a few large atlas pages at the current render scale and drawn from
+ * there. The cells are recycled least recently used first. A cell drawn during the current pulse is never recycled:
+ * the canvas only reads the page when the pulse renders, so overwriting the cell earlier would change what was drawn.
+ * When every cell is in use the view falls back to fillText.
+ *
+ * Everything runs on the FX thread; snapshots need it.
+ */
+class SpriteCache {
+
+    /** Largest disc image, in pixels; bigger discs are drawn with fillOval */
+    static final int MAX_SPRITE_SIZE = 512;
+
+    /** Render scales are rounded to powers of 2^(1/SCALE_STEPS) */
+    private static final int SCALE_STEPS = 8;
+
+    /** Disc radii are rounded to 1/RADIUS_STEPS world units */
+    private static final int RADIUS_STEPS = 4;
+
+    /** Number of disc images kept before they are all dropped and rendered again as needed */
+    private static final int MAX_DISCS = 512;
+
+    /** Size of a label atlas page in pixels, and number of pages */
+    private static final int PAGE_SIZE = 1024;
+    private static final int PAGES = 8;
+
+    /** Box around a label's origin that its text stays within, in world units */
+    static final double LABEL_WIDTH = 60, LABEL_ASCENT = 15, LABEL_DESCENT = 5;
+
+    private static final Color UNSELECTED_FILL = Color.STEELBLUE;
+    private static final Color SELECTED_FILL = Color.ORCHID;
+
+    private final Font labelFont;
+
+    private final SnapshotParameters snapshotParameters;
+
+    /** Scratch canvas the discs are rendered on before being copied into their image */
+    private final Canvas discCanvas;
+
+    // disc images, in an open-addressing table keyed by (scale bucket, radius bucket, selected)
+    private long[] discKeys = new long[MAX_DISCS * 2];
+    private Image[] discImages = new Image[MAX_DISCS * 2];
+    private int discCount;
+
+    /** Render scale of the current frame, its bucket and the scale the bucket stands for */
+    private int scaleBucket = Integer.MIN_VALUE;
+    private double bucketScale;
+
+    // label atlas: pages are canvases the labels are drawn on, copied into images the view draws from
+    private final Canvas[] pageCanvases = new Canvas[PAGES];
+    private final WritableImage[] pageImages = new WritableImage[PAGES];
+    private final boolean[] pageChanged = new boolean[PAGES];
+
+    /** Size of a label cell in pixels at the current scale, and number of cells per page row / per page */
+    private int cellWidth, cellHeight, cellsPerRow, cellsPerPage;
+
+    /** Label drawn in each cell, -1 if none */
+    private int[] cellLabel = new int[0];
+
+    /** Least recently used order of the cells holding a label: a doubly linked list through prev/next */
+    private int[] prev = new int[0], next = new int[0];
+    private int head = -1, tail = -1;
+
+    /** Pulse during which each cell was last drawn */
+    private long[] cellPulse = new long[0];
+
+    /** Number of cells handed out so far; cells past it have never held a label */
+    private int cellsUsed;
+
+    /** Cell holding each label, -1 if none, indexed by the label's number */
+    private int[] cellOfLabel = new int[1024];
+
+    /** Incremented after each pulse's layout, once the draws before it are about to be rendered */
+    private long pulse;
+
+    /** Lookups since the last call to reportTo() */
+    private long discHits, discMisses, labelHits, labelMisses;
+
+
+    SpriteCache(Font labelFont) {
+        this.labelFont = labelFont;
+        snapshotParameters = new SnapshotParameters();
+        snapshotParameters.setFill(Color.TRANSPARENT);
+        discCanvas = new Canvas(MAX_SPRITE_SIZE, MAX_SPRITE_SIZE);
+        Arrays.fill(cellOfLabel, -1);
+    }
+
+    /**
+     * Called after the layout of every pulse; the cells drawn before it can be recycled once it has rendered
+     */
+    void nextPulse() {
+        pulse++;
+    }
+
+    /**
+     * Sets the render scale of the next draws. Changing to another bucket forgets the labels, which are only kept at
+     * one scale.
+     * @param renderScale screen pixels per world unit, including the output scale of the screen
+     */
+    void setRenderScale(double renderScale) {
+        int bucket = (int) Math.round(Math.log(renderScale) / Math.log(2) * SCALE_STEPS);
+        if (bucket == scaleBucket) return;
+        scaleBucket = bucket;
+        bucketScale = Math.pow(2, (double) bucket / SCALE_STEPS);
+        resetLabels();
+    }
+
+    // discs
+
+    /**
+     * Draws a blob's disc from its image
+     * @return false if the disc is too big for an image, and has to be drawn some other way
+     */
+    boolean drawDisc(GraphicsContext gc, double x, double y, double r, boolean selected) {
+        int radiusBucket = (int) Math.round(r * RADIUS_STEPS);
+        double bucketRadius = (double) radiusBucket / RADIUS_STEPS;
+        // a pixel of padding on every side for the antialiased edge
+        int size = (int) Math.ceil(bucketRadius * 2 * bucketScale) + 2;
+        if (size > MAX_SPRITE_SIZE || radiusBucket == 0) return false;
+
+        long key = ((long) scaleBucket << 40) | ((long) radiusBucket << 1) | (selected ? 1 : 0);
+        Image image = findDisc(key);
+        if (image == null) {
+            discMisses++;
+            image = renderDisc(bucketRadius, size, selected);
+            putDisc(key, image);
+        } else {
+            discHits++;
+        }
+        // stretch the image from the bucket's radius to the blob's
+        double worldSize = size / bucketScale * (r / bucketRadius);
+        gc.drawImage(image, x - worldSize / 2, y - worldSize / 2, worldSize, worldSize);
+        return true;
+    }
+
+    private Image renderDisc(double radius, int size, boolean selected) {
+        GraphicsContext g = discCanvas.getGraphicsContext2D();
+        g.clearRect(0, 0, size, size);
+        g.setFill(selected ? SELECTED_FILL : UNSELECTED_FILL);
+        double diameter = radius * 2 * bucketScale;
+        double offset = (size - diameter) / 2;
+        g.fillOval(offset, offset, diameter, diameter);
+        snapshotParameters.setViewport(new Rectangle2D(0, 0, size, size));
+        return discCanvas.snapshot(snapshotParameters, null);
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private Image findDisc(long key) {
+        int mask = discKeys.length - 1;
+        for (int i = hash(key) & mask; discImages[i] != null; i = (i + 1) & mask) {
+            if (discKeys[i] == key) return discImages[i];
+        }
+        return null;
+    }
+
+    private void putDisc(long key, Image image) {
+        if (discCount == MAX_DISCS) {
+            // radii and scales go back and forth over a handful of buckets, start over rather than track usage
+            Arrays.fill(discImages, null);
+            discCount = 0;
+        }
+        int mask = discKeys.length - 1;
+        int i = hash(key) & mask;
+        while (discImages[i] != null) i = (i + 1) & mask;
+        discKeys[i] = key;
+        discImages[i] = image;
+        discCount++;
+    }
+
+    // labels
+
+    private void resetLabels() {
+        for (int cell = 0; cell < cellsUsed; cell++) {
+            if (cellLabel[cell] >= 0) cellOfLabel[cellLabel[cell]] = -1;
+        }
+        cellWidth = (int) Math.ceil(LABEL_WIDTH * bucketScale) + 2;
+        cellHeight = (int) Math.ceil((LABEL_ASCENT + LABEL_DESCENT) * bucketScale) + 2;
+        cellsPerRow = PAGE_SIZE / cellWidth;
+        cellsPerPage = cellsPerRow * (PAGE_SIZE / cellHeight);
+        int cells = cellsPerPage * PAGES;
+        if (cellLabel.length < cells) {
+            cellLabel = new int[cells];
+            prev = new int[cells];
+            next = new int[cells];
+            cellPulse = new long[cells];
+        }
+        cellsUsed = 0;
+        head = tail = -1;
+    }
+
+    /**
+     * Draws an order number from the atlas, rendering it there first if needed
+     * @param gc graphics context with the world transform
+     * @param number number to draw
+     * @param x x coordinate of the start of the text's baseline
+     * @param y y coordinate of the text's baseline
+     * @return false if the atlas is full of labels drawn during this pulse, and the number has to be drawn some other
+     * way
+     */
+    boolean drawLabel(GraphicsContext gc, int number, double x, double y) {
+        if (cellsPerPage == 0) return false;  // a cell wouldn't fit on a page at this scale
+        if (number >= cellOfLabel.length) {
+            int oldLength = cellOfLabel.length;
+            cellOfLabel = Arrays.copyOf(cellOfLabel, Math.max(number + 1, oldLength * 2));
+            Arrays.fill(cellOfLabel, oldLength, cellOfLabel.length, -1);
+        }
+
+        int cell = cellOfLabel[number];
+        if (cell >= 0) {
+            labelHits++;
+            unlink(cell);
+        } else {
+            cell = freeCell();
+            if (cell < 0) return false;
+            labelMisses++;
+            cellLabel[cell] = number;
+            cellOfLabel[number] = cell;
+            renderLabel(cell, number);
+        }
+        linkFirst(cell);
+        cellPulse[cell] = pulse;
+
+        int page = cell / cellsPerPage, index = cell % cellsPerPage;
+        double sx = (index % cellsPerRow) * cellWidth, sy = (index / cellsPerRow) * cellHeight;
+        // the cell has a pixel of padding around the label's box
+        double pad = 1 / bucketScale;
+        gc.drawImage(pageImages[page], sx, sy, cellWidth, cellHeight,
+                x - pad, y - LABEL_ASCENT - pad, cellWidth / bucketScale, cellHeight / bucketScale);
+        return true;
+    }
+
+    /**
+     * @return a cell that was never used, or the least recently used one if it wasn't drawn during this pulse; -1 if
+     * there is none
+     */
+    private int freeCell() {
+        if (cellsUsed < cellsPerPage * PAGES) {
+            return cellsUsed++;
+        }
+        int cell = tail;
+        if (cellPulse[cell] == pulse) return -1;
+        unlink(cell);
+        cellOfLabel[cellLabel[cell]] = -1;
+        return cell;
+    }
+
+    private void unlink(int cell) {
+        if (prev[cell] >= 0) next[prev[cell]] = next[cell]; else head = next[cell];
+        if (next[cell] >= 0) prev[next[cell]] = prev[cell]; else tail = prev[cell];
+    }
+
+    private void linkFirst(int cell) {
+        prev[cell] = -1;
+        next[cell] = head;
+        if (head >= 0) prev[head] = cell; else tail = cell;
+        head = cell;
+    }
+
+    private void renderLabel(int cell, int number) {
+        int page = cell / cellsPerPage, index = cell % cellsPerPage;
+        if (pageCanvases[page] == null) {
+            pageCanvases[page] = new Canvas(PAGE_SIZE, PAGE_SIZE);
+            pageImages[page] = new WritableImage(PAGE_SIZE, PAGE_SIZE);
+        }
+        GraphicsContext g = pageCanvases[page].getGraphicsContext2D();
+        double sx = (index % cellsPerRow) * cellWidth, sy = (index / cellsPerRow) * cellHeight;
+        g.clearRect(sx, sy, cellWidth, cellHeight);
+        g.save();
+        g.beginPath();
+        g.rect(sx, sy, cellWidth, cellHeight);
+        g.clip();
+        g.translate(sx + 1, sy + 1);
+        g.scale(bucketScale, bucketScale);
+        g.setFont(labelFont);
+        g.setFill(Color.BLACK);
+        g.setTextBaseline(VPos.BASELINE);
+        g.fillText(String.valueOf(number), 0, LABEL_ASCENT);
+        g.restore();
+        pageChanged[page] = true;
+    }
+
+    /**
+     * Copies the atlas pages that got new labels into their images. Called at the end of every draw, before the
+     * pulse renders what was drawn.
+     */
+    void flush() {
+        snapshotParameters.setViewport(null);
+        for (int page = 0; page < PAGES; page++) {
+            if (!pageChanged[page]) continue;
+            pageCanvases[page].snapshot(snapshotParameters, pageImages[page]);
+            pageChanged[page] = false;
+        }
+    }
+
+    /**
+     * Adds the lookups since the last report to the metrics
+     */
+    void reportTo(PipelineMetrics metrics) {
+        metrics.spriteCacheUsed(discHits, discMisses, labelHits, labelMisses);
+        discHits = discMisses = labelHits = labelMisses = 0;
+    }
+}
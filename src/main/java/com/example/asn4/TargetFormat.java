@@ -0,0 +1,26 @@
+package com.example.asn4;
+
+import java.nio.file.Path;
+
+/**
+ * Text formats target layouts can be imported from and exported to
+ */
+public enum TargetFormat {
+    /** Comma separated values. Imports read the x, y and optional r columns by header name, or take the first columns
+     * as x,y[,r] when there is no header. Exports write id,x,y,r,initialRadius with a header. */
+    CSV,
+
+    /** One flat JSON object per line, e.g. {"x":10,"y":20,"r":50}. Imports read the x, y and optional r keys. */
+    JSON_LINES;
+
+    /**
+     * Picks the format from a file's extension: .jsonl/.ndjson/.json are JSON lines, anything else is CSV
+     */
+    public static TargetFormat forPath(Path path) {
+        String name = path.getFileName().toString().toLowerCase();
+        if (name.endsWith(".jsonl") || name.endsWith(".ndjson") || name.endsWith(".json")) {
+            return JSON_LINES;
+        }
+        return CSV;
+    }
+}
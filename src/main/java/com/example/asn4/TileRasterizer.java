@@ -0,0 +1,350 @@
+package com.example.asn4;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Software rasterizer for the blob layer. The view fills a display list with discs, rings and number labels in
+ * screen pixels, in the order they are drawn; rasterize() then bins them into square tiles and renders the tiles on
+ * the common fork-join pool, each tile drawing its own items in display-list order into its own part of the frame.
+ * No two workers ever write the same pixel, so they share nothing but the display list, which they only read.
+ *
+ * Pixels are premultiplied ARGB, as PixelFormat.getIntArgbPreInstance() expects. Edges are antialiased by the
+ * distance of each pixel centre from the circle, so discs look like the ones fillOval draws. Labels are drawn from
+ * alpha masks of the ten digits (GlyphSet), rendered once per font size.
+ *
+ * Nothing here touches JavaFX, so the rasterizer runs (and can be measured) without a toolkit.
+ */
+final class TileRasterizer {
+
+    /** Width and height of a tile in pixels */
+    static final int TILE_SIZE = 64;
+
+    private static final byte DISC = 0, RING = 1, TEXT = 2;
+
+    // display list, one entry per item in drawing order
+    private byte[] kinds = new byte[1024];
+    /** Disc/ring: centre, radius and inner radius. Text: pen position of the baseline, and unused */
+    private float[] a = new float[1024], b = new float[1024], c = new float[1024], d = new float[1024];
+    private int[] colors = new int[1024];
+    /** Text: number drawn, and the glyphs drawing it */
+    private int[] numbers = new int[1024];
+    private GlyphSet[] glyphs = new GlyphSet[1024];
+    private int count;
+
+    // items of each tile: indexes into the display list, tile t's from binStart[t] to binStart[t + 1]
+    private int[] binStart = new int[1];
+    private int[] binItems = new int[1024];
+
+    // frame being rasterized
+    private int[] pixels;
+    private int width, height, tilesX, tilesY;
+
+    /** Renders one tile, handed to the workers */
+    private final IntConsumer tileRenderer = this::renderTile;
+
+
+    /**
+     * Empties the display list before the items of a new frame are added
+     */
+    void clear() {
+        count = 0;
+    }
+
+    int size() {
+        return count;
+    }
+
+    private int add(byte kind, float fa, float fb, float fc, float fd, int color) {
+        if (count == kinds.length) {
+            int capacity = count * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            a = Arrays.copyOf(a, capacity);
+            b = Arrays.copyOf(b, capacity);
+            c = Arrays.copyOf(c, capacity);
+            d = Arrays.copyOf(d, capacity);
+            colors = Arrays.copyOf(colors, capacity);
+            numbers = Arrays.copyOf(numbers, capacity);
+            glyphs = Arrays.copyOf(glyphs, capacity);
+        }
+        kinds[count] = kind;
+        a[count] = fa;
+        b[count] = fb;
+        c[count] = fc;
+        d[count] = fd;
+        colors[count] = color;
+        return count++;
+    }
+
+    /**
+     * Adds a filled circle
+     * @param color premultiplied ARGB
+     */
+    void addDisc(double x, double y, double r, int color) {
+        add(DISC, (float) x, (float) y, (float) r, 0, color);
+    }
+
+    /**
+     * Adds a ring: the part of a circle of radius r further than inner from its centre
+     */
+    void addRing(double x, double y, double r, double inner, int color) {
+        add(RING, (float) x, (float) y, (float) r, (float) inner, color);
+    }
+
+    /**
+     * Adds a non-negative number written from a pen position on its baseline
+     */
+    void addNumber(double x, double baseline, int number, GlyphSet font, int color) {
+        int item = add(TEXT, (float) x, (float) baseline, 0, 0, color);
+        numbers[item] = number;
+        glyphs[item] = font;
+    }
+
+    /**
+     * Renders the display list into a frame, clearing it first. Returns once every tile is done.
+     * @param frame pixels of the frame, row by row
+     * @param frameWidth width of the frame in pixels
+     * @param frameHeight height of the frame in pixels
+     * @param parallel whether to render the tiles on the fork-join pool or one after the other on this thread
+     */
+    void rasterize(int[] frame, int frameWidth, int frameHeight, boolean parallel) {
+        pixels = frame;
+        width = frameWidth;
+        height = frameHeight;
+        tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+        tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+        bin();
+        if (parallel) {
+            IntStream.range(0, tilesX * tilesY).parallel().forEach(tileRenderer);
+        } else {
+            for (int tile = 0; tile < tilesX * tilesY; tile++) renderTile(tile);
+        }
+        pixels = null;
+    }
+
+    /**
+     * Sorts the items into the tiles their bounds touch, keeping display-list order within each tile: a first pass
+     * counts the items per tile, a second one places them
+     */
+    private void bin() {
+        int tiles = tilesX * tilesY;
+        if (binStart.length < tiles + 1) binStart = new int[tiles + 1];
+        Arrays.fill(binStart, 0, tiles + 1, 0);
+        for (int item = 0; item < count; item++) {
+            forEachTile(item, -1);
+        }
+        int total = 0;
+        for (int t = 0; t < tiles; t++) {
+            int n = binStart[t];
+            binStart[t] = total;
+            total += n;
+        }
+        binStart[tiles] = total;
+        if (binItems.length < total) binItems = new int[Math.max(total, binItems.length * 2)];
+        // binStart[t] now serves as the next free position of tile t, and ends up at tile t + 1's start
+        for (int item = 0; item < count; item++) {
+            forEachTile(item, item);
+        }
+        for (int t = tiles; t > 0; t--) {
+            binStart[t] = binStart[t - 1];
+        }
+        binStart[0] = 0;
+    }
+
+    /**
+     * Counts an item in every tile its bounds touch when item is -1, places it in them otherwise
+     */
+    private void forEachTile(int index, int item) {
+        float minX, minY, maxX, maxY;
+        if (kinds[index] == TEXT) {
+            GlyphSet font = glyphs[index];
+            minX = a[index];
+            maxX = minX + font.width(numbers[index]);
+            minY = b[index] - font.ascent;
+            maxY = minY + font.height;
+        } else {
+            float r = c[index] + 1;
+            minX = a[index] - r;
+            maxX = a[index] + r;
+            minY = b[index] - r;
+            maxY = b[index] + r;
+        }
+        if (maxX < 0 || maxY < 0 || minX >= width || minY >= height) return;
+        int col0 = Math.max(0, (int) minX / TILE_SIZE), col1 = Math.min(tilesX - 1, (int) maxX / TILE_SIZE);
+        int row0 = Math.max(0, (int) minY / TILE_SIZE), row1 = Math.min(tilesY - 1, (int) maxY / TILE_SIZE);
+        for (int row = row0; row <= row1; row++) {
+            for (int col = col0; col <= col1; col++) {
+                int tile = row * tilesX + col;
+                if (item < 0) {
+                    binStart[tile]++;
+                } else {
+                    binItems[binStart[tile]++] = item;
+                }
+            }
+        }
+    }
+
+    private void renderTile(int tile) {
+        int x0 = (tile % tilesX) * TILE_SIZE, y0 = (tile / tilesX) * TILE_SIZE;
+        int x1 = Math.min(x0 + TILE_SIZE, width), y1 = Math.min(y0 + TILE_SIZE, height);
+        for (int y = y0; y < y1; y++) {
+            Arrays.fill(pixels, y * width + x0, y * width + x1, 0);
+        }
+        for (int i = binStart[tile]; i < binStart[tile + 1]; i++) {
+            int item = binItems[i];
+            if (kinds[item] == TEXT) {
+                drawNumber(item, x0, y0, x1, y1);
+            } else {
+                drawCircle(a[item], b[item], c[item], kinds[item] == RING ? d[item] : 0, colors[item], x0, y0, x1, y1);
+            }
+        }
+    }
+
+    /**
+     * Fills the pixels of a disc or ring inside a tile. Pixels whose centre is more than half a pixel inside the
+     * shape are overwritten; those within half a pixel of an edge are blended by how close they are to it.
+     */
+    private void drawCircle(float cx, float cy, float r, float inner, int color,
+                            int x0, int y0, int x1, int y1) {
+        int top = Math.max(y0, (int) Math.floor(cy - r - 0.5f));
+        int bottom = Math.min(y1 - 1, (int) Math.ceil(cy + r + 0.5f));
+        float outer2 = (r + 0.5f) * (r + 0.5f);
+        float solid = r - 0.5f;
+        for (int y = top; y <= bottom; y++) {
+            float dy = y + 0.5f - cy;
+            float dy2 = dy * dy;
+            if (dy2 >= outer2) continue;
+            float half = (float) Math.sqrt(outer2 - dy2);
+            int left = Math.max(x0, (int) Math.floor(cx - half));
+            int right = Math.min(x1 - 1, (int) Math.floor(cx + half));
+
+            // a disc's pixels whose centre is at least half a pixel inside the edge need no blending, and neither do
+            // the pixels of a ring's hole, which are left alone
+            int innerLeft = Integer.MAX_VALUE, innerRight = Integer.MIN_VALUE;
+            float innerEdge = inner > 0 ? inner - 0.5f : solid;
+            if (innerEdge > 0 && dy2 < innerEdge * innerEdge) {
+                float innerHalf = (float) Math.sqrt(innerEdge * innerEdge - dy2);
+                innerLeft = (int) Math.ceil(cx - innerHalf - 0.5f);
+                innerRight = (int) Math.floor(cx + innerHalf - 0.5f);
+            }
+            int row = y * width;
+            for (int x = left; x <= right; x++) {
+                if (x >= innerLeft && x <= innerRight) {
+                    int end = Math.min(innerRight, right);
+                    if (inner <= 0) Arrays.fill(pixels, row + x, row + end + 1, color);
+                    x = end;
+                    continue;
+                }
+                float dx = x + 0.5f - cx;
+                float dist = (float) Math.sqrt(dx * dx + dy2);
+                float coverage = clamp(r + 0.5f - dist);
+                if (inner > 0) coverage -= clamp(inner + 0.5f - dist);
+                if (coverage > 0) blend(row + x, color, coverage);
+            }
+        }
+    }
+
+    private void drawNumber(int item, int x0, int y0, int x1, int y1) {
+        GlyphSet font = glyphs[item];
+        int number = numbers[item];
+        int color = colors[item];
+        int top = Math.round(b[item]) - font.ascent;
+        float pen = a[item] + font.advance(number);
+        // written from the last digit back
+        do {
+            int digit = number % 10;
+            number /= 10;
+            pen -= font.advance[digit];
+            int left = Math.round(pen);
+            drawMask(font.masks[digit], font.maskWidth, font.height, left, top, color, x0, y0, x1, y1);
+        } while (number > 0);
+    }
+
+    private void drawMask(byte[] mask, int maskWidth, int maskHeight, int left, int top, int color,
+                          int x0, int y0, int x1, int y1) {
+        int fromY = Math.max(y0, top), toY = Math.min(y1, top + maskHeight);
+        int fromX = Math.max(x0, left), toX = Math.min(x1, left + maskWidth);
+        for (int y = fromY; y < toY; y++) {
+            int maskRow = (y - top) * maskWidth - left;
+            int row = y * width;
+            for (int x = fromX; x < toX; x++) {
+                int alpha = mask[maskRow + x] & 0xff;
+                if (alpha != 0) blend(row + x, color, alpha / 255f);
+            }
+        }
+    }
+
+    private static float clamp(float v) {
+        return v <= 0 ? 0 : Math.min(v, 1);
+    }
+
+    /**
+     * Draws an opaque color over a pixel with a coverage, source-over in premultiplied ARGB
+     */
+    private void blend(int index, int color, float coverage) {
+        if (coverage >= 1) {
+            pixels[index] = color;
+            return;
+        }
+        int dst = pixels[index];
+        int keep = Math.round((1 - coverage) * 256);
+        int add = 256 - keep;
+        int rb = (((color & 0xff00ff) * add + (dst & 0xff00ff) * keep) >>> 8) & 0xff00ff;
+        int ag = (((color >>> 8) & 0xff00ff) * add + ((dst >>> 8) & 0xff00ff) * keep) & 0xff00ff00;
+        pixels[index] = ag | rb;
+    }
+
+    /**
+     * Premultiplied ARGB of an opaque color given by its red, green and blue in [0, 1]
+     */
+    static int opaque(double red, double green, double blue) {
+        return 0xff000000 | (int) Math.round(red * 255) << 16 | (int) Math.round(green * 255) << 8
+                | (int) Math.round(blue * 255);
+    }
+
+    /**
+     * Alpha masks of the digits 0-9 at one font size, drawn next to each other to write numbers
+     */
+    static final class GlyphSet {
+
+        /** Size of each mask; every digit gets the same box */
+        final int maskWidth, height;
+
+        /** Distance from the top of a mask to the baseline */
+        final int ascent;
+
+        /** Distance the pen moves after each digit */
+        final float[] advance;
+
+        /** Coverage of each pixel of each digit's box, row by row */
+        final byte[][] masks;
+
+        GlyphSet(int maskWidth, int height, int ascent, float[] advance, byte[][] masks) {
+            this.maskWidth = maskWidth;
+            this.height = height;
+            this.ascent = ascent;
+            this.advance = advance;
+            this.masks = masks;
+        }
+
+        /**
+         * @return distance the pen moves writing a number
+         */
+        float advance(int number) {
+            float w = 0;
+            do {
+                w += advance[number % 10];
+                number /= 10;
+            } while (number > 0);
+            return w;
+        }
+
+        /**
+         * @return width of the boxes of a number written with these glyphs, in pixels
+         */
+        float width(int number) {
+            return advance(number) - advance[number % 10] + maskWidth;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.asn4;
+
+/**
+ * Receives progress of a target import or export. Import callbacks are delivered through the executor the import
+ * applies its batches with (the FX thread in the application); export callbacks on the exporting thread.
+ */
+public interface TransferListener {
+
+    /**
+     * Called after each batch of rows
+     * @param rows rows transferred so far
+     * @param bytes bytes read or written so far
+     * @param totalBytes size of the input file for imports, -1 for exports
+     */
+    default void progress(long rows, long bytes, long totalBytes) {}
+
+    /**
+     * Called once when the transfer stops
+     * @param rows rows transferred in total
+     * @param error what stopped the transfer, null if it completed or was cancelled
+     * @param cancelled true if the transfer was cancelled before reaching the end
+     */
+    default void finished(long rows, Exception error, boolean cancelled) {}
+}
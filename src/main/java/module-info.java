@@ -1,6 +1,8 @@
 module com.example.asn4 {
     requires javafx.controls;
     requires javafx.fxml;
+    requires jdk.jfr;
+    requires java.management;
 
 
     opens com.example.asn4 to javafx.fxml;
@@ -0,0 +1,127 @@
+package com.example.asn4;
+
+import javafx.event.EventType;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the steady-state drag path allocates nothing, by counting the bytes the test thread allocates while
+ * drag events go through the controller into the models. The events are built before counting, and the paths are
+ * run long enough beforehand for the JIT to compile them.
+ */
+class DragAllocationTest {
+
+    private static final int BLOB_COUNT = 10_000;
+
+    private static final double WORLD_SIZE = 2000;
+
+    private static final int WARMUP_EVENTS = 200_000;
+
+    private static final int MEASURED_EVENTS = 100_000;
+
+    /** Bytes per event let through, for the odd allocation outside the drag path such as a safepoint or a class load */
+    private static final double TOLERANCE = 1;
+
+    private BlobModel model;
+
+    @BeforeEach
+    void setUp() {
+        Random random = new Random(3);
+        double[] xs = new double[BLOB_COUNT], ys = new double[BLOB_COUNT], rs = new double[BLOB_COUNT];
+        for (int i = 0; i < BLOB_COUNT; i++) {
+            xs[i] = random.nextDouble() * WORLD_SIZE;
+            ys[i] = random.nextDouble() * WORLD_SIZE;
+            rs[i] = 5 + random.nextDouble() * 20;
+        }
+        model = new BlobModel();
+        model.addBlobs(xs, ys, rs, BLOB_COUNT);
+    }
+
+    @Test
+    void blobDragAllocatesNothing() {
+        InteractionModel iModel = new InteractionModel();
+        BlobController controller = controller(iModel);
+        Random random = new Random(5);
+        ArrayList<Blob> selection = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            selection.add(model.getBlobs().get(random.nextInt(BLOB_COUNT)));
+        }
+        // the press picks the blob on top, which has to be part of the selection for the whole selection to move
+        double x = selection.get(0).getX(), y = selection.get(0).getY();
+        selection.set(0, model.whichHit(x, y));
+        iModel.selectMultiple(selection);
+        controller.handlePressed(event(MouseEvent.MOUSE_PRESSED, x, y, false));
+        // back and forth, so the blobs stay in place
+        MouseEvent[] events = {
+                event(MouseEvent.MOUSE_DRAGGED, x + 7, y + 5, false),
+                event(MouseEvent.MOUSE_DRAGGED, x, y, false)};
+
+        double perEvent = (double) drag(controller, events, null) / MEASURED_EVENTS;
+        assertTrue(perEvent < TOLERANCE, "blob drag allocated " + perEvent + " bytes per event");
+    }
+
+    @Test
+    void selectionDragAllocatesNothing() {
+        InteractionModel iModel = new InteractionModel();
+        BlobController controller = controller(iModel);
+        double centre = WORLD_SIZE / 2;
+        controller.handlePressed(event(MouseEvent.MOUSE_PRESSED, centre, centre, true));
+        // round a circle; the lasso is cleared after every lap so it doesn't grow without bound
+        MouseEvent[] events = new MouseEvent[256];
+        for (int i = 0; i < events.length; i++) {
+            double angle = 2 * Math.PI * i / events.length;
+            events[i] = event(MouseEvent.MOUSE_DRAGGED,
+                    centre + Math.cos(angle) * 300, centre + Math.sin(angle) * 300, true);
+        }
+
+        double perEvent = (double) drag(controller, events, iModel) / MEASURED_EVENTS;
+        assertTrue(perEvent < TOLERANCE, "selection drag allocated " + perEvent + " bytes per event");
+    }
+
+    private BlobController controller(InteractionModel iModel) {
+        BlobController controller = new BlobController();
+        controller.setModel(model);
+        controller.setIModel(iModel);
+        return controller;
+    }
+
+    /**
+     * Sends the events round and round, first to warm up, then counting the bytes allocated
+     * @param lassoOwner model whose lasso is cleared after every lap, null when dragging blobs
+     * @return bytes allocated by the measured events
+     */
+    private static long drag(BlobController controller, MouseEvent[] events, InteractionModel lassoOwner) {
+        for (int i = 0; i < WARMUP_EVENTS; i++) {
+            dragOnce(controller, events, lassoOwner, i);
+        }
+        long before = allocatedBytes();
+        for (int i = 0; i < MEASURED_EVENTS; i++) {
+            dragOnce(controller, events, lassoOwner, i);
+        }
+        return allocatedBytes() - before;
+    }
+
+    private static void dragOnce(BlobController controller, MouseEvent[] events, InteractionModel lassoOwner, int i) {
+        int index = i % events.length;
+        if (index == 0 && lassoOwner != null) lassoOwner.clearPoints();
+        controller.handleDragged(events[index]);
+    }
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static MouseEvent event(EventType<MouseEvent> type, double x, double y, boolean controlDown) {
+        return new MouseEvent(type, x, y, x, y, MouseButton.PRIMARY, 1,
+                false, controlDown, false, false, true, false, false, false, false, false, null);
+    }
+}